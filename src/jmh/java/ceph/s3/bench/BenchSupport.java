@@ -0,0 +1,97 @@
+package ceph.s3.bench;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.metrics.S3Metrics;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.Protocol;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 基准测试共用的客户端和测试数据构造。
+ */
+final class BenchSupport {
+
+    static {
+        // JMH 进程没有 Spring 的日志配置，logback 默认 DEBUG 会记录每个请求的报文，严重干扰测量
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    private BenchSupport() {
+    }
+
+    /**
+     * 与 AwzS3Util 相同配置的客户端，指向 FakeS3Server。
+     */
+    static AmazonS3 client(String url, int maxConnections) {
+        ClientConfiguration config = new ClientConfiguration();
+        config.setSignerOverride("S3SignerType");
+        config.setProtocol(Protocol.HTTP);
+        config.withUseExpectContinue(false);
+        config.disableSocketProxy();
+        config.setMaxConnections(maxConnections);
+        return AmazonS3Client.builder()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(url, Regions.CN_NORTH_1.getName()))
+                .withClientConfiguration(config)
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("bench", "bench")))
+                .disableChunkedEncoding()
+                .withPathStyleAccessEnabled(true)
+                .build();
+    }
+
+    static S3Metrics metrics() {
+        return new S3Metrics(new SimpleMeterRegistry(), new AwzS3Config());
+    }
+
+    /**
+     * 不可压缩的随机内容，避免压缩和传输层把测试数据压得过小。
+     */
+    static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * 构造包含 entryCount 个 entrySize 字节条目的 zip。
+     */
+    static byte[] zip(int entryCount, int entrySize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int i = 0; i < entryCount; i++) {
+                zip.putNextEntry(new ZipEntry("dir/entry-" + i + ".bin"));
+                zip.write(randomBytes(entrySize, i));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解析 64KB、16MB 这样的大小。
+     */
+    static int parseSize(String value) {
+        String text = value.trim().toUpperCase();
+        int multiplier = 1;
+        if (text.endsWith("KB") || text.endsWith("K")) {
+            multiplier = 1024;
+        } else if (text.endsWith("MB") || text.endsWith("M")) {
+            multiplier = 1024 * 1024;
+        }
+        return Integer.parseInt(text.replaceAll("[^0-9]", "")) * multiplier;
+    }
+}
@@ -0,0 +1,708 @@
+package ceph.s3.bench;
+
+import com.amazonaws.util.BinaryUtils;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 进程内的 S3 兼容服务，只在内存中保存对象，供基准测试离线使用。
+ * 支持项目用到的接口：桶的创建/删除/ACL，对象的 PUT/GET(Range、If-Match)/HEAD(partNumber)/DELETE，
+ * 分段上传(含 ListMultipartUploads/ListParts)，ListBuckets，服务端复制(CopyObject/UploadPartCopy)，批量删除和 ListObjectsV2；
+ * 保存 Content-Type 和 x-amz-meta-* 用户元数据，带 Content-MD5 的 PUT 和分段上传会校验内容。
+ * 可注入每个请求的首字节延迟和上下行带宽限制，模拟远端 RGW。
+ */
+public class FakeS3Server implements AutoCloseable {
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    static {
+        // 响应头和小响应体分开写出时，Nagle 算法和延迟 ACK 会给每个请求增加约 40ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final long bytesPerSecond;
+    private final Map<String, ConcurrentSkipListMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    // 发起分段上传时设置的元数据，只使用其中的 contentType 和 userMetadata
+    private final Map<String, StoredObject> uploadMetadata = new ConcurrentHashMap<>();
+    // 分段上传对应的桶和键
+    private final Map<String, String[]> uploadTargets = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * @param latencyMillis  每个请求返回前的延迟
+     * @param bytesPerSecond 每个连接的读写带宽，0 表示不限制
+     */
+    public FakeS3Server(int port, long latencyMillis, long bytesPerSecond) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-s3-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public void createBucket(String bucket) {
+        buckets.computeIfAbsent(bucket, b -> new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * 直接写入对象，不经过 HTTP，用于准备测试数据。
+     */
+    public void putObject(String bucket, String key, byte[] data) {
+        createBucket(bucket);
+        buckets.get(bucket).put(key, new StoredObject(data, quote(BinaryUtils.toHex(md5(data))), null));
+    }
+
+    public byte[] getObject(String bucket, String key) {
+        Map<String, StoredObject> objects = buckets.get(bucket);
+        StoredObject object = objects != null ? objects.get(key) : null;
+        return object != null ? object.data : null;
+    }
+
+    public int countObjects(String bucket) {
+        Map<String, StoredObject> objects = buckets.get(bucket);
+        return objects != null ? objects.size() : 0;
+    }
+
+    public void clearBucket(String bucket) {
+        Map<String, StoredObject> objects = buckets.get(bucket);
+        if (objects != null) {
+            objects.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            String rest = path.length() > 1 ? path.substring(1) : "";
+            int slash = rest.indexOf('/');
+            String bucket = decode(slash < 0 ? rest : rest.substring(0, slash));
+            String key = slash < 0 || slash == rest.length() - 1 ? null : decode(rest.substring(slash + 1));
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (bucket.isEmpty()) {
+                listBuckets(exchange);
+            } else if (key == null) {
+                handleBucket(exchange, bucket, query);
+            } else {
+                handleObject(exchange, bucket, key, query);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "InternalError", String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleBucket(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException, InterruptedException {
+        String method = exchange.getRequestMethod();
+        if ("PUT".equals(method)) {
+            readBody(exchange);
+            createBucket(bucket);
+            sendEmpty(exchange, 200);
+            return;
+        }
+        ConcurrentSkipListMap<String, StoredObject> objects = buckets.get(bucket);
+        if (objects == null) {
+            sendError(exchange, 404, "NoSuchBucket", bucket);
+            return;
+        }
+        switch (method) {
+            case "HEAD":
+                sendEmpty(exchange, 200);
+                break;
+            case "DELETE":
+                buckets.remove(bucket);
+                sendEmpty(exchange, 204);
+                break;
+            case "POST":
+                if (query.containsKey("delete")) {
+                    deleteObjects(exchange, objects);
+                } else {
+                    sendError(exchange, 501, "NotImplemented", method);
+                }
+                break;
+            case "GET":
+                if (query.containsKey("acl")) {
+                    sendXml(exchange, 200, "<AccessControlPolicy><Owner><ID>bench</ID></Owner><AccessControlList/></AccessControlPolicy>");
+                } else if (query.containsKey("uploads")) {
+                    listUploads(exchange, bucket);
+                } else if (query.containsKey("versions")) {
+                    sendXml(exchange, 200, "<ListVersionsResult><Name>" + escape(bucket)
+                            + "</Name><IsTruncated>false</IsTruncated></ListVersionsResult>");
+                } else {
+                    listObjects(exchange, bucket, objects, query);
+                }
+                break;
+            default:
+                sendError(exchange, 501, "NotImplemented", method);
+        }
+    }
+
+    private void handleObject(HttpExchange exchange, String bucket, String key, Map<String, String> query) throws IOException, InterruptedException {
+        ConcurrentSkipListMap<String, StoredObject> objects = buckets.get(bucket);
+        if (objects == null) {
+            readBody(exchange);
+            sendError(exchange, 404, "NoSuchBucket", bucket);
+            return;
+        }
+        String method = exchange.getRequestMethod();
+        switch (method) {
+            case "PUT":
+                if (exchange.getRequestHeaders().containsKey("x-amz-copy-source")) {
+                    copyObject(exchange, objects, key, query);
+                } else if (query.containsKey("uploadId")) {
+                    uploadPart(exchange, query);
+                } else {
+                    byte[] data = readBody(exchange);
+                    if (!checkContentMd5(exchange, data)) {
+                        return;
+                    }
+                    StoredObject object = new StoredObject(data, quote(BinaryUtils.toHex(md5(data))), null);
+                    copyMetadata(exchange.getRequestHeaders(), object);
+                    objects.put(key, object);
+                    exchange.getResponseHeaders().set("ETag", object.eTag);
+                    sendEmpty(exchange, 200);
+                }
+                break;
+            case "POST":
+                if (query.containsKey("uploads")) {
+                    String uploadId = "bench-" + uploadIds.incrementAndGet();
+                    uploads.put(uploadId, new ConcurrentHashMap<>());
+                    StoredObject metadata = new StoredObject(new byte[0], null, null);
+                    copyMetadata(exchange.getRequestHeaders(), metadata);
+                    uploadMetadata.put(uploadId, metadata);
+                    uploadTargets.put(uploadId, new String[]{bucket, key});
+                    sendXml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>"
+                            + escape(key) + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+                } else if (query.containsKey("uploadId")) {
+                    completeUpload(exchange, objects, bucket, key, query.get("uploadId"));
+                } else {
+                    sendError(exchange, 501, "NotImplemented", method);
+                }
+                break;
+            case "DELETE":
+                if (query.containsKey("uploadId")) {
+                    uploads.remove(query.get("uploadId"));
+                    uploadMetadata.remove(query.get("uploadId"));
+                    uploadTargets.remove(query.get("uploadId"));
+                } else {
+                    objects.remove(key);
+                }
+                sendEmpty(exchange, 204);
+                break;
+            case "HEAD":
+            case "GET":
+                if ("GET".equals(method) && query.containsKey("uploadId")) {
+                    listParts(exchange, bucket, key, query.get("uploadId"));
+                } else {
+                    getObject(exchange, objects.get(key), key, query, "HEAD".equals(method));
+                }
+                break;
+            default:
+                sendError(exchange, 501, "NotImplemented", method);
+        }
+    }
+
+    private void getObject(HttpExchange exchange, StoredObject object, String key, Map<String, String> query,
+                           boolean head) throws IOException, InterruptedException {
+        if (object == null) {
+            sendError(exchange, 404, "NoSuchKey", key);
+            return;
+        }
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null && !unquote(ifMatch).equals(unquote(object.eTag))) {
+            sendError(exchange, 412, "PreconditionFailed", key);
+            return;
+        }
+        long length = object.data.length;
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        if (query.containsKey("partNumber") && object.partSizes != null) {
+            int partNumber = Integer.parseInt(query.get("partNumber"));
+            for (int i = 0; i < partNumber - 1; i++) {
+                start += object.partSizes[i];
+            }
+            end = start + object.partSizes[partNumber - 1] - 1;
+            partial = true;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring(6).split("-", 2);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, length - Long.parseLong(bounds[1]));
+            } else {
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? length - 1 : Math.min(length - 1, Long.parseLong(bounds[1]));
+            }
+            if (start >= length && length > 0) {
+                sendError(exchange, 416, "InvalidRange", range);
+                return;
+            }
+            partial = true;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", object.eTag);
+        headers.set("Last-Modified", httpDate(object.lastModified));
+        headers.set("Accept-Ranges", "bytes");
+        headers.set("Content-Type", object.contentType != null ? object.contentType : "application/octet-stream");
+        if (object.partSizes != null) {
+            headers.set("x-amz-mp-parts-count", String.valueOf(object.partSizes.length));
+        }
+        object.userMetadata.forEach((name, value) -> headers.set("x-amz-meta-" + name, value));
+        long count = length == 0 ? 0 : end - start + 1;
+        if (partial && length > 0) {
+            headers.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        int status = partial ? 206 : 200;
+        if (head) {
+            headers.set("Content-Length", String.valueOf(count));
+            sendHeaders(exchange, status, -1);
+            return;
+        }
+        sendHeaders(exchange, status, count == 0 ? -1 : count);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            writeThrottled(outputStream, object.data, (int) start, (int) count);
+        }
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query) throws IOException, InterruptedException {
+        byte[] data = readBody(exchange);
+        Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", query.get("uploadId"));
+            return;
+        }
+        if (!checkContentMd5(exchange, data)) {
+            return;
+        }
+        parts.put(Integer.parseInt(query.get("partNumber")), data);
+        exchange.getResponseHeaders().set("ETag", quote(BinaryUtils.toHex(md5(data))));
+        sendEmpty(exchange, 200);
+    }
+
+    /**
+     * 服务端复制：带 uploadId 时为 UploadPartCopy(可带 x-amz-copy-source-range)，否则为 CopyObject。
+     */
+    private void copyObject(HttpExchange exchange, Map<String, StoredObject> objects, String key,
+                            Map<String, String> query) throws IOException, InterruptedException {
+        readBody(exchange);
+        Headers requestHeaders = exchange.getRequestHeaders();
+        String copySource = decode(requestHeaders.getFirst("x-amz-copy-source"));
+        if (copySource.startsWith("/")) {
+            copySource = copySource.substring(1);
+        }
+        int slash = copySource.indexOf('/');
+        Map<String, StoredObject> sourceObjects = slash < 0 ? null : buckets.get(copySource.substring(0, slash));
+        StoredObject source = sourceObjects == null ? null : sourceObjects.get(copySource.substring(slash + 1));
+        if (source == null) {
+            sendError(exchange, 404, "NoSuchKey", copySource);
+            return;
+        }
+        String ifMatch = requestHeaders.getFirst("x-amz-copy-source-if-match");
+        if (ifMatch != null && !unquote(ifMatch).equals(unquote(source.eTag))) {
+            sendError(exchange, 412, "PreconditionFailed", copySource);
+            return;
+        }
+        String lastModified = isoDate(System.currentTimeMillis());
+        if (query.containsKey("uploadId")) {
+            Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+            if (parts == null) {
+                sendError(exchange, 404, "NoSuchUpload", query.get("uploadId"));
+                return;
+            }
+            int start = 0;
+            int end = source.data.length - 1;
+            String range = requestHeaders.getFirst("x-amz-copy-source-range");
+            if (range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring(6).split("-", 2);
+                start = Integer.parseInt(bounds[0]);
+                end = Integer.parseInt(bounds[1]);
+            }
+            if (start > end || end >= source.data.length) {
+                sendError(exchange, 416, "InvalidRange", range);
+                return;
+            }
+            byte[] data = Arrays.copyOfRange(source.data, start, end + 1);
+            parts.put(Integer.parseInt(query.get("partNumber")), data);
+            sendXml(exchange, 200, "<CopyPartResult><LastModified>" + lastModified + "</LastModified><ETag>"
+                    + escape(quote(BinaryUtils.toHex(md5(data)))) + "</ETag></CopyPartResult>");
+            return;
+        }
+        StoredObject object = new StoredObject(source.data, source.eTag, source.partSizes);
+        if ("REPLACE".equals(requestHeaders.getFirst("x-amz-metadata-directive"))) {
+            copyMetadata(requestHeaders, object);
+        } else {
+            object.contentType = source.contentType;
+            object.userMetadata.putAll(source.userMetadata);
+        }
+        objects.put(key, object);
+        sendXml(exchange, 200, "<CopyObjectResult><LastModified>" + lastModified + "</LastModified><ETag>"
+                + escape(object.eTag) + "</ETag></CopyObjectResult>");
+    }
+
+    private void completeUpload(HttpExchange exchange, Map<String, StoredObject> objects, String bucket, String key,
+                                String uploadId) throws IOException, InterruptedException {
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        Map<Integer, byte[]> parts = uploads.remove(uploadId);
+        StoredObject metadata = uploadMetadata.remove(uploadId);
+        uploadTargets.remove(uploadId);
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", uploadId);
+            return;
+        }
+        List<Integer> partNumbers = new ArrayList<>();
+        Matcher matcher = PART_NUMBER.matcher(body);
+        while (matcher.find()) {
+            partNumbers.add(Integer.parseInt(matcher.group(1)));
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        MessageDigest digests = md5Digest();
+        long[] partSizes = new long[partNumbers.size()];
+        for (int i = 0; i < partNumbers.size(); i++) {
+            byte[] part = parts.get(partNumbers.get(i));
+            if (part == null) {
+                sendError(exchange, 400, "InvalidPart", String.valueOf(partNumbers.get(i)));
+                return;
+            }
+            content.write(part, 0, part.length);
+            digests.update(md5(part));
+            partSizes[i] = part.length;
+        }
+        String eTag = quote(BinaryUtils.toHex(digests.digest()) + "-" + partNumbers.size());
+        StoredObject object = new StoredObject(content.toByteArray(), eTag, partSizes);
+        if (metadata != null) {
+            object.contentType = metadata.contentType;
+            object.userMetadata.putAll(metadata.userMetadata);
+        }
+        objects.put(key, object);
+        sendXml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key)
+                + "</Key><ETag>" + escape(eTag) + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void deleteObjects(HttpExchange exchange, Map<String, StoredObject> objects) throws IOException, InterruptedException {
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        boolean quiet = body.contains("<Quiet>true</Quiet>");
+        StringBuilder xml = new StringBuilder("<DeleteResult>");
+        Matcher matcher = DELETE_KEY.matcher(body);
+        while (matcher.find()) {
+            String key = unescape(matcher.group(1));
+            objects.remove(key);
+            if (!quiet) {
+                xml.append("<Deleted><Key>").append(escape(key)).append("</Key></Deleted>");
+            }
+        }
+        sendXml(exchange, 200, xml.append("</DeleteResult>").toString());
+    }
+
+    private void listBuckets(HttpExchange exchange) throws IOException, InterruptedException {
+        StringBuilder xml = new StringBuilder("<ListAllMyBucketsResult><Owner><ID>bench</ID></Owner><Buckets>");
+        for (String bucket : new TreeSet<>(buckets.keySet())) {
+            xml.append("<Bucket><Name>").append(escape(bucket)).append("</Name><CreationDate>")
+                    .append(isoDate(System.currentTimeMillis())).append("</CreationDate></Bucket>");
+        }
+        sendXml(exchange, 200, xml.append("</Buckets></ListAllMyBucketsResult>").toString());
+    }
+
+    private void listUploads(HttpExchange exchange, String bucket) throws IOException, InterruptedException {
+        StringBuilder xml = new StringBuilder("<ListMultipartUploadsResult><Bucket>").append(escape(bucket))
+                .append("</Bucket><IsTruncated>false</IsTruncated>");
+        uploadTargets.forEach((uploadId, target) -> {
+            StoredObject metadata = uploadMetadata.get(uploadId);
+            if (bucket.equals(target[0]) && metadata != null) {
+                xml.append("<Upload><Key>").append(escape(target[1])).append("</Key><UploadId>").append(uploadId)
+                        .append("</UploadId><Initiated>").append(isoDate(metadata.lastModified)).append("</Initiated></Upload>");
+            }
+        });
+        sendXml(exchange, 200, xml.append("</ListMultipartUploadsResult>").toString());
+    }
+
+    private void listParts(HttpExchange exchange, String bucket, String key, String uploadId) throws IOException, InterruptedException {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", uploadId);
+            return;
+        }
+        StringBuilder xml = new StringBuilder("<ListPartsResult><Bucket>").append(escape(bucket)).append("</Bucket><Key>")
+                .append(escape(key)).append("</Key><UploadId>").append(uploadId).append("</UploadId><IsTruncated>false</IsTruncated>");
+        for (Map.Entry<Integer, byte[]> part : new TreeMap<>(parts).entrySet()) {
+            xml.append("<Part><PartNumber>").append(part.getKey()).append("</PartNumber><LastModified>")
+                    .append(isoDate(System.currentTimeMillis())).append("</LastModified><ETag>")
+                    .append(quote(BinaryUtils.toHex(md5(part.getValue())))).append("</ETag><Size>")
+                    .append(part.getValue().length).append("</Size></Part>");
+        }
+        sendXml(exchange, 200, xml.append("</ListPartsResult>").toString());
+    }
+
+    private void listObjects(HttpExchange exchange, String bucket, ConcurrentSkipListMap<String, StoredObject> objects,
+                             Map<String, String> query) throws IOException, InterruptedException {
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        String after = query.containsKey("continuation-token") ? query.get("continuation-token") : query.get("start-after");
+        NavigableMap<String, StoredObject> candidates = after != null && after.compareTo(prefix) >= 0
+                ? objects.tailMap(after, false) : objects.tailMap(prefix, true);
+        StringBuilder contents = new StringBuilder();
+        Set<String> commonPrefixes = new LinkedHashSet<>();
+        int count = 0;
+        String lastKey = null;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (count >= maxKeys) {
+                truncated = true;
+                break;
+            }
+            int index = delimiter != null && !delimiter.isEmpty() ? key.indexOf(delimiter, prefix.length()) : -1;
+            if (index >= 0) {
+                String commonPrefix = key.substring(0, index + delimiter.length());
+                if (commonPrefixes.add(commonPrefix)) {
+                    count++;
+                }
+                lastKey = key;
+                continue;
+            }
+            StoredObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(escape(key)).append("</Key><LastModified>")
+                    .append(isoDate(object.lastModified)).append("</LastModified><ETag>").append(escape(object.eTag))
+                    .append("</ETag><Size>").append(object.data.length).append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+            count++;
+            lastKey = key;
+        }
+        StringBuilder xml = new StringBuilder("<ListBucketResult><Name>").append(escape(bucket)).append("</Name><Prefix>")
+                .append(escape(prefix)).append("</Prefix><KeyCount>").append(count).append("</KeyCount><MaxKeys>")
+                .append(maxKeys).append("</MaxKeys><IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated && lastKey != null) {
+            xml.append("<NextContinuationToken>").append(escape(lastKey)).append("</NextContinuationToken>");
+        }
+        xml.append(contents);
+        for (String commonPrefix : commonPrefixes) {
+            xml.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix)).append("</Prefix></CommonPrefixes>");
+        }
+        sendXml(exchange, 200, xml.append("</ListBucketResult>").toString());
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long start = System.nanoTime();
+        long total = 0;
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, len);
+                total += len;
+                throttle(start, total);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private void writeThrottled(OutputStream outputStream, byte[] data, int offset, int count) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        int written = 0;
+        while (written < count) {
+            int len = Math.min(CHUNK_SIZE, count - written);
+            outputStream.write(data, offset + written, len);
+            written += len;
+            throttle(start, written);
+        }
+    }
+
+    /**
+     * 传输超前于带宽限制时休眠，使平均速率不超过 bytesPerSecond。
+     */
+    private void throttle(long startNanos, long transferred) throws InterruptedException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = transferred * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    /**
+     * 发送响应头前先读完请求体，否则没有响应体的响应(HEAD、DELETE 等)发送后 HttpServer 会关闭连接，客户端无法复用。
+     */
+    private static boolean checkContentMd5(HttpExchange exchange, byte[] data) throws IOException {
+        String contentMd5 = exchange.getRequestHeaders().getFirst("Content-MD5");
+        if (contentMd5 != null && !contentMd5.equals(Base64.getEncoder().encodeToString(md5(data)))) {
+            sendError(exchange, 400, "BadDigest", "Content-MD5 不匹配");
+            return false;
+        }
+        return true;
+    }
+
+    private static void copyMetadata(Headers requestHeaders, StoredObject object) {
+        object.contentType = requestHeaders.getFirst("Content-Type");
+        requestHeaders.forEach((name, values) -> {
+            if (name.toLowerCase(Locale.ROOT).startsWith("x-amz-meta-") && !values.isEmpty()) {
+                object.userMetadata.put(name.substring("x-amz-meta-".length()).toLowerCase(Locale.ROOT), values.get(0));
+            }
+        });
+    }
+
+    private static void sendHeaders(HttpExchange exchange, int status, long length) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(status, length);
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        sendHeaders(exchange, status, -1);
+    }
+
+    private static void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        sendHeaders(exchange, status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            sendHeaders(exchange, status, -1);
+            return;
+        }
+        sendXml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + escape(message)
+                + "</Message><RequestId>bench</RequestId></Error>");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+    }
+
+    private static String quote(String eTag) {
+        return "\"" + eTag + "\"";
+    }
+
+    private static String unquote(String eTag) {
+        return eTag.replace("\"", "").trim();
+    }
+
+    private static String httpDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    private static String isoDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static byte[] md5(byte[] data) {
+        return md5Digest().digest(data);
+    }
+
+    private static MessageDigest md5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class StoredObject {
+        final byte[] data;
+        final String eTag;
+        final long[] partSizes;
+        final long lastModified = System.currentTimeMillis();
+        String contentType;
+        final Map<String, String> userMetadata = new HashMap<>();
+
+        StoredObject(byte[] data, String eTag, long[] partSizes) {
+            this.data = data;
+            this.eTag = eTag;
+            this.partSizes = partSizes;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package ceph.s3.bench;
+
+import ceph.s3.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 端到端压测：启动进程内的 FakeS3Server 和完整的 Spring 应用，通过 HTTP 调用 S3Controller 的接口，
+ * 按场景 × 对象大小 × 并发数输出吞吐量、p50/p99 耗时和应用线程的分配速率，全程离线。
+ * <p>
+ * 参数(--name=value)：
+ * <ul>
+ *     <li>scenarios：upload、download、stream、decompress，默认全部</li>
+ *     <li>sizes：对象大小，默认 64KB,1MB,16MB；decompress 为解压后的总大小</li>
+ *     <li>concurrency：并发数，默认 1,8,32</li>
+ *     <li>requests：每组请求数，默认 64，至少为并发数的 2 倍</li>
+ *     <li>latency：FakeS3Server 每个请求的延迟(毫秒)，默认 0</li>
+ *     <li>bandwidth：FakeS3Server 每个连接的带宽(字节/秒，支持 KB/MB 后缀)，默认 0 不限制</li>
+ *     <li>out：同时把结果写成 CSV 文件</li>
+ * </ul>
+ */
+public class LoadHarness {
+    private static final String BUCKET = "bench";
+    private static final String TARGET_BUCKET = "bench-target";
+    private static final String BOUNDARY = "----s3-bench-boundary";
+    private static final int ZIP_ENTRY_SIZE = 64 * 1024;
+    // 压测客户端和 FakeS3Server 的线程不计入应用的分配速率
+    private static final String[] EXCLUDED_THREADS = {"load-client-", "fake-s3-", "HTTP-Dispatcher"};
+
+    private final FakeS3Server s3;
+    private final String baseUrl;
+
+    private LoadHarness(FakeS3Server s3, String baseUrl) {
+        this.s3 = s3;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        List<String> scenarios = split(options.getOrDefault("scenarios", "upload,download,stream,decompress"));
+        List<String> sizes = split(options.getOrDefault("sizes", "64KB,1MB,16MB"));
+        List<String> concurrencies = split(options.getOrDefault("concurrency", "1,8,32"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "64"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "0"));
+        long bandwidth = BenchSupport.parseSize(options.getOrDefault("bandwidth", "0"));
+        String out = options.get("out");
+
+        System.setProperty("http.maxConnections", "512");
+        try (FakeS3Server s3 = new FakeS3Server(0, latency, bandwidth)) {
+            s3.createBucket(BUCKET);
+            s3.createBucket(TARGET_BUCKET);
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class).run(
+                    "--server.port=0",
+                    "--aws.s3.url=" + s3.getUrl(),
+                    "--aws.s3.bucket=" + BUCKET,
+                    "--aws.s3.access-key=bench",
+                    "--aws.s3.secret-key=bench",
+                    "--spring.servlet.multipart.max-file-size=-1",
+                    "--spring.servlet.multipart.max-request-size=-1",
+                    "--logging.level.root=WARN");
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                LoadHarness harness = new LoadHarness(s3, "http://127.0.0.1:" + port + "/awz/s3");
+                List<Result> results = new ArrayList<>();
+                System.out.printf("FakeS3Server latency=%dms bandwidth=%s%n", latency,
+                        bandwidth > 0 ? bandwidth + "B/s" : "unlimited");
+                System.out.println(Result.HEADER);
+                for (String scenario : scenarios) {
+                    for (String size : sizes) {
+                        for (String concurrency : concurrencies) {
+                            Result result = harness.run(scenario, size, Integer.parseInt(concurrency), requests);
+                            results.add(result);
+                            System.out.println(result);
+                        }
+                    }
+                }
+                if (out != null) {
+                    writeCsv(out, results);
+                }
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private Result run(String scenario, String sizeText, int concurrency, int requests) throws Exception {
+        int size = BenchSupport.parseSize(sizeText);
+        Request request = prepare(scenario, size);
+        int total = Math.max(requests, concurrency * 2);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency, new ClientThreadFactory());
+        try {
+            // 预热：每个客户端线程先跑一次，建立连接并触发 JIT
+            execute(clients, request, concurrency, concurrency, new long[concurrency]);
+            long[] latencies = new long[total];
+            Map<Long, Long> allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int errors = execute(clients, request, concurrency, total, latencies);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedSince(allocatedBefore);
+            return new Result(scenario, sizeText, concurrency, total, errors, elapsed, (long) size * total, latencies, allocated);
+        } finally {
+            clients.shutdownNow();
+            s3.clearBucket(TARGET_BUCKET);
+        }
+    }
+
+    /**
+     * 用 concurrency 个线程执行 total 次请求，返回失败次数；latencies 记录每次请求的耗时。
+     */
+    private static int execute(ExecutorService clients, Request request, int concurrency, int total, long[] latencies) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(clients.submit(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < total) {
+                    long start = System.nanoTime();
+                    try {
+                        if (!request.send(index)) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - start;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return errors.get();
+    }
+
+    private Request prepare(String scenario, int size) throws IOException {
+        switch (scenario) {
+            case "upload": {
+                byte[] payload = BenchSupport.randomBytes(size, size);
+                // 所有请求写同一个键，避免 FakeS3Server 内存随请求数增长
+                return index -> upload("upload-" + size + ".bin", payload);
+            }
+            case "download": {
+                String key = "seed-" + size + ".bin";
+                s3.putObject(BUCKET, key, BenchSupport.randomBytes(size, size));
+                return index -> send("POST", "/downloadObject?bucket=" + BUCKET + "&fileName=" + key);
+            }
+            case "stream": {
+                String key = "seed-" + size + ".bin";
+                s3.putObject(BUCKET, key, BenchSupport.randomBytes(size, size));
+                return index -> send("GET", "/download?bucket=" + BUCKET + "&fileName=" + key);
+            }
+            case "decompress": {
+                String key = "seed-" + size + ".zip";
+                s3.putObject(BUCKET, key, BenchSupport.zip(Math.max(1, size / ZIP_ENTRY_SIZE), Math.min(size, ZIP_ENTRY_SIZE)));
+                return index -> send("POST", "/decompressAndUpload?sourceBucket=" + BUCKET + "&sourceKey=" + key
+                        + "&targetBucket=" + TARGET_BUCKET + "&charset=UTF-8");
+            }
+            default:
+                throw new IllegalArgumentException("未知场景: " + scenario);
+        }
+    }
+
+    private boolean upload(String fileName, byte[] payload) throws IOException {
+        byte[] head = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + fileName
+                + "\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection connection = open("POST", "/uploadObjectByBlock?bucket=" + TARGET_BUCKET);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        connection.setFixedLengthStreamingMode((long) head.length + payload.length + tail.length);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(head);
+            outputStream.write(payload);
+            outputStream.write(tail);
+        }
+        return finish(connection);
+    }
+
+    private boolean send(String method, String path) throws IOException {
+        return finish(open(method, path));
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(10_000);
+        connection.setReadTimeout(600_000);
+        return connection;
+    }
+
+    /**
+     * 读完响应体以便复用连接，返回是否为 2xx。
+     */
+    private static boolean finish(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (body != null) {
+            try (InputStream inputStream = body) {
+                byte[] buffer = new byte[64 * 1024];
+                while (inputStream.read(buffer) != -1) {
+                    // 丢弃响应内容
+                }
+            }
+        }
+        return status >= 200 && status < 300;
+    }
+
+    private static Map<Long, Long> allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Map<Long, Long> allocated = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!excluded(thread.getName())) {
+                allocated.put(thread.getId(), threads.getThreadAllocatedBytes(thread.getId()));
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * 应用线程在 before 之后分配的字节数；期间结束的线程无法统计，结果偏小。
+     */
+    private static long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedBytes().entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+            }
+        }
+        return total;
+    }
+
+    private static boolean excluded(String threadName) {
+        for (String prefix : EXCLUDED_THREADS) {
+            if (threadName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeCsv(String path, List<Result> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            writer.println("scenario,size,concurrency,requests,errors,ops_per_sec,mb_per_sec,p50_ms,p99_ms,alloc_mb_per_sec");
+            for (Result result : results) {
+                writer.println(result.toCsv());
+            }
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int eq = option.indexOf('=');
+            if (eq > 0) {
+                options.put(option.substring(0, eq), option.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+
+    private interface Request {
+        boolean send(int index) throws IOException;
+    }
+
+    private static class ClientThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "load-client-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class Result {
+        static final String HEADER = String.format("%-11s %8s %5s %6s %6s %10s %10s %10s %10s %12s",
+                "scenario", "size", "conc", "reqs", "errors", "ops/s", "MB/s", "p50(ms)", "p99(ms)", "alloc(MB/s)");
+
+        final String scenario;
+        final String size;
+        final int concurrency;
+        final int requests;
+        final int errors;
+        final double opsPerSecond;
+        final double mbPerSecond;
+        final double p50Millis;
+        final double p99Millis;
+        final double allocMbPerSecond;
+
+        Result(String scenario, String size, int concurrency, int requests, int errors, long elapsedNanos,
+               long bytes, long[] latencies, long allocatedBytes) {
+            this.scenario = scenario;
+            this.size = size;
+            this.concurrency = concurrency;
+            this.requests = requests;
+            this.errors = errors;
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            this.opsPerSecond = requests / seconds;
+            this.mbPerSecond = bytes / seconds / (1024 * 1024);
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            this.p50Millis = percentile(sorted, 0.50);
+            this.p99Millis = percentile(sorted, 0.99);
+            this.allocMbPerSecond = allocatedBytes / seconds / (1024 * 1024);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            int index = Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1);
+            return sorted[index] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f", scenario, size, concurrency,
+                    requests, errors, opsPerSecond, mbPerSecond, p50Millis, p99Millis, allocMbPerSecond);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-11s %8s %5d %6d %6d %10.1f %10.1f %10.2f %10.2f %12.1f", scenario, size,
+                    concurrency, requests, errors, opsPerSecond, mbPerSecond, p50Millis, p99Millis, allocMbPerSecond);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ceph.s3.bench;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.upload.MultipartUploadEngine;
+import ceph.s3.file.util.PartBuffer;
+import ceph.s3.file.util.PartBufferPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段缓冲：从共享缓冲池借出分块缓冲区读入并读出一个分段，对比每个分段新建 byte[] 的做法。
+ * 配合 -prof gc 查看每次操作的分配量。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class PartBufferBenchmark {
+
+    @Param({"1MB", "8MB"})
+    public String partSize;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private PartBufferPool pool;
+    private byte[] source;
+
+    @State(Scope.Thread)
+    public static class Scratch {
+        final byte[] buffer = new byte[64 * 1024];
+    }
+
+    @Setup
+    public void setup() {
+        AwzS3Config.Buffer config = new AwzS3Config.Buffer();
+        config.setDirect(direct);
+        pool = new PartBufferPool(config);
+        source = BenchSupport.randomBytes(BenchSupport.parseSize(partSize), 1);
+    }
+
+    @Benchmark
+    public long pooled(Scratch scratch, Blackhole blackhole) throws IOException, InterruptedException {
+        try (PartBuffer buffer = pool.acquire(source.length)) {
+            buffer.fill(new ByteArrayInputStream(source));
+            return drain(buffer.newInputStream(), scratch.buffer, blackhole);
+        }
+    }
+
+    @Benchmark
+    public long allocatePerPart(Scratch scratch, Blackhole blackhole) throws IOException {
+        byte[] part = new byte[source.length];
+        int length = MultipartUploadEngine.readFully(new ByteArrayInputStream(source), part);
+        return drain(new ByteArrayInputStream(part, 0, length), scratch.buffer, blackhole);
+    }
+
+    private static long drain(InputStream inputStream, byte[] scratch, Blackhole blackhole) throws IOException {
+        long total = 0;
+        int len;
+        while ((len = inputStream.read(scratch)) != -1) {
+            blackhole.consume(scratch);
+            total += len;
+        }
+        return total;
+    }
+}
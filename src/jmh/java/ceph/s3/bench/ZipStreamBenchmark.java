@@ -0,0 +1,86 @@
+package ceph.s3.bench;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.upload.MultipartUploadEngine;
+import ceph.s3.file.util.PartBufferPool;
+import ceph.s3.file.zip.DecompressResult;
+import ceph.s3.file.zip.S3ZipReader;
+import ceph.s3.file.zip.ZipCentralEntry;
+import ceph.s3.file.zip.ZipStreamExtractor;
+import com.amazonaws.services.s3.AmazonS3;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * zip 解压上传：顺序流式解压、按中央目录范围读取并发解压，以及只读取中央目录。
+ * S3 使用进程内的 FakeS3Server，可通过 latencyMillis 模拟网关延迟。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipStreamBenchmark {
+    private static final String SOURCE_BUCKET = "bench-source";
+    private static final String TARGET_BUCKET = "bench-target";
+    private static final String ARCHIVE = "archive.zip";
+
+    @Param({"256", "4"})
+    public int entries;
+
+    @Param({"16KB", "4MB"})
+    public String entrySize;
+
+    @Param({"0"})
+    public long latencyMillis;
+
+    private FakeS3Server server;
+    private AmazonS3 amazonS3;
+    private PartBufferPool bufferPool;
+    private MultipartUploadEngine uploadEngine;
+    private ZipStreamExtractor streamExtractor;
+    private S3ZipReader zipReader;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new FakeS3Server(0, latencyMillis, 0);
+        server.createBucket(TARGET_BUCKET);
+        server.putObject(SOURCE_BUCKET, ARCHIVE, BenchSupport.zip(entries, BenchSupport.parseSize(entrySize)));
+        amazonS3 = BenchSupport.client(server.getUrl(), 64);
+        S3Metrics metrics = BenchSupport.metrics();
+        bufferPool = new PartBufferPool(new AwzS3Config.Buffer());
+        uploadEngine = new MultipartUploadEngine(amazonS3, bufferPool, metrics, new AwzS3Config.Upload());
+        streamExtractor = new ZipStreamExtractor(amazonS3, uploadEngine, new AwzS3Config.Decompress());
+        zipReader = new S3ZipReader(amazonS3, uploadEngine, new AwzS3Config.Decompress());
+    }
+
+    @TearDown
+    public void tearDown() {
+        zipReader.shutdown();
+        streamExtractor.shutdown();
+        uploadEngine.shutdown();
+        amazonS3.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public DecompressResult streamExtract() throws IOException {
+        return streamExtractor.extract(SOURCE_BUCKET, ARCHIVE, TARGET_BUCKET, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DecompressResult rangedExtract() throws IOException {
+        return zipReader.extract(SOURCE_BUCKET, ARCHIVE, TARGET_BUCKET, null, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<ZipCentralEntry> listCentralDirectory() throws IOException {
+        return zipReader.listEntries(SOURCE_BUCKET, ARCHIVE, StandardCharsets.UTF_8);
+    }
+}
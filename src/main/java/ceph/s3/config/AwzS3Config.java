@@ -4,6 +4,10 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 
 @Data
 @Configuration
@@ -13,4 +17,307 @@ public class AwzS3Config {
     private String secretKey;
     private String url;
     private String bucket;
+    // 多个 RGW 网关，配置后忽略 url
+    private List<Endpoint> endpoints = new ArrayList<>();
+    private Gateway gateway = new Gateway();
+    private Upload upload = new Upload();
+    private Session session = new Session();
+    private Download download = new Download();
+    private Media media = new Media();
+    private Thumbnail thumbnail = new Thumbnail();
+    private Decompress decompress = new Decompress();
+    private MetadataCache metadataCache = new MetadataCache();
+    private Delete delete = new Delete();
+    private Listing listing = new Listing();
+    private Hedge hedge = new Hedge();
+    private Async async = new Async();
+    private Buffer buffer = new Buffer();
+    private Metrics metrics = new Metrics();
+    private Copy copy = new Copy();
+    private Archive archive = new Archive();
+    private Dedup dedup = new Dedup();
+
+    @Data
+    public static class Upload {
+        // 单个上传同时在途的分段数
+        private int partConcurrency = 4;
+        // 所有上传共享的分段上传线程数
+        private int globalPartConcurrency = 16;
+        // 分段大小下限(S3 要求除最后一段外不小于5MB)
+        private long minPartSize = 5 * 1024 * 1024;
+        // 分段大小上限
+        private long maxPartSize = 512L * 1024 * 1024;
+        // 根据文件大小计算分段大小时期望的分段数
+        private int targetPartCount = 1000;
+        // 单个分段最多尝试次数
+        private int maxAttempts = 3;
+        // 分段重试的初始退避时间，之后每次翻倍
+        private long retryBackoffMillis = 200;
+        // 读取分段时计算 MD5 并作为 Content-MD5 发送，由 RGW 校验分段内容
+        private boolean contentMd5 = true;
+    }
+
+    @Data
+    public static class Buffer {
+        // 缓冲区按该大小分块分配和复用，小于 G1 region 的一半可避免巨型对象
+        private int chunkSize = 1024 * 1024;
+        // 所有上传同时占用的缓冲区总大小
+        private long memoryBudget = 512L * 1024 * 1024;
+        // 使用堆外内存
+        private boolean direct = false;
+        // 预算用尽时等待的最长时间，超过后拒绝
+        private long acquireTimeoutMillis = 30 * 1000;
+    }
+
+    @Data
+    public static class Session {
+        // 会话无活动超过该时间后被自动中止
+        private long idleTimeoutMillis = 60 * 60 * 1000;
+        // 检查空闲会话的间隔
+        private long reaperIntervalMillis = 60 * 1000;
+        // 启动时按登记表恢复本服务上次退出时未结束的会话，重启前的会话可以续传，空闲的会被自动中止
+        private boolean recoverOnStartup = false;
+        // 本服务创建的会话登记表文件
+        private String registryFile = "./data/upload-sessions.log";
+        // 恢复未完成时查找不到会话的请求最多等待的时间
+        private long recoveryWaitMillis = 10 * 1000;
+    }
+
+    @Data
+    public static class Download {
+        // 并发下载时每个范围的大小
+        private long rangeSize = 8 * 1024 * 1024;
+        // 单个下载同时在途的范围数
+        private int rangeConcurrency = 4;
+        // 所有下载共享的范围下载线程数
+        private int globalRangeConcurrency = 16;
+        // 单个范围最多尝试次数
+        private int maxAttempts = 3;
+        // 范围重试的初始退避时间，之后每次翻倍
+        private long retryBackoffMillis = 200;
+        // 下载完成后是否按 ETag 校验内容
+        private boolean verify = true;
+    }
+
+    @Data
+    public static class Media {
+        // 首次读取视频开头的字节数，用于识别格式和查找 moov
+        private long probeBytes = 1024 * 1024;
+        // 从媒体数据起始位置开始读取的字节数，需覆盖视频前1秒
+        private long leadingMediaBytes = 8 * 1024 * 1024;
+        // 媒体任务工作线程数，0 表示与 CPU 核数相同
+        private int workers = 0;
+        // 等待执行的媒体任务上限，超过后直接拒绝
+        private int queueCapacity = 64;
+        // 单个 ffmpeg 进程的超时时间，超时后强制结束
+        private long jobTimeoutMillis = 30 * 1000;
+        // 异步任务结束后结果的保留时间
+        private long jobRetentionMillis = 10 * 60 * 1000;
+    }
+
+    @Data
+    public static class Thumbnail {
+        // 是否缓存视频第一帧截图
+        private boolean enabled = true;
+        // 内存缓存总大小上限
+        private long memoryMaxBytes = 64 * 1024 * 1024;
+        // 磁盘缓存总大小上限
+        private long diskMaxBytes = 1024L * 1024 * 1024;
+        // 磁盘缓存目录
+        private String diskDir = System.getProperty("java.io.tmpdir") + "/s3-thumbnails";
+    }
+
+    @Data
+    public static class Decompress {
+        // 解压缓冲区大小，不超过该大小的条目直接 PUT，更大的条目转为分段上传
+        private int bufferSize = 8 * 1024 * 1024;
+        // 同时上传的条目数
+        private int entryConcurrency = 8;
+        // 条目名未标记 UTF-8 时使用的字符集
+        private String charset = "GBK";
+    }
+
+    @Data
+    public static class MetadataCache {
+        // 是否缓存对象元数据
+        private boolean enabled = true;
+        // 缓存的最大条目数，超过后淘汰最久未访问的条目
+        private int maxEntries = 10000;
+        // 元数据的缓存时间
+        private long ttlMillis = 30 * 1000;
+        // 对象不存在时空结果的缓存时间
+        private long negativeTtlMillis = 5 * 1000;
+        // 批量获取元数据时的并发数
+        private int bulkConcurrency = 16;
+    }
+
+    @Data
+    public static class Delete {
+        // 每次 DeleteObjects 请求删除的键数，S3 上限为 1000
+        private int batchSize = 1000;
+        // 单个批量删除同时在途的批次数
+        private int batchConcurrency = 4;
+        // 所有批量删除共享的线程数
+        private int globalBatchConcurrency = 16;
+    }
+
+    @Data
+    public static class Listing {
+        // 每次 ListObjectsV2 请求返回的最大键数
+        private int pageSize = 1000;
+        // 单个列举同时在途的键范围数
+        private int shardConcurrency = 8;
+        // 拆分一个大范围时每个字符位置最多生成的分界点数
+        private int splitFanout = 8;
+        // 范围最多递归拆分的层数
+        private int maxSplitDepth = 4;
+        // 所有列举共享的分片线程数
+        private int globalShardConcurrency = 16;
+    }
+
+    @Data
+    public static class Endpoint {
+        private String url;
+        // 连接池最大连接数
+        private int maxConnections = 50;
+        // 建立连接的超时时间
+        private int connectionTimeoutMillis = 10 * 1000;
+        // 读取数据的超时时间
+        private int socketTimeoutMillis = 50 * 1000;
+        // 是否开启 TCP keep-alive
+        private boolean tcpKeepAlive = true;
+    }
+
+    public enum Balancer {
+        // 选择在途请求最少的网关
+        LEAST_OUTSTANDING,
+        // 选择 平均耗时 x (在途请求数 + 1) 最小的网关
+        EWMA
+    }
+
+    @Data
+    public static class Gateway {
+        private Balancer balancer = Balancer.EWMA;
+        // 耗时移动平均中新样本的权重
+        private double ewmaAlpha = 0.2;
+        // 健康探测间隔
+        private long healthCheckIntervalMillis = 5 * 1000;
+        // 连续失败多少次后摘除网关
+        private int failureThreshold = 3;
+        // 摘除后至少经过该时间且探测成功才恢复
+        private long ejectionMillis = 30 * 1000;
+    }
+
+    @Data
+    public static class Hedge {
+        // 是否开启对冲读取
+        private boolean enabled = false;
+        // 按最近请求首字节耗时的该分位数决定何时发出对冲请求
+        private double percentile = 0.95;
+        // 参与计算分位数的最近请求数
+        private int windowSize = 1000;
+        // 样本不足时的对冲延迟
+        private long defaultDelayMillis = 500;
+        // 对冲延迟下限
+        private long minDelayMillis = 20;
+        // 对冲延迟上限
+        private long maxDelayMillis = 2000;
+        // 默认截止时间(到首字节返回)，0 表示不限制
+        private long deadlineMillis = 0;
+        // 执行读取请求的线程数
+        private int threads = 32;
+    }
+
+    @Data
+    public static class Pool {
+        // 同时执行的任务数
+        private int threads;
+        // 排队等待的任务数上限，超过后拒绝
+        private int queueCapacity;
+
+        public Pool() {
+        }
+
+        public Pool(int threads, int queueCapacity) {
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    @Data
+    public static class Async {
+        // JDK 支持虚拟线程时用虚拟线程执行异步任务
+        private boolean virtualThreads = false;
+        // 元数据查询等短请求
+        private Pool metadata = new Pool(32, 1000);
+        // 上传、下载、解压等传输操作
+        private Pool transfer = new Pool(32, 200);
+        // 截图等媒体操作
+        private Pool media = new Pool(16, 64);
+    }
+
+    @Data
+    public static class Metrics {
+        // AwzS3Util 操作耗时超过该值时打印慢日志
+        private long slowOperationMillis = 3000;
+        // 单次 SDK 调用耗时超过该值时打印慢日志
+        private long slowRequestMillis = 1000;
+        // 传输吞吐量的统计间隔
+        private long throughputIntervalMillis = 10000;
+        // 除默认桶外使用桶名作为 bucket 标签的桶，其他桶的标签为 other
+        private List<String> bucketTags = new ArrayList<>();
+    }
+
+    @Data
+    public static class Copy {
+        // 不超过该大小的对象用一次 CopyObject 复制，更大的对象用并发 UploadPartCopy，CopyObject 上限为 5GB
+        private long multipartThreshold = 256L * 1024 * 1024;
+        // UploadPartCopy 每个分段的大小，对象过大时自动放大以保证不超过 10000 个分段
+        private long partSize = 128L * 1024 * 1024;
+        // 单个对象同时在途的分段数
+        private int partConcurrency = 8;
+        // 所有复制共享的分段线程数
+        private int globalPartConcurrency = 32;
+        // 单个前缀复制任务同时复制的对象数
+        private int objectConcurrency = 8;
+        // 所有复制任务共享的对象线程数
+        private int globalObjectConcurrency = 16;
+        // 同时运行的复制任务数，以及排队任务数上限
+        private Pool jobs = new Pool(2, 100);
+        // 单个请求失败后的最大尝试次数
+        private int maxAttempts = 3;
+        // 首次重试前的等待时间，之后每次翻倍
+        private long retryBackoffMillis = 200;
+        // 已结束的复制任务保留多久供查询
+        private long jobRetentionMillis = 60 * 60 * 1000;
+    }
+
+    @Data
+    public static class Archive {
+        // 写当前条目时同时预取的后续对象数
+        private int prefetchObjects = 4;
+        // 每次范围读取的大小，也是预读缓冲区的分配单位
+        private long rangeSize = 4L * 1024 * 1024;
+        // 每个对象最多预读的范围数，单个打包下载的预读内存不超过 prefetchObjects * readAheadRanges * rangeSize
+        private int readAheadRanges = 2;
+        // 所有打包下载共享的预取线程数
+        private int globalPrefetchConcurrency = 32;
+        // 已压缩的媒体和压缩包按扩展名直接存储(STORED)，其他文件用 DEFLATE 压缩
+        private List<String> storedExtensions = new ArrayList<>(Arrays.asList(
+                "jpg", "jpeg", "png", "gif", "webp", "heic", "mp4", "mov", "mkv", "avi", "flv", "webm", "m4a",
+                "mp3", "aac", "ogg", "flac", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "pdf", "docx",
+                "xlsx", "pptx"));
+        // DEFLATE 压缩级别，0 表示所有条目都直接存储
+        private int deflateLevel = 1;
+        // 单个范围读取失败后的最大尝试次数
+        private int maxAttempts = 3;
+        // 首次重试前的等待时间，之后每次翻倍
+        private long retryBackoffMillis = 200;
+    }
+
+    @Data
+    public static class Dedup {
+        // 内容哈希索引文件，每行记录一个 桶/SHA-256 到对象键和 ETag 的映射，启动时加载并压缩
+        private String indexFile = "./data/dedup-index.log";
+    }
 }
@@ -1,16 +1,44 @@
 package ceph.s3.controller;
 
 
+import ceph.s3.file.copy.CopyJobStatus;
+import ceph.s3.file.copy.CopyResult;
+import ceph.s3.file.copy.MetadataRewrite;
+import ceph.s3.file.dedup.DedupUploadResult;
+import ceph.s3.file.delete.DeleteResult;
+import ceph.s3.file.gateway.GatewayStatus;
+import ceph.s3.file.listing.ListFilter;
+import ceph.s3.file.media.MediaBusyException;
+import ceph.s3.file.media.MediaJobStatus;
+import ceph.s3.file.metadata.MetadataCacheStats;
+import ceph.s3.file.upload.UploadSessionStatus;
 import ceph.s3.file.util.AwzS3Util;
-import com.amazonaws.services.s3.model.ObjectMetadata;
+import ceph.s3.file.util.BufferBudgetExceededException;
+import ceph.s3.file.util.BufferPoolStats;
+import ceph.s3.file.util.ObjectModifiedException;
+import ceph.s3.file.zip.DecompressResult;
+import ceph.s3.file.zip.ZipCentralEntry;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.model.PartETag;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 
 @RestController
@@ -35,9 +63,10 @@ public class S3Controller {
     }
 
     @DeleteMapping("/deleteBucket")
-    public ResponseEntity<String> deleteBucket(@RequestParam("bucket") String bucket) {
+    public ResponseEntity<String> deleteBucket(@RequestParam("bucket") String bucket,
+                                               @RequestParam(value = "force", defaultValue = "false") boolean force) {
         try {
-            boolean deleted = AwzS3Util.deleteBucket(bucket);
+            boolean deleted = AwzS3Util.deleteBucket(bucket, force);
             if (deleted) {
                 return new ResponseEntity<>("桶删除成功!", HttpStatus.OK);
             } else {
@@ -51,15 +80,61 @@ public class S3Controller {
         }
     }
 
+    @GetMapping("/gateways")
+    public List<GatewayStatus> getGatewayStatus() {
+        return AwzS3Util.getGatewayStatus();
+    }
+
     @PostMapping(value = "/uploadObjectByBlock")
-    public ResponseEntity uploadObjectByBlock(@RequestParam("file") MultipartFile file, @RequestParam("bucket") String bucket) {
-        try {
-            boolean uploadSuccess = AwzS3Util.uploadByBlock(file, bucket);
+    public CompletableFuture<ResponseEntity<?>> uploadObjectByBlock(@RequestParam("file") MultipartFile file,
+                                                                 @RequestParam("bucket") String bucket,
+                                                                 @RequestParam(value = "partConcurrency", required = false) Integer partConcurrency) {
+        return AwzS3Util.uploadByBlockAsync(file, bucket, partConcurrency).handle((uploadSuccess, e) -> {
+            if (e != null) {
+                return failure(e, "上传失败!");
+            }
             if (uploadSuccess) {
                 return new ResponseEntity<>("上传成功!", HttpStatus.OK);
             } else {
                 return new ResponseEntity<>("上传失败!", HttpStatus.INTERNAL_SERVER_ERROR);
             }
+        });
+    }
+
+    /**
+     * 按内容去重上传，可在 X-Content-SHA256 请求头中提供文件内容的 SHA-256，
+     * 同一桶内已有相同内容时不上传数据，改为服务端复制。
+     */
+    @PostMapping(value = "/uploadObjectDedup")
+    public CompletableFuture<ResponseEntity<?>> uploadObjectDedup(@RequestParam("file") MultipartFile file,
+                                                               @RequestParam("bucket") String bucket,
+                                                               @RequestHeader(value = "X-Content-SHA256", required = false) String sha256,
+                                                               @RequestParam(value = "partConcurrency", required = false) Integer partConcurrency) {
+        return AwzS3Util.uploadDedupAsync(file, bucket, sha256, partConcurrency).handle((result, e) -> {
+            if (e != null) {
+                return failure(e, "上传失败!");
+            }
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    /**
+     * 流式上传：请求体即文件内容(如 application/octet-stream)，边接收边分段上传，
+     * 不受 multipart 大小限制。
+     */
+    @PutMapping(value = "/uploadStream")
+    public ResponseEntity<String> uploadStream(HttpServletRequest request,
+                                               @RequestParam("bucket") String bucket,
+                                               @RequestParam("fileName") String fileName) {
+        try {
+            String uploadedKey = AwzS3Util.uploadByStream(request.getInputStream(), request.getContentLengthLong(), bucket, fileName);
+            return new ResponseEntity<>("上传成功，Key：" + uploadedKey, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (BufferBudgetExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             return new ResponseEntity<>("上传失败!", HttpStatus.INTERNAL_SERVER_ERROR);
@@ -67,23 +142,109 @@ public class S3Controller {
     }
 
     @PostMapping(value = "/uploadOneBlock")
-    public ResponseEntity uploadOneBlock(@RequestParam("file") MultipartFile file,
+    public ResponseEntity<?> uploadOneBlock(@RequestParam("file") MultipartFile file,
                                          @RequestParam("bucket") String bucket,
                                          @RequestParam("position") int position,
-                                         @RequestParam("blockSize") long blockSize) {
+                                         @RequestParam("blockSize") long blockSize,
+                                         @RequestParam(value = "uploadId", required = false) String uploadId) {
         try {
+            // 指定了上传会话时只上传该块，不合并
+            if (uploadId != null) {
+                PartETag partETag = AwzS3Util.uploadBlockToSession(file, position, blockSize, uploadId);
+                return new ResponseEntity<>(partETag, HttpStatus.OK);
+            }
             String uploadedKey = AwzS3Util.uploadOneBlock(file, position, blockSize, bucket);
             if (uploadedKey != null) {
                 return new ResponseEntity<>("上传成功，Key：" + uploadedKey, HttpStatus.OK);
             } else {
                 return new ResponseEntity<>("上传失败!", HttpStatus.INTERNAL_SERVER_ERROR);
             }
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (BufferBudgetExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             return new ResponseEntity<>("上传失败!", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @PostMapping("/session/initiate")
+    public ResponseEntity<?> initiateUpload(@RequestParam("bucket") String bucket,
+                                         @RequestParam("fileName") String fileName,
+                                         @RequestParam(value = "totalParts", required = false) Integer totalParts) {
+        try {
+            UploadSessionStatus status = AwzS3Util.initiateUpload(bucket, fileName, totalParts);
+            return new ResponseEntity<>(status, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>("上传会话创建失败!", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PutMapping("/session/uploadPart")
+    public ResponseEntity<?> uploadPart(@RequestParam("uploadId") String uploadId,
+                                     @RequestParam("partNumber") int partNumber,
+                                     @RequestParam("file") MultipartFile file) {
+        try {
+            PartETag partETag = AwzS3Util.uploadPart(uploadId, partNumber, file);
+            return new ResponseEntity<>(partETag, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        } catch (BufferBudgetExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>("分段上传失败!", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @GetMapping("/session/status")
+    public ResponseEntity<?> getUploadStatus(@RequestParam("uploadId") String uploadId) {
+        try {
+            return new ResponseEntity<>(AwzS3Util.getUploadStatus(uploadId), HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @PostMapping("/session/complete")
+    public ResponseEntity<String> completeUpload(@RequestParam("uploadId") String uploadId) {
+        try {
+            String key = AwzS3Util.completeUpload(uploadId);
+            return new ResponseEntity<>("上传成功，Key：" + key, HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ResponseEntity<>("分段合并失败!", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @DeleteMapping("/session/abort")
+    public ResponseEntity<String> abortUpload(@RequestParam("uploadId") String uploadId) {
+        try {
+            AwzS3Util.abortUpload(uploadId);
+            return new ResponseEntity<>("上传已中止!", HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
     @DeleteMapping("/deleteFile")
     public ResponseEntity<String> deleteFile(@RequestParam("bucket") String bucket, @RequestParam("fileName") String fileName) {
         try {
@@ -101,51 +262,352 @@ public class S3Controller {
         }
     }
 
+    @PostMapping("/deleteFiles")
+    public CompletableFuture<ResponseEntity<?>> deleteFiles(@RequestParam(value = "bucket", required = false) String bucket,
+                                                         @RequestParam(value = "fileNames", required = false) List<String> fileNames,
+                                                         @RequestParam(value = "prefix", required = false) String prefix) {
+        return AwzS3Util.deleteFilesAsync(bucket, fileNames, prefix).handle((result, e) -> {
+            if (e != null) {
+                return failure(e, "文件删除失败!");
+            }
+            if (result.isSuccess()) {
+                return ResponseEntity.ok(result);
+            } else {
+                // 部分文件删除失败，结果中带有失败明细
+                return ResponseEntity.internalServerError().body(result);
+            }
+        });
+    }
+
+    /**
+     * 列举对象，默认以 NDJSON 流式返回；summary=true 时只返回数量和总大小。
+     */
+    @GetMapping("/listObjects")
+    public ResponseEntity<?> listObjects(@RequestParam(value = "bucket", required = false) String bucket,
+                                      @RequestParam(value = "prefix", required = false) String prefix,
+                                      @RequestParam(value = "minSize", required = false) Long minSize,
+                                      @RequestParam(value = "maxSize", required = false) Long maxSize,
+                                      @RequestParam(value = "modifiedAfter", required = false)
+                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date modifiedAfter,
+                                      @RequestParam(value = "modifiedBefore", required = false)
+                                      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date modifiedBefore,
+                                      @RequestParam(value = "parallel", defaultValue = "false") boolean parallel,
+                                      @RequestParam(value = "summary", defaultValue = "false") boolean summary) {
+        ListFilter filter = new ListFilter();
+        filter.setPrefix(prefix);
+        filter.setMinSize(minSize);
+        filter.setMaxSize(maxSize);
+        filter.setModifiedAfter(modifiedAfter);
+        filter.setModifiedBefore(modifiedBefore);
+        try {
+            if (summary) {
+                return ResponseEntity.ok(AwzS3Util.summarizeObjects(bucket, filter, parallel));
+            }
+            return AwzS3Util.listObjects(bucket, filter, parallel);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().body("列举失败!");
+        }
+    }
+
+    /**
+     * 把 fileNames 中的对象或 prefix 下的全部对象打包成 zip 流式下载。
+     */
+    @PostMapping(value = "/downloadZip")
+    public ResponseEntity<?> downloadZip(@RequestParam(value = "bucket", required = false) String bucket,
+                                      @RequestParam(value = "fileNames", required = false) List<String> fileNames,
+                                      @RequestParam(value = "prefix", required = false) String prefix,
+                                      @RequestParam(value = "zipName", required = false) String zipName) {
+        try {
+            return AwzS3Util.downloadZip(bucket, fileNames, prefix, zipName);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().body("打包下载失败!");
+        }
+    }
+
     @PostMapping(value = "/downloadObject")
-    public ResponseEntity downloadObject(String bucket, String fileName,String localPath) {
-        ResponseEntity<byte[]> download = null;
+    public CompletableFuture<ResponseEntity<?>> downloadObject(String bucket, String fileName, String localPath, Long deadlineMillis) {
+        return AwzS3Util.downloadByNameAsync(bucket, fileName, localPath, deadlineMillis).handle((download, e) -> {
+            if (e != null) {
+                return failure(e, "下载失败!");
+            }
+            return download;
+        });
+    }
+
+    @PostMapping(value = "/downloadToLocal")
+    public CompletableFuture<ResponseEntity<?>> downloadToLocal(@RequestParam(value = "bucket", required = false) String bucket,
+                                                             @RequestParam("fileName") String fileName,
+                                                             @RequestParam("localPath") String localPath) {
+        return AwzS3Util.downloadToLocalAsync(bucket, fileName, localPath).handle((localFile, e) -> {
+            if (e != null) {
+                return failure(e, "下载失败!");
+            }
+            return new ResponseEntity<>("下载成功，保存到：" + localFile, HttpStatus.OK);
+        });
+    }
+
+    @GetMapping(value = "/download")
+    public ResponseEntity<StreamingResponseBody> download(@RequestParam(value = "bucket", required = false) String bucket,
+                                                          @RequestParam("fileName") String fileName,
+                                                          @RequestParam(value = "localPath", required = false) String localPath,
+                                                          @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            download = AwzS3Util.downloadByName(bucket, fileName,localPath);
+            return AwzS3Util.downloadStream(bucket, fileName, range, ifNoneMatch, localPath);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (ObjectModifiedException e) {
+            // 对象正在被反复覆盖，客户端稍后重试
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                return ResponseEntity.notFound().build();
+            }
+            e.printStackTrace();
+            return ResponseEntity.internalServerError().build();
         } catch (Exception e) {
             e.printStackTrace();
+            return ResponseEntity.internalServerError().build();
         }
-        return download;
     }
 
     @GetMapping(value = "/getFileInfo")
-    public ObjectMetadata getFileInfo(String bucket, String fileName) {
-        return AwzS3Util.getFileInfo(bucket, fileName);
+    public CompletableFuture<ResponseEntity<?>> getFileInfo(String bucket, String fileName) {
+        return AwzS3Util.getFileInfoAsync(bucket, fileName).handle((metadata, e) -> {
+            if (e != null) {
+                return failure(e, "获取文件信息失败!");
+            }
+            return ResponseEntity.ok(metadata);
+        });
+    }
+
+    @PostMapping(value = "/getFileInfos")
+    public CompletableFuture<ResponseEntity<?>> getFileInfos(@RequestParam(required = false) String bucket, @RequestParam List<String> fileNames) {
+        return AwzS3Util.getFileInfosAsync(bucket, fileNames).handle((infos, e) -> {
+            if (e != null) {
+                return failure(e, "获取文件信息失败!");
+            }
+            return ResponseEntity.ok(infos);
+        });
+    }
+
+    @GetMapping(value = "/getFileInfo/stats")
+    public MetadataCacheStats getFileInfoStats() {
+        return AwzS3Util.getMetadataCacheStats();
     }
 
     @PostMapping(value = "/decompressAndUpload")
-    public ResponseEntity<String> decompressAndUploadFile(
+    public CompletableFuture<ResponseEntity<?>> decompressAndUploadFile(
             @RequestParam String sourceBucket,
             @RequestParam String sourceKey,
-            @RequestParam String targetBucket) {
+            @RequestParam String targetBucket,
+            @RequestParam(required = false) String charset) {
+        return AwzS3Util.decompressAndUploadAsync(sourceBucket, sourceKey, targetBucket, charset).handle(S3Controller::decompressResponse);
+    }
+
+    @GetMapping("/zip/list")
+    public ResponseEntity<?> listZipEntries(@RequestParam String bucket,
+                                         @RequestParam String key,
+                                         @RequestParam(required = false) String charset) {
         try {
-            boolean result = AwzS3Util.decompressAndUpload(sourceBucket, sourceKey, targetBucket);
-            if (result) {
-                return ResponseEntity.ok("文件成功解压并上传到目标桶！");
-            } else {
-                return ResponseEntity.internalServerError().body("文件解压并上传失败！");
-            }
+            List<ZipCentralEntry> entries = AwzS3Util.listZipEntries(bucket, key, charset);
+            return ResponseEntity.ok(entries);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().body("服务器内部错误：" + e.getMessage());
         }
     }
 
+    @PostMapping("/zip/extract")
+    public CompletableFuture<ResponseEntity<?>> extractZipEntries(@RequestParam String sourceBucket,
+                                                               @RequestParam String sourceKey,
+                                                               @RequestParam String targetBucket,
+                                                               @RequestParam(required = false) List<String> entries,
+                                                               @RequestParam(required = false) String charset) {
+        return AwzS3Util.extractZipEntriesAsync(sourceBucket, sourceKey, targetBucket, entries, charset).handle(S3Controller::decompressResponse);
+    }
+
+    private static ResponseEntity<?> decompressResponse(DecompressResult result, Throwable e) {
+        if (e != null) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IllegalArgumentException || cause instanceof RejectedExecutionException
+                    || cause instanceof BufferBudgetExceededException) {
+                return failure(cause, null);
+            }
+            cause.printStackTrace();
+            return ResponseEntity.internalServerError().body("服务器内部错误：" + cause.getMessage());
+        }
+        if (result.isSuccess()) {
+            return ResponseEntity.ok(result);
+        } else {
+            // 部分条目上传失败，清单中带有失败原因
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 服务端复制对象，请求体可选，为改写的元数据(contentType、userMetadata 等)。
+     */
+    @PostMapping("/copyObject")
+    public CompletableFuture<ResponseEntity<?>> copyObject(@RequestParam String sourceBucket,
+                                                       @RequestParam String sourceKey,
+                                                       @RequestParam String targetBucket,
+                                                       @RequestParam(required = false) String targetKey,
+                                                       @RequestBody(required = false) MetadataRewrite rewrite) {
+        return AwzS3Util.copyObjectAsync(sourceBucket, sourceKey, targetBucket, targetKey, rewrite).handle(S3Controller::copyResponse);
+    }
+
+    @PostMapping("/moveObject")
+    public CompletableFuture<ResponseEntity<?>> moveObject(@RequestParam String sourceBucket,
+                                                       @RequestParam String sourceKey,
+                                                       @RequestParam String targetBucket,
+                                                       @RequestParam(required = false) String targetKey,
+                                                       @RequestBody(required = false) MetadataRewrite rewrite) {
+        return AwzS3Util.moveObjectAsync(sourceBucket, sourceKey, targetBucket, targetKey, rewrite).handle(S3Controller::copyResponse);
+    }
+
+    private static ResponseEntity<?> copyResponse(CopyResult result, Throwable e) {
+        if (e == null) {
+            return ResponseEntity.ok(result);
+        }
+        Throwable cause = unwrap(e);
+        if (cause instanceof AmazonServiceException
+                && ((AmazonServiceException) cause).getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+            return new ResponseEntity<>("源文件不存在!", HttpStatus.NOT_FOUND);
+        }
+        return failure(cause, "复制失败：" + cause.getMessage());
+    }
+
+    /**
+     * 提交后台复制任务，复制单个大对象(sourceKey)或整个前缀(sourcePrefix)，返回 202 和任务状态。
+     */
+    @PostMapping("/copy/jobs")
+    public ResponseEntity<?> submitCopyJob(@RequestParam String sourceBucket,
+                                        @RequestParam(required = false) String sourceKey,
+                                        @RequestParam(required = false) String sourcePrefix,
+                                        @RequestParam String targetBucket,
+                                        @RequestParam(required = false) String target,
+                                        @RequestParam(defaultValue = "false") boolean move,
+                                        @RequestBody(required = false) MetadataRewrite rewrite) {
+        try {
+            CopyJobStatus status = AwzS3Util.submitCopyJob(sourceBucket, sourceKey, sourcePrefix, targetBucket, target, rewrite, move);
+            return new ResponseEntity<>(status, HttpStatus.ACCEPTED);
+        } catch (IllegalArgumentException | RejectedExecutionException e) {
+            return failure(e, null);
+        }
+    }
+
+    @GetMapping("/copy/jobs/{jobId}")
+    public ResponseEntity<?> getCopyJobStatus(@PathVariable String jobId) {
+        try {
+            return new ResponseEntity<>(AwzS3Util.getCopyJobStatus(jobId), HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @DeleteMapping("/copy/jobs/{jobId}")
+    public ResponseEntity<?> cancelCopyJob(@PathVariable String jobId) {
+        try {
+            return new ResponseEntity<>(AwzS3Util.cancelCopyJob(jobId), HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
     @GetMapping("/extractFirstFrame")
-    public ResponseEntity<byte[]> getFirstFrame(@RequestParam String bucket,
-                                                @RequestParam String fileName,
-                                                @RequestParam String localPath) {
+    public CompletableFuture<ResponseEntity<byte[]>> getFirstFrame(@RequestParam String bucket,
+                                                                   @RequestParam String fileName,
+                                                                   @RequestParam String localPath) {
+        return AwzS3Util.extractFirstFrameAsync(bucket, fileName, localPath).handle((frame, e) -> {
+            if (e == null) {
+                return ResponseEntity.ok().body(frame);
+            }
+            Throwable cause = unwrap(e);
+            if (cause instanceof MediaBusyException || cause instanceof RejectedExecutionException) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(cause.getMessage().getBytes());
+            }
+            cause.printStackTrace();
+            return ResponseEntity.internalServerError().body(("Failed to get first frame: " + cause.getMessage()).getBytes());
+        });
+    }
+
+    @PostMapping("/media/jobs/firstFrame")
+    public ResponseEntity<?> submitFirstFrameJob(@RequestParam String bucket,
+                                              @RequestParam String fileName,
+                                              @RequestParam String localPath) {
+        try {
+            MediaJobStatus status = AwzS3Util.submitFirstFrameJob(bucket, fileName, localPath);
+            return new ResponseEntity<>(status, HttpStatus.ACCEPTED);
+        } catch (MediaBusyException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/media/jobs/{jobId}")
+    public ResponseEntity<?> getMediaJobStatus(@PathVariable String jobId) {
         try {
-            byte[] frame = AwzS3Util.extractFirstFrame(bucket, fileName, localPath);
-            return ResponseEntity.ok().body(frame);
+            return new ResponseEntity<>(AwzS3Util.getMediaJobStatus(jobId), HttpStatus.OK);
+        } catch (NoSuchElementException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    @GetMapping("/media/jobs/{jobId}/result")
+    public ResponseEntity<byte[]> getMediaJobResult(@PathVariable String jobId) {
+        try {
+            byte[] result = AwzS3Util.getMediaJobResult(jobId);
+            if (result == null) {
+                // 任务尚未结束
+                return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+            }
+            return ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(result);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage().getBytes());
         } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.internalServerError().body(("Failed to get first frame: " + e.getMessage()).getBytes());
+            return ResponseEntity.internalServerError().body(e.getMessage().getBytes());
         }
     }
 
+
+    @GetMapping("/bufferPool/stats")
+    public BufferPoolStats getBufferPoolStats() {
+        return AwzS3Util.getBufferPoolStats();
+    }
+
+    @GetMapping("/async/stats")
+    public Map<String, Map<String, Object>> getAsyncStats() {
+        return AwzS3Util.getAsyncStats();
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 异步操作失败时的响应：参数错误返回 400，执行器队列已满返回 429，其余返回 500 和 message。
+     */
+    private static ResponseEntity<?> failure(Throwable e, String message) {
+        Throwable cause = unwrap(e);
+        if (cause instanceof IllegalArgumentException) {
+            return new ResponseEntity<>(cause.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+        if (cause instanceof RejectedExecutionException || cause instanceof BufferBudgetExceededException) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(cause.getMessage());
+        }
+        cause.printStackTrace();
+        return new ResponseEntity<>(message, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
 }
@@ -0,0 +1,85 @@
+package ceph.s3.file.async;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.metrics.S3Metrics;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按操作类别划分的异步执行器：元数据(HEAD、列举等短请求)、传输(上传、下载、解压)和媒体(ffmpeg)。
+ * 各类别的线程和队列相互独立，慢的传输和截图不会占满 Tomcat 线程或挤占元数据请求。
+ * 队列已满时返回以 RejectedExecutionException 失败的 future。
+ * 每个操作记录排队等待时间和执行耗时，各执行器的执行中和排队任务数注册为 gauge。
+ */
+public class AsyncExecutors {
+
+    public enum OperationClass {
+        METADATA, TRANSFER, MEDIA
+    }
+
+    private final Map<OperationClass, BoundedExecutor> executors = new LinkedHashMap<>();
+    private final S3Metrics metrics;
+
+    public AsyncExecutors(AwzS3Config.Async config, S3Metrics metrics) {
+        this.metrics = metrics;
+        executors.put(OperationClass.METADATA, new BoundedExecutor("metadata", config.getMetadata(), config.isVirtualThreads()));
+        executors.put(OperationClass.TRANSFER, new BoundedExecutor("transfer", config.getTransfer(), config.isVirtualThreads()));
+        executors.put(OperationClass.MEDIA, new BoundedExecutor("media", config.getMedia(), config.isVirtualThreads()));
+        executors.forEach((operationClass, executor) -> {
+            Tags tags = Tags.of("class", operationClass.name());
+            metrics.gauge("s3.async.active", tags, "执行中的异步任务数", executor, BoundedExecutor::getActiveCount);
+            metrics.gauge("s3.async.queued", tags, "排队中的异步任务数", executor, BoundedExecutor::getQueuedCount);
+        });
+    }
+
+    /**
+     * 在 operationClass 对应的执行器上执行 task，按 operation 和 bucket 记录耗时；
+     * task 抛出的异常包装为 CompletionException。
+     */
+    public <T> CompletableFuture<T> supply(OperationClass operationClass, String operation, String bucket, Callable<T> task) {
+        long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                metrics.recordQueueWait(operationClass.name(), start - submitted);
+                try {
+                    // task 内部调用的同步操作不再重复计时
+                    return metrics.time(operation, bucket, task::call);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executors.get(operationClass));
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * 各执行器的执行中和排队任务数。
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        executors.forEach((operationClass, executor) -> {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("virtualThreads", executor.isVirtual());
+            stat.put("active", executor.getActiveCount());
+            stat.put("queued", executor.getQueuedCount());
+            stats.put(operationClass.name(), stat);
+        });
+        return stats;
+    }
+
+    public void shutdown() {
+        executors.values().forEach(BoundedExecutor::shutdown);
+    }
+}
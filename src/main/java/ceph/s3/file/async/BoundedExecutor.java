@@ -0,0 +1,102 @@
+package ceph.s3.file.async;
+
+import ceph.s3.config.AwzS3Config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有界执行器：同时执行的任务数不超过 threads，排队的任务数不超过 queueCapacity，超过时拒绝。
+ * 开启虚拟线程且运行在支持虚拟线程的 JDK 上时，每个任务一个虚拟线程，同时执行数由信号量限制；
+ * 否则使用固定大小的平台线程池。
+ */
+class BoundedExecutor implements Executor {
+    private final String name;
+    private final ExecutorService delegate;
+    // 已接收(执行中 + 排队)的任务数
+    private final Semaphore admitted;
+    // 虚拟线程模式下限制同时执行的任务数，平台线程池模式下为 null
+    private final Semaphore running;
+    private final int threads;
+    private final int capacity;
+    private final AtomicInteger active = new AtomicInteger();
+
+    BoundedExecutor(String name, AwzS3Config.Pool config, boolean virtualThreads) {
+        this.name = name;
+        this.threads = Math.max(1, config.getThreads());
+        this.capacity = threads + Math.max(0, config.getQueueCapacity());
+        this.admitted = new Semaphore(capacity);
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.delegate = virtualExecutor;
+            this.running = new Semaphore(threads);
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.delegate = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "s3-async-" + name + "-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.running = null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!admitted.tryAcquire()) {
+            throw new RejectedExecutionException(name + " 任务过多，请稍后重试");
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    if (running != null) {
+                        running.acquireUninterruptibly();
+                    }
+                    active.incrementAndGet();
+                    try {
+                        command.run();
+                    } finally {
+                        active.decrementAndGet();
+                        if (running != null) {
+                            running.release();
+                        }
+                    }
+                } finally {
+                    admitted.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    boolean isVirtual() {
+        return running != null;
+    }
+
+    int getActiveCount() {
+        return active.get();
+    }
+
+    int getQueuedCount() {
+        return Math.max(0, capacity - admitted.availablePermits() - active.get());
+    }
+
+    void shutdown() {
+        delegate.shutdownNow();
+    }
+
+    /**
+     * 通过反射调用 Executors.newVirtualThreadPerTaskExecutor，JDK 不支持时返回 null。
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
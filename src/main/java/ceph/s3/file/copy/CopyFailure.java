@@ -0,0 +1,16 @@
+package ceph.s3.file.copy;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 复制任务中复制失败的一个对象。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CopyFailure {
+    private String key;
+    private String message;
+}
@@ -0,0 +1,129 @@
+package ceph.s3.file.copy;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 后台复制(移动)任务：复制单个对象或前缀下的全部对象，记录进度供查询。
+ * 失败明细最多记录 MAX_REPORTED_FAILURES 条，failedObjects 为全部失败数。
+ */
+@Getter
+public class CopyJob {
+    static final int MAX_REPORTED_FAILURES = 1000;
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final String sourceBucket;
+    // 复制单个对象时为对象键，否则为 null
+    private final String sourceKey;
+    private final String sourcePrefix;
+    private final String targetBucket;
+    // 复制单个对象时为目标键，否则为目标前缀
+    private final String target;
+    private final boolean move;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    // 前缀已列举完，totalObjects 和 totalBytes 不再增长
+    private volatile boolean listingComplete;
+    private volatile String error;
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+    private final AtomicLong totalObjects = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong copiedObjects = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong failedObjects = new AtomicLong();
+    private final List<CopyFailure> failures = Collections.synchronizedList(new ArrayList<>());
+    private volatile Future<?> future;
+
+    CopyJob(String id, String sourceBucket, String sourceKey, String sourcePrefix, String targetBucket,
+            String target, boolean move) {
+        this.id = id;
+        this.sourceBucket = sourceBucket;
+        this.sourceKey = sourceKey;
+        this.sourcePrefix = sourcePrefix;
+        this.targetBucket = targetBucket;
+        this.target = target;
+        this.move = move;
+    }
+
+    public Status getStatus() {
+        return status.get();
+    }
+
+    public boolean isDone() {
+        Status current = status.get();
+        return current != Status.QUEUED && current != Status.RUNNING;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * 开始执行，任务已被取消时返回 false。
+     */
+    boolean start() {
+        if (!status.compareAndSet(Status.QUEUED, Status.RUNNING)) {
+            return false;
+        }
+        startedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * 取消任务：排队中的直接结束，执行中的中断执行线程，由执行线程结束任务。
+     */
+    boolean cancel() {
+        if (status.compareAndSet(Status.QUEUED, Status.CANCELLED)) {
+            finishedAt = System.currentTimeMillis();
+            future.cancel(false);
+            return true;
+        }
+        if (status.get() == Status.RUNNING) {
+            return future.cancel(true);
+        }
+        return false;
+    }
+
+    void listed(long size) {
+        totalObjects.incrementAndGet();
+        totalBytes.addAndGet(size);
+    }
+
+    void listingCompleted() {
+        listingComplete = true;
+    }
+
+    void addCopiedBytes(long bytes) {
+        copiedBytes.addAndGet(bytes);
+    }
+
+    void copied() {
+        copiedObjects.incrementAndGet();
+    }
+
+    void failed(String key, String message) {
+        failedObjects.incrementAndGet();
+        synchronized (failures) {
+            if (failures.size() < MAX_REPORTED_FAILURES) {
+                failures.add(new CopyFailure(key, message));
+            }
+        }
+    }
+
+    void finish(Status finalStatus, String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        status.set(finalStatus);
+    }
+}
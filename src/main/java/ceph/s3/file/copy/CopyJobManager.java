@@ -0,0 +1,209 @@
+package ceph.s3.file.copy;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.listing.ListFilter;
+import ceph.s3.file.listing.ObjectLister;
+import com.amazonaws.SdkClientException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 后台复制任务：复制(移动)单个大对象或整个前缀，进度可按 jobId 查询。
+ * 前缀按页列举，每个对象交给共享的对象线程池复制，单个任务同时复制的对象数受 objectConcurrency 限制，
+ * 在途任务数有上限，内存占用与前缀下的对象总数无关。
+ * 同时运行的任务数和排队任务数有上限，队列满时抛出 RejectedExecutionException。
+ */
+public class CopyJobManager {
+    private final ObjectCopier copier;
+    private final ObjectLister lister;
+    private final AwzS3Config.Copy config;
+    // 目标对象写入或源对象删除后回调，用于清理元数据缓存
+    private final BiConsumer<String, String> onObjectChanged;
+    private final ThreadPoolExecutor jobExecutor;
+    private final ExecutorService objectExecutor;
+    private final Map<String, CopyJob> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner;
+
+    public CopyJobManager(ObjectCopier copier, ObjectLister lister, AwzS3Config.Copy config,
+                          BiConsumer<String, String> onObjectChanged) {
+        this.copier = copier;
+        this.lister = lister;
+        this.config = config;
+        this.onObjectChanged = onObjectChanged;
+        AtomicInteger jobThreadIndex = new AtomicInteger();
+        int jobThreads = Math.max(1, config.getJobs().getThreads());
+        this.jobExecutor = new ThreadPoolExecutor(jobThreads, jobThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getJobs().getQueueCapacity())), r -> {
+            Thread thread = new Thread(r, "s3-copy-job-" + jobThreadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger objectThreadIndex = new AtomicInteger();
+        this.objectExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalObjectConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-copy-object-" + objectThreadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "s3-copy-job-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long retention = config.getJobRetentionMillis();
+        cleaner.scheduleWithFixedDelay(this::removeExpiredJobs, retention, retention, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交复制任务。sourceKey 不为空时复制单个对象到 target 键；否则复制 sourcePrefix 下的全部对象，
+     * 目标键为 target 加上对象键去掉 sourcePrefix 后的部分。
+     *
+     * @throws RejectedExecutionException 任务队列已满
+     */
+    public CopyJob submit(String sourceBucket, String sourceKey, String sourcePrefix, String targetBucket,
+                          String target, MetadataRewrite rewrite, boolean move) {
+        CopyJob job = new CopyJob(UUID.randomUUID().toString(), sourceBucket, sourceKey, sourcePrefix,
+                targetBucket, target, move);
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            run(job, rewrite);
+            return null;
+        });
+        job.setFuture(task);
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new RejectedExecutionException("复制任务队列已满，请稍后重试", e);
+        }
+        return job;
+    }
+
+    public CopyJob getJob(String jobId) {
+        CopyJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new NoSuchElementException("复制任务不存在: " + jobId);
+        }
+        return job;
+    }
+
+    public CopyJob cancel(String jobId) {
+        CopyJob job = getJob(jobId);
+        job.cancel();
+        return job;
+    }
+
+    private void run(CopyJob job, MetadataRewrite rewrite) {
+        if (!job.start()) {
+            return;
+        }
+        // 在途的对象复制，取消任务时一并中断
+        Set<Future<?>> running = ConcurrentHashMap.newKeySet();
+        int objectConcurrency = Math.max(1, config.getObjectConcurrency());
+        Semaphore inFlight = new Semaphore(objectConcurrency);
+        try {
+            if (job.getSourceKey() != null) {
+                job.listed(copier.sizeOf(job.getSourceBucket(), job.getSourceKey()));
+                job.listingCompleted();
+                copyOne(job, job.getSourceKey(), job.getTarget(), rewrite);
+            } else {
+                ListFilter filter = new ListFilter();
+                filter.setPrefix(job.getSourcePrefix());
+                lister.list(job.getSourceBucket(), filter, false, summary -> {
+                    job.listed(summary.getSize());
+                    acquire(inFlight, 1);
+                    String key = summary.getKey();
+                    String targetKey = job.getTarget() + key.substring(job.getSourcePrefix().length());
+                    FutureTask<Void> task = new FutureTask<Void>(() -> copyOne(job, key, targetKey, rewrite), null) {
+                        @Override
+                        protected void done() {
+                            running.remove(this);
+                            inFlight.release();
+                        }
+                    };
+                    running.add(task);
+                    try {
+                        objectExecutor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        running.remove(task);
+                        inFlight.release();
+                        throw e;
+                    }
+                });
+                job.listingCompleted();
+                // 取回全部名额即所有对象复制结束
+                acquire(inFlight, objectConcurrency);
+            }
+            if (job.getFuture().isCancelled()) {
+                job.finish(CopyJob.Status.CANCELLED, null);
+            } else {
+                job.finish(job.getFailedObjects().get() == 0 ? CopyJob.Status.SUCCEEDED : CopyJob.Status.FAILED, null);
+            }
+        } catch (IOException | RuntimeException e) {
+            running.forEach(future -> future.cancel(true));
+            if (Thread.currentThread().isInterrupted() || job.getFuture().isCancelled()) {
+                job.finish(CopyJob.Status.CANCELLED, null);
+            } else {
+                e.printStackTrace();
+                job.finish(CopyJob.Status.FAILED, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 复制(移动)一个对象，失败记入任务而不抛出，其他对象继续复制。
+     */
+    private void copyOne(CopyJob job, String sourceKey, String targetKey, MetadataRewrite rewrite) {
+        AtomicLong copied = new AtomicLong();
+        try {
+            if (job.isMove()) {
+                copier.move(job.getSourceBucket(), sourceKey, job.getTargetBucket(), targetKey, rewrite, bytes -> {
+                    copied.addAndGet(bytes);
+                    job.addCopiedBytes(bytes);
+                });
+            } else {
+                copier.copy(job.getSourceBucket(), sourceKey, job.getTargetBucket(), targetKey, rewrite, bytes -> {
+                    copied.addAndGet(bytes);
+                    job.addCopiedBytes(bytes);
+                });
+            }
+            job.copied();
+        } catch (IOException | SdkClientException | IllegalArgumentException e) {
+            // 失败对象已复制的部分不计入进度
+            job.addCopiedBytes(-copied.get());
+            job.failed(sourceKey, e.getMessage());
+        } finally {
+            onObjectChanged.accept(job.getTargetBucket(), targetKey);
+            if (job.isMove()) {
+                onObjectChanged.accept(job.getSourceBucket(), sourceKey);
+            }
+        }
+    }
+
+    private void removeExpiredJobs() {
+        long deadline = System.currentTimeMillis() - config.getJobRetentionMillis();
+        jobs.values().removeIf(job -> job.isDone() && job.getFinishedAt() < deadline);
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) throws IOException {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("复制任务被中断", e);
+        }
+    }
+
+    public void shutdown() {
+        cleaner.shutdownNow();
+        jobExecutor.shutdownNow();
+        objectExecutor.shutdownNow();
+    }
+}
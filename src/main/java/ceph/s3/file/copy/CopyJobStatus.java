@@ -0,0 +1,59 @@
+package ceph.s3.file.copy;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 返回给客户端的复制任务状态和进度。
+ */
+@Data
+public class CopyJobStatus {
+    private String jobId;
+    private CopyJob.Status status;
+    private String sourceBucket;
+    private String sourceKey;
+    private String sourcePrefix;
+    private String targetBucket;
+    private String target;
+    private boolean move;
+    private long createdAt;
+    private long startedAt;
+    private long finishedAt;
+    // 前缀列举完之前 totalObjects 和 totalBytes 仍会增长
+    private boolean listingComplete;
+    private long totalObjects;
+    private long totalBytes;
+    private long copiedObjects;
+    private long copiedBytes;
+    private long failedObjects;
+    private List<CopyFailure> failures;
+    private String error;
+
+    public static CopyJobStatus of(CopyJob job) {
+        CopyJobStatus status = new CopyJobStatus();
+        status.setJobId(job.getId());
+        status.setStatus(job.getStatus());
+        status.setSourceBucket(job.getSourceBucket());
+        status.setSourceKey(job.getSourceKey());
+        status.setSourcePrefix(job.getSourcePrefix());
+        status.setTargetBucket(job.getTargetBucket());
+        status.setTarget(job.getTarget());
+        status.setMove(job.isMove());
+        status.setCreatedAt(job.getCreatedAt());
+        status.setStartedAt(job.getStartedAt());
+        status.setFinishedAt(job.getFinishedAt());
+        status.setListingComplete(job.isListingComplete());
+        status.setTotalObjects(job.getTotalObjects().get());
+        status.setTotalBytes(job.getTotalBytes().get());
+        status.setCopiedObjects(job.getCopiedObjects().get());
+        status.setCopiedBytes(job.getCopiedBytes().get());
+        status.setFailedObjects(job.getFailedObjects().get());
+        synchronized (job.getFailures()) {
+            status.setFailures(new ArrayList<>(job.getFailures()));
+        }
+        status.setError(job.getError());
+        return status;
+    }
+}
@@ -0,0 +1,20 @@
+package ceph.s3.file.copy;
+
+import lombok.Data;
+
+/**
+ * 单个对象的复制结果。
+ */
+@Data
+public class CopyResult {
+    private String sourceBucket;
+    private String sourceKey;
+    private String targetBucket;
+    private String targetKey;
+    private long size;
+    private String eTag;
+    // UploadPartCopy 的分段数，用一次 CopyObject 复制时为 0
+    private int parts;
+    // 移动时源对象是否已删除
+    private boolean sourceDeleted;
+}
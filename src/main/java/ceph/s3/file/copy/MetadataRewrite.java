@@ -0,0 +1,53 @@
+package ceph.s3.file.copy;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 复制时改写的元数据，未设置的字段沿用源对象的值；userMetadata 不为 null 时整体替换用户元数据。
+ */
+@Data
+public class MetadataRewrite {
+    private String contentType;
+    private String contentDisposition;
+    private String contentEncoding;
+    private String cacheControl;
+    private Map<String, String> userMetadata;
+
+    /**
+     * 以源对象的元数据为基础应用改写，rewrite 为 null 时原样复制源对象的元数据。
+     */
+    static ObjectMetadata apply(ObjectMetadata source, MetadataRewrite rewrite) {
+        // setXxx(null) 会把 null 值放进请求头，只设置非空的字段
+        ObjectMetadata metadata = new ObjectMetadata();
+        String contentType = pick(rewrite == null ? null : rewrite.getContentType(), source.getContentType());
+        if (contentType != null) {
+            metadata.setContentType(contentType);
+        }
+        String contentDisposition = pick(rewrite == null ? null : rewrite.getContentDisposition(), source.getContentDisposition());
+        if (contentDisposition != null) {
+            metadata.setContentDisposition(contentDisposition);
+        }
+        String contentEncoding = pick(rewrite == null ? null : rewrite.getContentEncoding(), source.getContentEncoding());
+        if (contentEncoding != null) {
+            metadata.setContentEncoding(contentEncoding);
+        }
+        String cacheControl = pick(rewrite == null ? null : rewrite.getCacheControl(), source.getCacheControl());
+        if (cacheControl != null) {
+            metadata.setCacheControl(cacheControl);
+        }
+        Map<String, String> userMetadata = rewrite == null || rewrite.getUserMetadata() == null
+                ? source.getUserMetadata() : rewrite.getUserMetadata();
+        if (userMetadata != null) {
+            metadata.setUserMetadata(new HashMap<>(userMetadata));
+        }
+        return metadata;
+    }
+
+    private static String pick(String override, String original) {
+        return override != null ? override : original;
+    }
+}
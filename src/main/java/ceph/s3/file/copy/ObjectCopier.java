@@ -0,0 +1,239 @@
+package ceph.s3.file.copy;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.util.ObjectModifiedException;
+import ceph.s3.file.util.S3Retry;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * 服务端复制：数据只在 Ceph 集群内部复制，不经过本服务。
+ * 不超过 multipartThreshold 的对象用一次 CopyObject；更大的对象发起分段上传，按范围并发 UploadPartCopy。
+ * 所有请求都带上源对象 ETag 条件，复制过程中源对象被覆盖时失败而不是拼出混合内容。
+ */
+public class ObjectCopier {
+    private static final int MAX_PARTS = 10000;
+    private static final long MB = 1024 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.Copy config;
+    private final ExecutorService partExecutor;
+
+    public ObjectCopier(AmazonS3 amazonS3, AwzS3Config.Copy config) {
+        this.amazonS3 = amazonS3;
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalPartConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-copy-part-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CopyResult copy(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                           MetadataRewrite rewrite) throws IOException {
+        return copy(sourceBucket, sourceKey, targetBucket, targetKey, rewrite, bytes -> {
+        });
+    }
+
+    /**
+     * 复制 sourceBucket/sourceKey 到 targetBucket/targetKey。
+     *
+     * @param rewrite  改写的元数据，为 null 时沿用源对象的元数据
+     * @param progress 每复制完一个分段(或整个对象)回调已复制的字节数
+     */
+    public CopyResult copy(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                           MetadataRewrite rewrite, LongConsumer progress) throws IOException {
+        // 原地复制只用于改写元数据
+        if (sourceBucket.equals(targetBucket) && sourceKey.equals(targetKey) && rewrite == null) {
+            throw new IllegalArgumentException("源对象和目标对象相同!");
+        }
+        ObjectMetadata source = amazonS3.getObjectMetadata(sourceBucket, sourceKey);
+        CopyResult result = new CopyResult();
+        result.setSourceBucket(sourceBucket);
+        result.setSourceKey(sourceKey);
+        result.setTargetBucket(targetBucket);
+        result.setTargetKey(targetKey);
+        result.setSize(source.getContentLength());
+        if (source.getContentLength() <= config.getMultipartThreshold()) {
+            result.setETag(copyObject(sourceBucket, sourceKey, targetBucket, targetKey, source, rewrite));
+            progress.accept(source.getContentLength());
+        } else {
+            long partSize = partSizeFor(source.getContentLength());
+            result.setParts((int) ((source.getContentLength() + partSize - 1) / partSize));
+            result.setETag(copyMultipart(sourceBucket, sourceKey, targetBucket, targetKey, source, rewrite,
+                    partSize, progress));
+        }
+        return result;
+    }
+
+    /**
+     * 复制成功后删除源对象。
+     */
+    public CopyResult move(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                           MetadataRewrite rewrite, LongConsumer progress) throws IOException {
+        if (sourceBucket.equals(targetBucket) && sourceKey.equals(targetKey)) {
+            throw new IllegalArgumentException("源对象和目标对象相同!");
+        }
+        CopyResult result = copy(sourceBucket, sourceKey, targetBucket, targetKey, rewrite, progress);
+        retrying(() -> {
+            amazonS3.deleteObject(sourceBucket, sourceKey);
+            return null;
+        });
+        result.setSourceDeleted(true);
+        return result;
+    }
+
+    public long sizeOf(String bucket, String key) throws IOException {
+        return retrying(() -> amazonS3.getObjectMetadata(bucket, key)).getContentLength();
+    }
+
+    /**
+     * 分段大小取配置值，对象过大时按 MB 向上取整放大，保证分段数不超过 10000。
+     */
+    long partSizeFor(long contentLength) {
+        long minForLimit = (contentLength + MAX_PARTS - 1) / MAX_PARTS;
+        minForLimit = (minForLimit + MB - 1) / MB * MB;
+        return Math.max(config.getPartSize(), minForLimit);
+    }
+
+    private String copyObject(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                              ObjectMetadata source, MetadataRewrite rewrite) throws IOException {
+        CopyObjectRequest request = new CopyObjectRequest(sourceBucket, sourceKey, targetBucket, targetKey)
+                .withMatchingETagConstraint(source.getETag());
+        // 设置新元数据时 SDK 使用 REPLACE，否则沿用源对象的元数据
+        if (rewrite != null) {
+            request.setNewObjectMetadata(MetadataRewrite.apply(source, rewrite));
+        }
+        CopyObjectResult result = retrying(() -> amazonS3.copyObject(request));
+        if (result == null) {
+            throw new ObjectModifiedException(sourceKey);
+        }
+        return result.getETag();
+    }
+
+    private String copyMultipart(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                                 ObjectMetadata source, MetadataRewrite rewrite, long partSize,
+                                 LongConsumer progress) throws IOException {
+        long contentLength = source.getContentLength();
+        int partCount = (int) ((contentLength + partSize - 1) / partSize);
+        // 分段复制不会带上源对象的元数据，需要在发起时设置
+        InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(targetBucket, targetKey,
+                MetadataRewrite.apply(source, rewrite));
+        String uploadId = amazonS3.initiateMultipartUpload(initiateRequest).getUploadId();
+        // 限制本次复制同时在途的分段数
+        Semaphore inFlight = new Semaphore(Math.max(1, config.getPartConcurrency()));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<PartETag>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount && failure.get() == null; i++) {
+                acquire(inFlight);
+                final int partNumber = i + 1;
+                final long firstByte = i * partSize;
+                final long lastByte = Math.min(firstByte + partSize, contentLength) - 1;
+                CopyPartRequest request = new CopyPartRequest()
+                        .withSourceBucketName(sourceBucket)
+                        .withSourceKey(sourceKey)
+                        .withDestinationBucketName(targetBucket)
+                        .withDestinationKey(targetKey)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withFirstByte(firstByte)
+                        .withLastByte(lastByte)
+                        .withMatchingETagConstraint(source.getETag());
+                try {
+                    futures.add(partExecutor.submit(() -> {
+                        try {
+                            CopyPartResult result = retrying(() -> amazonS3.copyPart(request));
+                            if (result == null) {
+                                throw new ObjectModifiedException(sourceKey);
+                            }
+                            progress.accept(lastByte - firstByte + 1);
+                            return result.getPartETag();
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                            throw e;
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+            List<PartETag> partETags = new ArrayList<>(futures.size());
+            for (Future<PartETag> future : futures) {
+                partETags.add(await(future));
+            }
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            return amazonS3.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(targetBucket, targetKey, uploadId, partETags)).getETag();
+        } catch (IOException | RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            abortQuietly(targetBucket, targetKey, uploadId);
+            throw e;
+        }
+    }
+
+    /**
+     * 执行请求，失败后按指数退避重试，重试规则见 S3Retry。
+     */
+    private <T> T retrying(S3Retry.Attempt<T> call) throws IOException {
+        try {
+            return S3Retry.call(config.getMaxAttempts(), config.getRetryBackoffMillis(), call);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("复制被中断", e);
+        }
+    }
+
+    private void abortQuietly(String bucket, String key, String uploadId) {
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (SdkClientException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void shutdown() {
+        partExecutor.shutdownNow();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("复制被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("分段复制失败", cause);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("复制被中断", e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ceph.s3.file.dedup;
+
+import lombok.Data;
+
+/**
+ * 去重上传的结果。
+ */
+@Data
+public class DedupUploadResult {
+    private String bucket;
+    private String key;
+    private long size;
+    private String sha256;
+    private String eTag;
+    // 内容与已有对象相同，没有提交新上传的数据
+    private boolean deduplicated;
+    // 去重时内容相同的已有对象，目标键与其相同时不需要复制
+    private String sourceKey;
+    // 实际上传到 RGW 的字节数，客户端提供的 SHA-256 命中索引时为 0
+    private long uploadedBytes;
+}
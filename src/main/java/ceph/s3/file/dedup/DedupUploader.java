@@ -0,0 +1,226 @@
+package ceph.s3.file.dedup;
+
+import ceph.s3.file.copy.CopyResult;
+import ceph.s3.file.copy.MetadataRewrite;
+import ceph.s3.file.copy.ObjectCopier;
+import ceph.s3.file.upload.MultipartUploadEngine;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.util.BinaryUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按内容去重的上传。上传时在同一次读取中计算整个内容的 SHA-256(分段 MD5 由上传引擎计算)，
+ * 与对象键和上传得到的 ETag 一起记录到本地哈希索引；客户端预先提供的 SHA-256 同时写入对象元数据 x-amz-meta-sha256。
+ * 客户端预先提供 SHA-256 且索引命中时直接服务端复制已有对象，不上传数据；
+ * 否则边上传边计算，提交前发现同一桶内已有相同内容的对象时中止分段上传，改为服务端复制，不占用新的存储。
+ * 索引命中后 HEAD 核对对象的 ETag 仍与记录的一致，对象被覆盖或删除后条目失效。
+ * 索引只在同一个桶内查找，避免凭哈希值取得其他桶的内容。
+ */
+public class DedupUploader {
+    public static final String SHA256_METADATA = "sha256";
+
+    private final AmazonS3 amazonS3;
+    private final MultipartUploadEngine uploadEngine;
+    private final ObjectCopier objectCopier;
+    private final HashIndex hashIndex;
+
+    public DedupUploader(AmazonS3 amazonS3, MultipartUploadEngine uploadEngine, ObjectCopier objectCopier,
+                         HashIndex hashIndex) {
+        this.amazonS3 = amazonS3;
+        this.uploadEngine = uploadEngine;
+        this.objectCopier = objectCopier;
+        this.hashIndex = hashIndex;
+    }
+
+    /**
+     * @param contentType  对象的 Content-Type，可为 null
+     * @param sha256Hint   客户端计算的内容 SHA-256(十六进制)，可为 null；与实际内容不符时上传被中止
+     */
+    public DedupUploadResult upload(String bucket, String key, InputStream inputStream, long contentLength,
+                                    String contentType, String sha256Hint, int partConcurrency) throws IOException {
+        String hint = null;
+        if (sha256Hint != null) {
+            hint = sha256Hint.trim().toLowerCase(Locale.ROOT);
+            if (!hint.matches("[0-9a-f]{64}")) {
+                throw new IllegalArgumentException("SHA-256 格式错误: " + sha256Hint);
+            }
+            String existing = lookup(bucket, hint);
+            if (existing != null) {
+                return reuse(bucket, key, existing, hint, contentType, 0);
+            }
+        }
+
+        HashingInputStream hashing = new HashingInputStream(inputStream);
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (contentType != null) {
+            metadata.setContentType(contentType);
+        }
+        if (hint != null) {
+            // 内容与声明的哈希不符时不会提交，可以在发起时就写入元数据
+            metadata.addUserMetadata(SHA256_METADATA, hint);
+        }
+        String expected = hint;
+        AtomicReference<String> computed = new AtomicReference<>();
+        AtomicReference<String> duplicateOf = new AtomicReference<>();
+        CompleteMultipartUploadResult completed = uploadEngine.upload(bucket, key, hashing, contentLength,
+                partConcurrency, metadata, () -> {
+                    // 所有分段已上传，流已读完，摘要是最终值
+                    String sha256 = hashing.sha256();
+                    computed.set(sha256);
+                    if (expected != null && !expected.equals(sha256)) {
+                        throw new IllegalArgumentException("内容的 SHA-256 与声明的不一致，实际为 " + sha256);
+                    }
+                    String existing = lookup(bucket, sha256);
+                    if (existing != null) {
+                        duplicateOf.set(existing);
+                        return false;
+                    }
+                    return true;
+                });
+        String sha256 = computed.get();
+        if (completed == null) {
+            return reuse(bucket, key, duplicateOf.get(), sha256, contentType, hashing.count);
+        }
+
+        DedupUploadResult result = new DedupUploadResult();
+        result.setBucket(bucket);
+        result.setKey(key);
+        result.setSize(hashing.count);
+        result.setSha256(sha256);
+        result.setETag(completed.getETag());
+        result.setUploadedBytes(hashing.count);
+        hashIndex.put(bucket, sha256, key, unquote(completed.getETag()));
+        return result;
+    }
+
+    /**
+     * 内容与 existing 相同：服务端复制到 key，key 就是 existing 时不需要复制。
+     */
+    private DedupUploadResult reuse(String bucket, String key, String existing, String sha256, String contentType,
+                                    long uploadedBytes) throws IOException {
+        DedupUploadResult result = new DedupUploadResult();
+        result.setBucket(bucket);
+        result.setKey(key);
+        result.setSha256(sha256);
+        result.setDeduplicated(true);
+        result.setSourceKey(existing);
+        result.setUploadedBytes(uploadedBytes);
+        if (existing.equals(key)) {
+            ObjectMetadata metadata = amazonS3.getObjectMetadata(bucket, key);
+            result.setSize(metadata.getContentLength());
+            result.setETag(metadata.getETag());
+            return result;
+        }
+        MetadataRewrite rewrite = null;
+        if (contentType != null) {
+            // 只改写 Content-Type，SHA-256 等用户元数据沿用已有对象
+            rewrite = new MetadataRewrite();
+            rewrite.setContentType(contentType);
+        }
+        CopyResult copied = objectCopier.copy(bucket, existing, bucket, key, rewrite);
+        result.setSize(copied.getSize());
+        result.setETag(copied.getETag());
+        hashIndex.put(bucket, sha256, key, unquote(copied.getETag()));
+        return result;
+    }
+
+    /**
+     * 在索引中查找相同内容的对象，并核对对象仍然存在且 ETag 与记录的一致；不一致时删除索引条目。
+     * 旧索引条目没有 ETag，改为核对元数据中的 SHA-256。
+     */
+    private String lookup(String bucket, String sha256) throws IOException {
+        HashIndex.Entry entry = hashIndex.get(bucket, sha256);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            ObjectMetadata metadata = amazonS3.getObjectMetadata(bucket, entry.getKey());
+            boolean unchanged = entry.getETag() != null
+                    ? entry.getETag().equals(unquote(metadata.getETag()))
+                    : sha256.equals(metadata.getUserMetaDataOf(SHA256_METADATA));
+            if (unchanged) {
+                return entry.getKey();
+            }
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() != 404) {
+                // 无法确认时按未命中处理，正常上传
+                e.printStackTrace();
+                return null;
+            }
+        }
+        // 对象已被删除或覆盖
+        hashIndex.remove(bucket, sha256, entry);
+        return null;
+    }
+
+    private static String unquote(String eTag) {
+        return eTag != null && eTag.length() >= 2 && eTag.startsWith("\"") && eTag.endsWith("\"")
+                ? eTag.substring(1, eTag.length() - 1) : eTag;
+    }
+
+    public void shutdown() {
+        hashIndex.close();
+    }
+
+    /**
+     * 读取时同时计算 SHA-256 和字节数。
+     */
+    private static class HashingInputStream extends FilterInputStream {
+        private final MessageDigest digest;
+        private long count;
+
+        HashingInputStream(InputStream in) {
+            super(in);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                digest.update(b, off, n);
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            // 跳过的内容无法计入摘要
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        String sha256() {
+            return BinaryUtils.toHex(digest.digest());
+        }
+    }
+}
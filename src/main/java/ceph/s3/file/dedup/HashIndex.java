@@ -0,0 +1,163 @@
+package ceph.s3.file.dedup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地内容哈希索引：桶 + SHA-256 到对象键及写入时 ETag 的映射，只作为提示，使用前需要核对对象当前的 ETag。
+ * 修改以追加日志的方式写入文件("+ 桶 哈希 键 ETag" 或 "- 桶 哈希")，启动时回放并重写为只含有效条目的文件。
+ * 旧格式("+ 桶 哈希 键")的条目没有 ETag，ETag 为 null。
+ */
+public class HashIndex {
+    /**
+     * 索引条目：对象键和写入索引时对象的 ETag。
+     */
+    public static class Entry {
+        private final String key;
+        private final String eTag;
+
+        Entry(String key, String eTag) {
+            this.key = key;
+            this.eTag = eTag;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return key.equals(other.key) && Objects.equals(eTag, other.eTag);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    public HashIndex(String file) throws IOException {
+        this.file = Paths.get(file).toAbsolutePath();
+        Files.createDirectories(this.file.getParent());
+        load();
+        compact();
+        writer = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public Entry get(String bucket, String sha256) {
+        return entries.get(bucket + '\t' + sha256);
+    }
+
+    public synchronized void put(String bucket, String sha256, String key, String eTag) throws IOException {
+        Entry entry = new Entry(key, eTag);
+        if (entry.equals(entries.put(bucket + '\t' + sha256, entry))) {
+            return;
+        }
+        append(line(bucket + '\t' + sha256, entry));
+    }
+
+    /**
+     * 删除映射，只有当前映射仍是 entry 时才删除，避免删掉其他线程刚写入的新映射。
+     */
+    public synchronized void remove(String bucket, String sha256, Entry entry) throws IOException {
+        if (entries.remove(bucket + '\t' + sha256, entry)) {
+            append("-\t" + bucket + '\t' + sha256);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+        writer.flush();
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // 进程退出时可能留下写了一半的行，跳过
+                if ((fields.length == 4 || fields.length == 5) && "+".equals(fields[0])) {
+                    entries.put(fields[1] + '\t' + fields[2],
+                            new Entry(decode(fields[3]), fields.length == 5 ? fields[4] : null));
+                } else if (fields.length == 3 && "-".equals(fields[0])) {
+                    entries.remove(fields[1] + '\t' + fields[2]);
+                }
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.write(line(entry.getKey(), entry.getValue()));
+                out.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String line(String bucketAndHash, Entry entry) {
+        String line = "+\t" + bucketAndHash + '\t' + encode(entry.key);
+        return entry.eTag == null ? line : line + '\t' + entry.eTag;
+    }
+
+    // 对象键可能包含制表符和换行，编码后再写入
+    private static String encode(String key) {
+        try {
+            return URLEncoder.encode(key, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String key) {
+        try {
+            return URLDecoder.decode(key, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return key;
+        }
+    }
+}
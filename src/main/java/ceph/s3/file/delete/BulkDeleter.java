@@ -0,0 +1,247 @@
+package ceph.s3.file.delete;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量删除对象。按键列表或前缀收集待删除的键，每批最多 batchSize 个用一次 DeleteObjects 删除，
+ * 多个批次并发执行；按前缀删除时边分页列举边提交批次，并中止该前缀下未完成的分段上传。
+ */
+public class BulkDeleter {
+    // DeleteObjects 单次请求最多 1000 个键
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.Delete config;
+    private final ExecutorService batchExecutor;
+
+    public BulkDeleter(AmazonS3 amazonS3, AwzS3Config.Delete config) {
+        this.amazonS3 = amazonS3;
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalBatchConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-bulk-delete-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 删除 bucket 下的指定键。
+     */
+    public DeleteResult deleteKeys(String bucket, Collection<String> keys) throws IOException {
+        DeleteResult result = new DeleteResult();
+        result.setBucket(bucket);
+        Batches batches = new Batches(bucket, result);
+        try {
+            List<DeleteObjectsRequest.KeyVersion> batch = new ArrayList<>(batchSize());
+            for (String key : keys) {
+                batch.add(new DeleteObjectsRequest.KeyVersion(key));
+                if (batch.size() == batchSize()) {
+                    batches.submit(batch);
+                    batch = new ArrayList<>(batchSize());
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.submit(batch);
+            }
+            batches.awaitAll();
+        } catch (IOException | RuntimeException e) {
+            batches.cancelAll();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * 删除 bucket 下以 prefix 开头的所有对象并中止该前缀下未完成的分段上传。
+     * allVersions 为 true 时删除所有版本和删除标记(用于清空开启过版本控制的桶)。
+     */
+    public DeleteResult deletePrefix(String bucket, String prefix, boolean allVersions) throws IOException {
+        DeleteResult result = new DeleteResult();
+        result.setBucket(bucket);
+        result.setPrefix(prefix);
+        // 先中止分段上传，避免清理过程中又合并出新对象
+        result.setAbortedUploads(abortMultipartUploads(bucket, prefix));
+        Batches batches = new Batches(bucket, result);
+        try {
+            if (allVersions) {
+                submitVersions(bucket, prefix, batches);
+            } else {
+                submitObjects(bucket, prefix, batches);
+            }
+            batches.awaitAll();
+        } catch (IOException | RuntimeException e) {
+            batches.cancelAll();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * 清空桶：版本控制开启或暂停过的桶需要删除所有版本，否则桶仍不为空。
+     */
+    public DeleteResult emptyBucket(String bucket) throws IOException {
+        String status = amazonS3.getBucketVersioningConfiguration(bucket).getStatus();
+        boolean versioned = !BucketVersioningConfiguration.OFF.equals(status);
+        return deletePrefix(bucket, "", versioned);
+    }
+
+    private void submitObjects(String bucket, String prefix, Batches batches) throws IOException {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucket)
+                .withPrefix(prefix)
+                .withMaxKeys(batchSize());
+        ListObjectsV2Result listing;
+        do {
+            listing = amazonS3.listObjectsV2(request);
+            List<DeleteObjectsRequest.KeyVersion> batch = new ArrayList<>(listing.getObjectSummaries().size());
+            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                batch.add(new DeleteObjectsRequest.KeyVersion(summary.getKey()));
+            }
+            if (!batch.isEmpty()) {
+                batches.submit(batch);
+            }
+            request.setContinuationToken(listing.getNextContinuationToken());
+        } while (listing.isTruncated());
+    }
+
+    private void submitVersions(String bucket, String prefix, Batches batches) throws IOException {
+        VersionListing listing = amazonS3.listVersions(new ListVersionsRequest()
+                .withBucketName(bucket)
+                .withPrefix(prefix)
+                .withMaxResults(batchSize()));
+        while (true) {
+            List<DeleteObjectsRequest.KeyVersion> batch = new ArrayList<>(listing.getVersionSummaries().size());
+            for (S3VersionSummary summary : listing.getVersionSummaries()) {
+                batch.add(new DeleteObjectsRequest.KeyVersion(summary.getKey(), summary.getVersionId()));
+            }
+            if (!batch.isEmpty()) {
+                batches.submit(batch);
+            }
+            if (!listing.isTruncated()) {
+                break;
+            }
+            listing = amazonS3.listNextBatchOfVersions(listing);
+        }
+    }
+
+    /**
+     * 中止 bucket 下以 prefix 开头的未完成分段上传，返回中止的数量。
+     */
+    private int abortMultipartUploads(String bucket, String prefix) {
+        int aborted = 0;
+        ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucket).withPrefix(prefix);
+        MultipartUploadListing listing;
+        do {
+            listing = amazonS3.listMultipartUploads(request);
+            for (MultipartUpload upload : listing.getMultipartUploads()) {
+                try {
+                    amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, upload.getKey(), upload.getUploadId()));
+                    aborted++;
+                } catch (SdkClientException e) {
+                    // 中止失败不影响删除对象，残留的分段可以稍后再清理
+                    e.printStackTrace();
+                }
+            }
+            request.setKeyMarker(listing.getNextKeyMarker());
+            request.setUploadIdMarker(listing.getNextUploadIdMarker());
+        } while (listing.isTruncated());
+        return aborted;
+    }
+
+    /**
+     * 删除一个批次，逐个记录失败的键；整个请求失败时该批次所有键都记为失败。
+     */
+    private void deleteBatch(String bucket, List<DeleteObjectsRequest.KeyVersion> batch, DeleteResult result) {
+        // quiet 模式下响应只包含删除失败的键
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucket).withKeys(batch).withQuiet(true);
+        try {
+            amazonS3.deleteObjects(request);
+            result.addDeleted(batch.size());
+        } catch (MultiObjectDeleteException e) {
+            List<MultiObjectDeleteException.DeleteError> errors = e.getErrors();
+            result.addDeleted(batch.size() - errors.size());
+            for (MultiObjectDeleteException.DeleteError error : errors) {
+                result.addFailure(new DeleteFailure(error.getKey(), error.getVersionId(), error.getCode(), error.getMessage()));
+            }
+        } catch (SdkClientException e) {
+            e.printStackTrace();
+            String code = e instanceof AmazonServiceException ? ((AmazonServiceException) e).getErrorCode() : null;
+            for (DeleteObjectsRequest.KeyVersion keyVersion : batch) {
+                result.addFailure(new DeleteFailure(keyVersion.getKey(), keyVersion.getVersion(), code, e.getMessage()));
+            }
+        }
+    }
+
+    private int batchSize() {
+        return Math.max(1, Math.min(MAX_BATCH_SIZE, config.getBatchSize()));
+    }
+
+    public void shutdown() {
+        batchExecutor.shutdownNow();
+    }
+
+    /**
+     * 一次删除操作提交的批次，同时在途的批次数受 batchConcurrency 限制。
+     */
+    private class Batches {
+        private final String bucket;
+        private final DeleteResult result;
+        private final Semaphore inFlight = new Semaphore(Math.max(1, config.getBatchConcurrency()));
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        Batches(String bucket, DeleteResult result) {
+            this.bucket = bucket;
+            this.result = result;
+        }
+
+        void submit(List<DeleteObjectsRequest.KeyVersion> batch) throws IOException {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("批量删除被中断", e);
+            }
+            try {
+                futures.add(batchExecutor.submit(() -> {
+                    try {
+                        deleteBatch(bucket, batch, result);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        void awaitAll() throws IOException {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("批量删除被中断", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("批量删除失败", e.getCause());
+                }
+            }
+        }
+
+        void cancelAll() {
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+}
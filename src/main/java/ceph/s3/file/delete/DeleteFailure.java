@@ -0,0 +1,20 @@
+package ceph.s3.file.delete;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 删除失败的一个对象。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeleteFailure {
+    private String key;
+    // 删除指定版本时的版本号，否则为 null
+    private String versionId;
+    // S3 返回的错误码，如 AccessDenied
+    private String code;
+    private String message;
+}
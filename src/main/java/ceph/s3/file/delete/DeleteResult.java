@@ -0,0 +1,38 @@
+package ceph.s3.file.delete;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量删除的结果。失败明细最多记录 MAX_REPORTED_FAILURES 条，failedCount 为全部失败数。
+ */
+@Data
+public class DeleteResult {
+    static final int MAX_REPORTED_FAILURES = 1000;
+
+    private String bucket;
+    // 按前缀删除时的前缀，按键列表删除时为 null
+    private String prefix;
+    private long deletedCount;
+    private long failedCount;
+    private List<DeleteFailure> failures = new ArrayList<>();
+    // 中止的未完成分段上传数
+    private int abortedUploads;
+
+    public boolean isSuccess() {
+        return failedCount == 0;
+    }
+
+    synchronized void addDeleted(int count) {
+        deletedCount += count;
+    }
+
+    synchronized void addFailure(DeleteFailure failure) {
+        failedCount++;
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            failures.add(failure);
+        }
+    }
+}
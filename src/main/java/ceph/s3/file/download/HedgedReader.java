@@ -0,0 +1,218 @@
+package ceph.s3.file.download;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对冲读取：GET 在 p95 首字节耗时内还没有返回数据时，再发一个相同的请求，先返回首字节的请求胜出，
+ * 另一个请求被中止。配置了多个网关时，第二个请求会因为第一个请求占用的在途数而落到另一个网关上。
+ * 配置了截止时间时，截止时间同时作为 SDK 的客户端执行超时，超过后放弃请求。
+ */
+public class HedgedReader {
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.Hedge config;
+    private final LatencyTracker firstByteLatency;
+    private final ExecutorService attemptExecutor;
+
+    public HedgedReader(AmazonS3 amazonS3, AwzS3Config.Hedge config) {
+        this.amazonS3 = amazonS3;
+        this.config = config;
+        this.firstByteLatency = new LatencyTracker(config.getWindowSize(), config.getPercentile());
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.attemptExecutor = Executors.newFixedThreadPool(Math.max(2, config.getThreads()), r -> {
+            Thread thread = new Thread(r, "s3-hedged-read-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 与 AmazonS3.getObject 相同：ETag 等条件不满足时返回 null。使用配置的默认截止时间。
+     */
+    public S3Object getObject(GetObjectRequest request) throws IOException {
+        return getObject(request, config.getDeadlineMillis());
+    }
+
+    /**
+     * deadlineMillis 为从现在起到首字节返回的截止时间，0 表示不限制。
+     */
+    public S3Object getObject(GetObjectRequest request, long deadlineMillis) throws IOException {
+        if (deadlineMillis > 0) {
+            request.setSdkClientExecutionTimeout((int) deadlineMillis);
+        }
+        if (!config.isEnabled()) {
+            return amazonS3.getObject(request);
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture<S3Object> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean claimed = new AtomicBoolean();
+        Attempt primary = new Attempt(request, winner, pending, claimed);
+        Attempt hedge = null;
+        boolean returned = false;
+        try {
+            primary.start();
+            long delay = deadlineMillis > 0 ? Math.min(hedgeDelay(), deadlineMillis) : hedgeDelay();
+            S3Object result = await(winner, delay);
+            if (result != null || winner.isDone()) {
+                returned = true;
+                return result;
+            }
+            long remaining = deadlineMillis > 0 ? deadlineMillis - (System.currentTimeMillis() - start) : 0;
+            if (deadlineMillis > 0 && remaining <= 0) {
+                throw new IOException("读取超时: " + request.getKey());
+            }
+            // 首个请求迟迟没有数据，发出对冲请求，只给它剩余的时间
+            GetObjectRequest hedgeRequest = (GetObjectRequest) request.clone();
+            if (deadlineMillis > 0) {
+                hedgeRequest.setSdkClientExecutionTimeout((int) remaining);
+            }
+            pending.incrementAndGet();
+            hedge = new Attempt(hedgeRequest, winner, pending, claimed);
+            hedge.start();
+            result = await(winner, remaining);
+            if (result == null && !winner.isDone()) {
+                throw new IOException("读取超时: " + request.getKey());
+            }
+            returned = true;
+            return result;
+        } finally {
+            if (!returned) {
+                // 超时、中断或失败时调用方不再接收结果：先关闭 winner，之后胜出的请求会自行中止；
+                // 在此之前已经胜出的结果也要中止，否则连接不会被释放
+                winner.complete(null);
+                winner.thenAccept(HedgedReader::abort);
+            }
+            // 中止未胜出的请求，已胜出的请求不受影响
+            primary.cancelIfLost();
+            if (hedge != null) {
+                hedge.cancelIfLost();
+            }
+        }
+    }
+
+    /**
+     * 对冲延迟：最近请求首字节耗时的分位数，限制在 [minDelayMillis, maxDelayMillis] 内；样本不足时使用默认值。
+     */
+    private long hedgeDelay() {
+        long percentile = firstByteLatency.getPercentile();
+        if (percentile < 0) {
+            return config.getDefaultDelayMillis();
+        }
+        return Math.max(config.getMinDelayMillis(), Math.min(config.getMaxDelayMillis(), percentile));
+    }
+
+    /**
+     * 等待 waitMillis，期间有请求胜出则返回结果；超时返回 null。waitMillis 为 0 表示一直等待。
+     */
+    private static S3Object await(CompletableFuture<S3Object> winner, long waitMillis) throws IOException {
+        try {
+            return waitMillis > 0 ? winner.get(waitMillis, TimeUnit.MILLISECONDS) : winner.get();
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("读取被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("读取失败", cause);
+        }
+    }
+
+    public void shutdown() {
+        attemptExecutor.shutdownNow();
+    }
+
+    /**
+     * 一次 GET 请求。读到首字节后尝试成为胜者，失败方中止连接。
+     */
+    private class Attempt implements Runnable {
+        private final GetObjectRequest request;
+        private final CompletableFuture<S3Object> winner;
+        private final AtomicInteger pending;
+        // 同一次读取的所有请求共享，先置位的请求胜出
+        private final AtomicBoolean claimed;
+        private volatile S3Object s3Object;
+        private volatile boolean won;
+        private Future<?> future;
+
+        Attempt(GetObjectRequest request, CompletableFuture<S3Object> winner, AtomicInteger pending, AtomicBoolean claimed) {
+            this.request = request;
+            this.winner = winner;
+            this.pending = pending;
+            this.claimed = claimed;
+        }
+
+        void start() {
+            future = attemptExecutor.submit(this);
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                s3Object = amazonS3.getObject(request);
+                if (s3Object != null) {
+                    primeFirstByte(s3Object);
+                }
+                firstByteLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                if (claimed.compareAndSet(false, true)) {
+                    // 先标记胜出再通知等待方，等待方据此判断哪些请求需要中止
+                    won = true;
+                    if (!winner.complete(s3Object)) {
+                        // 调用方已经放弃等待
+                        abort(s3Object);
+                    }
+                } else {
+                    abort(s3Object);
+                }
+            } catch (IOException | RuntimeException e) {
+                abort(s3Object);
+                // 所有请求都失败时才以失败结束
+                if (pending.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            }
+        }
+
+        void cancelIfLost() {
+            if (!won) {
+                future.cancel(true);
+                abort(s3Object);
+            }
+        }
+
+        /**
+         * 读取首字节确认数据已经开始返回，再把它放回内容流的开头。
+         */
+        private void primeFirstByte(S3Object object) throws IOException {
+            S3ObjectInputStream content = object.getObjectContent();
+            int first = content.read();
+            if (first >= 0) {
+                object.setObjectContent(new SequenceInputStream(new ByteArrayInputStream(new byte[]{(byte) first}), content));
+            }
+        }
+    }
+
+    private static void abort(S3Object object) {
+        if (object != null) {
+            object.getObjectContent().abort();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ceph.s3.file.download;
+
+import java.util.Arrays;
+
+/**
+ * 记录最近若干次请求的耗时，计算指定分位数。
+ * 分位数每记录 RECOMPUTE_INTERVAL 个样本重新计算一次，避免每次请求都排序。
+ */
+class LatencyTracker {
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    private final long[] samples;
+    private final double percentile;
+    private int count;
+    private int next;
+    private int sinceRecompute;
+    private volatile long cachedPercentile = -1;
+
+    LatencyTracker(int windowSize, double percentile) {
+        this.samples = new long[Math.max(1, windowSize)];
+        this.percentile = percentile;
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        if (++sinceRecompute >= RECOMPUTE_INTERVAL) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            cachedPercentile = sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+        }
+    }
+
+    /**
+     * 样本不足时返回 -1。
+     */
+    long getPercentile() {
+        return cachedPercentile;
+    }
+}
@@ -0,0 +1,184 @@
+package ceph.s3.file.download;
+
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.util.ObjectModifiedException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import org.springframework.http.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * 把 S3 对象内容以固定大小的缓冲区直接写到 HTTP 响应，不在堆里缓存整个对象。
+ * 支持单段 Range 请求(转成 S3 范围 GET，返回 206)和 If-None-Match 条件请求(返回 304)。
+ * 带 ETag 条件的 GET 在返回响应之前发出，对象在 HEAD 和 GET 之间被覆盖时重新 HEAD，不会在响应头已发出后失败。
+ */
+public class ObjectStreamer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // HEAD 与 GET 之间对象被覆盖时最多尝试的次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final AmazonS3 amazonS3;
+    private final S3Metrics metrics;
+
+    public ObjectStreamer(AmazonS3 amazonS3, S3Metrics metrics) {
+        this.amazonS3 = amazonS3;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param rangeHeader  请求的 Range 头，可为空；多段 Range 按整个对象返回
+     * @param ifNoneMatch  请求的 If-None-Match 头，可为空
+     * @param localPath    非空时在返回完整对象的同时保存一份到该目录
+     */
+    public ResponseEntity<StreamingResponseBody> stream(String bucket, String fileName, String rangeHeader,
+                                                        String ifNoneMatch, String localPath) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            ResponseEntity<StreamingResponseBody> response = tryStream(bucket, fileName, rangeHeader, ifNoneMatch, localPath);
+            if (response != null) {
+                return response;
+            }
+            if (attempt >= MAX_ATTEMPTS) {
+                throw new ObjectModifiedException(fileName);
+            }
+        }
+    }
+
+    /**
+     * HEAD 后按 ETag 条件 GET；对象在两次请求之间被覆盖时返回 null。
+     */
+    private ResponseEntity<StreamingResponseBody> tryStream(String bucket, String fileName, String rangeHeader,
+                                                            String ifNoneMatch, String localPath) throws IOException {
+        // 先取元数据，得到对象长度和 ETag
+        ObjectMetadata metadata = amazonS3.getObjectMetadata(bucket, fileName);
+        long contentLength = metadata.getContentLength();
+        String eTag = "\"" + metadata.getETag() + "\"";
+
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setETag(eTag);
+        httpHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (metadata.getLastModified() != null) {
+            httpHeaders.setLastModified(metadata.getLastModified().getTime());
+        }
+        // 客户端缓存的版本与当前一致，直接返回 304
+        if (matches(ifNoneMatch, eTag)) {
+            return new ResponseEntity<>(httpHeaders, HttpStatus.NOT_MODIFIED);
+        }
+
+        long start = 0;
+        long end = contentLength - 1;
+        boolean partial = false;
+        if (rangeHeader != null && !rangeHeader.isEmpty()) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(contentLength);
+                    end = range.getRangeEnd(contentLength);
+                    partial = true;
+                } catch (IllegalArgumentException e) {
+                    // 范围超出对象长度
+                    httpHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+                    return new ResponseEntity<>(httpHeaders, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                }
+            }
+        }
+
+        GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, fileName)
+                .withMatchingETagConstraint(metadata.getETag());
+        if (partial) {
+            getObjectRequest.setRange(start, end);
+            httpHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + contentLength);
+        }
+        long length = contentLength == 0 ? 0 : end - start + 1;
+        String contentType = metadata.getContentType();
+        httpHeaders.setContentType(contentType != null ? MediaType.parseMediaType(contentType) : MediaType.APPLICATION_OCTET_STREAM);
+        httpHeaders.setContentLength(length);
+        String showFileName = URLEncoder.encode(fileName, "UTF-8").replaceAll("\\+", "%20");
+        httpHeaders.setContentDispositionFormData("attachment", showFileName);
+
+        // 只有完整下载时才保存到本地
+        Path localFile = null;
+        if (!partial && localPath != null && !localPath.isEmpty()) {
+            Files.createDirectories(Paths.get(localPath));
+            localFile = Paths.get(localPath, fileName);
+        }
+        // 空对象不需要读取内容
+        S3Object s3Object = null;
+        if (length > 0) {
+            s3Object = amazonS3.getObject(getObjectRequest);
+            if (s3Object == null) {
+                // ETag 不匹配，对象在 HEAD 之后被覆盖
+                return null;
+            }
+        }
+        StreamingResponseBody body = writer(s3Object, localFile);
+        return new ResponseEntity<>(body, httpHeaders, partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK);
+    }
+
+    private StreamingResponseBody writer(S3Object s3Object, Path localFile) {
+        return outputStream -> {
+            if (s3Object == null) {
+                if (localFile != null) {
+                    Files.write(localFile, new byte[0]);
+                }
+                return;
+            }
+            S3ObjectInputStream objectInputStream = s3Object.getObjectContent();
+            boolean completed = false;
+            metrics.transferStarted(S3Metrics.DOWNLOAD);
+            try (OutputStream fileOutputStream = localFile != null ? new FileOutputStream(localFile.toFile()) : null) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int len;
+                while ((len = objectInputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, len);
+                    if (fileOutputStream != null) {
+                        fileOutputStream.write(buffer, 0, len);
+                    }
+                    metrics.addBytes(S3Metrics.DOWNLOAD, len);
+                }
+                completed = true;
+            } finally {
+                metrics.transferFinished(S3Metrics.DOWNLOAD);
+                if (completed) {
+                    objectInputStream.close();
+                } else {
+                    // 客户端断开时放弃连接，避免把剩余内容读完
+                    objectInputStream.abort();
+                }
+            }
+        };
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || eTag.equals(value) || eTag.equals("\"" + value + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
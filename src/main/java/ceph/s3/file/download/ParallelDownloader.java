@@ -0,0 +1,333 @@
+package ceph.s3.file.download;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.util.ObjectModifiedException;
+import ceph.s3.file.util.S3Retry;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.util.BinaryUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并发范围下载到本地文件。
+ * 先 HEAD 得到对象长度和 ETag，按范围切分后并发 GET，每个范围用 FileChannel 按偏移写入预分配的临时文件；
+ * 单个范围失败时只重试该范围。下载完成后用 ETag 校验内容，校验通过再原子重命名为目标文件。
+ */
+public class ParallelDownloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.Download config;
+    private final HedgedReader hedgedReader;
+    private final S3Metrics metrics;
+    private final ExecutorService rangeExecutor;
+
+    public ParallelDownloader(AmazonS3 amazonS3, HedgedReader hedgedReader, S3Metrics metrics, AwzS3Config.Download config) {
+        this.amazonS3 = amazonS3;
+        this.hedgedReader = hedgedReader;
+        this.metrics = metrics;
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.rangeExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalRangeConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-range-download-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 下载 bucket/key 到 target，返回对象元数据。
+     */
+    public ObjectMetadata download(String bucket, String key, Path target) throws IOException {
+        metrics.transferStarted(S3Metrics.DOWNLOAD);
+        try {
+            return doDownload(bucket, key, target);
+        } finally {
+            metrics.transferFinished(S3Metrics.DOWNLOAD);
+        }
+    }
+
+    private ObjectMetadata doDownload(String bucket, String key, Path target) throws IOException {
+        ObjectMetadata metadata = amazonS3.getObjectMetadata(bucket, key);
+        long contentLength = metadata.getContentLength();
+        String eTag = metadata.getETag();
+        // 多段上传对象的 ETag 为 "各分段MD5拼接后的MD5-分段数"，按分段边界切分范围即可边下载边校验
+        // 分段大小由客户端决定，可能不一致：第一段和最后一段的大小都与等分相符时才按分段切分
+        long rangeSize = config.getRangeSize();
+        int eTagParts = multipartCount(eTag);
+        // 单段对象只在只有一个范围时直接使用范围 MD5，见 verify
+        boolean alignedToParts = eTagParts <= 1;
+        if (eTagParts > 1) {
+            long partSize = partSize(bucket, key, 1);
+            if (partSize > 0 && (contentLength + partSize - 1) / partSize == eTagParts
+                    && partSize(bucket, key, eTagParts) == contentLength - (eTagParts - 1) * partSize) {
+                rangeSize = partSize;
+                alignedToParts = true;
+            }
+        }
+
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tempFile = target.resolveSibling(target.getFileName() + ".part");
+        try (RandomAccessFile file = new RandomAccessFile(tempFile.toFile(), "rw")) {
+            // 预分配文件大小
+            file.setLength(contentLength);
+        }
+        try {
+            byte[][] rangeDigests;
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                rangeDigests = downloadRanges(bucket, key, eTag, contentLength, rangeSize, channel);
+                channel.force(false);
+            }
+            if (config.isVerify()) {
+                verify(bucket, key, tempFile, eTag, eTagParts, alignedToParts ? rangeDigests : null);
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return metadata;
+    }
+
+    private byte[][] downloadRanges(String bucket, String key, String eTag, long contentLength, long rangeSize,
+                                    FileChannel channel) throws IOException {
+        int rangeCount = (int) Math.max(1, (contentLength + rangeSize - 1) / rangeSize);
+        byte[][] digests = new byte[rangeCount][];
+        if (contentLength == 0) {
+            digests[0] = md5().digest();
+            return digests;
+        }
+        // 限制本次下载同时在途的范围数
+        Semaphore inFlight = new Semaphore(Math.max(1, config.getRangeConcurrency()));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>(rangeCount);
+        try {
+            for (int i = 0; i < rangeCount && failure.get() == null; i++) {
+                acquire(inFlight);
+                final int index = i;
+                final long start = i * rangeSize;
+                final long end = Math.min(start + rangeSize, contentLength) - 1;
+                futures.add(rangeExecutor.submit(() -> {
+                    try {
+                        digests[index] = downloadRange(bucket, key, eTag, start, end, channel);
+                        return null;
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } catch (IOException | RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return digests;
+    }
+
+    /**
+     * 下载 [start, end] 范围并写入文件对应偏移，返回该范围内容的 MD5；失败时按指数退避重试。
+     */
+    private byte[] downloadRange(String bucket, String key, String eTag, long start, long end,
+                                 FileChannel channel) throws IOException, InterruptedException {
+        return S3Retry.call(config.getMaxAttempts(), config.getRetryBackoffMillis(), () -> {
+            GetObjectRequest request = new GetObjectRequest(bucket, key)
+                    .withRange(start, end)
+                    .withMatchingETagConstraint(eTag);
+            S3Object s3Object = hedgedReader.getObject(request);
+            if (s3Object == null) {
+                // ETag 不匹配，对象在下载过程中被覆盖
+                throw new ObjectModifiedException(key);
+            }
+            byte[] digest = copyRange(s3Object.getObjectContent(), start, end, channel);
+            metrics.addBytes(S3Metrics.DOWNLOAD, end - start + 1);
+            return digest;
+        });
+    }
+
+    private static byte[] copyRange(S3ObjectInputStream inputStream, long start, long end, FileChannel channel) throws IOException {
+        MessageDigest digest = md5();
+        long position = start;
+        boolean completed = false;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, len);
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+            }
+            completed = true;
+        } finally {
+            if (completed) {
+                inputStream.close();
+            } else {
+                // 读取失败时放弃连接，避免把剩余内容读完
+                inputStream.abort();
+            }
+        }
+        if (position != end + 1) {
+            throw new IOException("范围数据不完整: " + start + "-" + end + "，实际写到 " + position);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * 按 ETag 校验文件：单段对象比较整个文件的 MD5，多段对象比较各分段 MD5 拼接后的 MD5。
+     * 范围与分段对齐时直接使用下载时计算的范围 MD5(partDigests)；不对齐或结果不符时(中间分段大小可能不同)
+     * 逐个 HEAD 取得实际分段大小，按分段重读本地文件计算。ETag 不是 MD5 形式(如加密对象)时跳过校验。
+     */
+    private void verify(String bucket, String key, Path file, String eTag, int eTagParts,
+                        byte[][] partDigests) throws IOException {
+        if (eTag == null || eTagParts < 0) {
+            return;
+        }
+        String expected = eTag.toLowerCase();
+        String actual;
+        if (eTagParts > 1) {
+            if (partDigests != null && expected.equals(compositeETag(partDigests))) {
+                return;
+            }
+            long[] partSizes = new long[eTagParts];
+            for (int i = 0; i < eTagParts; i++) {
+                partSizes[i] = partSize(bucket, key, i + 1);
+            }
+            actual = compositeETag(digestFile(file, partSizes));
+        } else if (expected.matches("[0-9a-f]{32}")) {
+            if (partDigests != null && partDigests.length == 1) {
+                actual = BinaryUtils.toHex(partDigests[0]);
+            } else {
+                // 范围之间无法合并 MD5，需要顺序重读一遍本地文件
+                actual = BinaryUtils.toHex(digestFile(file, new long[]{Files.size(file)})[0]);
+            }
+        } else {
+            return;
+        }
+        if (!expected.equals(actual)) {
+            throw new IOException("下载内容校验失败，期望 ETag " + expected + "，实际 " + actual);
+        }
+    }
+
+    private long partSize(String bucket, String key, int partNumber) {
+        return amazonS3.getObjectMetadata(new GetObjectMetadataRequest(bucket, key).withPartNumber(partNumber)).getContentLength();
+    }
+
+    private static String compositeETag(byte[][] partDigests) {
+        MessageDigest digest = md5();
+        for (byte[] partDigest : partDigests) {
+            digest.update(partDigest);
+        }
+        return BinaryUtils.toHex(digest.digest()) + "-" + partDigests.length;
+    }
+
+    /**
+     * 顺序读取文件，按 sizes 依次切分，返回每一段的 MD5。
+     */
+    private static byte[][] digestFile(Path file, long[] sizes) throws IOException {
+        byte[][] digests = new byte[sizes.length][];
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int i = 0; i < sizes.length; i++) {
+                MessageDigest digest = md5();
+                long remaining = sizes[i];
+                while (remaining > 0) {
+                    int len = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (len < 0) {
+                        throw new IOException("下载内容校验失败，文件长度与分段大小之和不符");
+                    }
+                    digest.update(buffer, 0, len);
+                    remaining -= len;
+                }
+                digests[i] = digest.digest();
+            }
+            if (in.read() != -1) {
+                throw new IOException("下载内容校验失败，文件长度与分段大小之和不符");
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * 解析多段上传 ETag 的分段数，单段对象返回 1，无法识别时返回 -1。
+     */
+    private static int multipartCount(String eTag) {
+        if (eTag == null) {
+            return -1;
+        }
+        int dash = eTag.lastIndexOf('-');
+        if (dash < 0) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(eTag.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void shutdown() {
+        rangeExecutor.shutdownNow();
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("范围下载被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("范围下载失败", cause);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("范围下载被中断", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ceph.s3.file.gateway;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个 RGW 网关及其客户端和负载、健康状态。
+ */
+public class GatewayEndpoint {
+    private final String url;
+    private final AmazonS3 client;
+    // 正在执行的请求数
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // 请求耗时的指数加权移动平均，单位毫秒，0 表示还没有样本
+    private volatile double ewmaMillis;
+    // 被摘除的时间，0 表示未摘除
+    private volatile long ejectedAt;
+
+    public GatewayEndpoint(String url, AmazonS3 client) {
+        this.url = url;
+        this.client = client;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public AmazonS3 getClient() {
+        return client;
+    }
+
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    double getEwmaMillis() {
+        return ewmaMillis;
+    }
+
+    boolean isEjected() {
+        return ejectedAt != 0;
+    }
+
+    long getEjectedAt() {
+        return ejectedAt;
+    }
+
+    void begin() {
+        outstanding.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    void end() {
+        outstanding.decrementAndGet();
+    }
+
+    void recordLatency(double elapsedMillis, double alpha) {
+        // 并发更新时偶尔丢失一个样本不影响平均值的意义
+        double current = ewmaMillis;
+        ewmaMillis = current == 0 ? elapsedMillis : current + alpha * (elapsedMillis - current);
+    }
+
+    void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * 记录一次失败，返回连续失败次数。
+     */
+    int recordFailure() {
+        failures.incrementAndGet();
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    void eject(long now) {
+        ejectedAt = now;
+    }
+
+    /**
+     * 恢复摘除的网关，耗时平均值从探测耗时重新开始，不沿用摘除前的数据。
+     */
+    void restore(double probeMillis) {
+        consecutiveFailures.set(0);
+        ewmaMillis = probeMillis;
+        ejectedAt = 0;
+    }
+
+    GatewayStatus status() {
+        GatewayStatus status = new GatewayStatus();
+        status.setUrl(url);
+        status.setHealthy(!isEjected());
+        status.setOutstanding(outstanding.get());
+        status.setEwmaMillis(ewmaMillis);
+        status.setRequests(requests.get());
+        status.setFailures(failures.get());
+        status.setConsecutiveFailures(consecutiveFailures.get());
+        return status;
+    }
+}
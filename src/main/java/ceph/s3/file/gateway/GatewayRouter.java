@@ -0,0 +1,219 @@
+package ceph.s3.file.gateway;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 在多个 RGW 网关之间分配请求。对外提供一个 AmazonS3 代理，每次调用选择一个网关的客户端执行：
+ * LEAST_OUTSTANDING 选择在途请求最少的网关，EWMA 选择 平均耗时 x (在途请求数 + 1) 最小的网关，
+ * 有网关还没有耗时样本时按在途请求数选择。
+ * 连续失败达到阈值的网关被摘除，后台定期探测所有网关，探测耗时也计入 EWMA，摘除的网关探测成功后恢复。
+ * RGW 网关之间无状态，分段上传的各个请求可以落在不同网关上。
+ * 返回流的调用(如 getObject)只统计到响应头返回为止；上传数据、服务端复制和下载到文件的调用耗时取决于数据量，
+ * 不计入 EWMA，只计入在途请求数；网关失败(连接失败、超时、5xx)的调用也不计入 EWMA。
+ */
+public class GatewayRouter implements InvocationHandler {
+    // 耗时与数据量成正比的调用
+    private static final Set<String> PAYLOAD_METHODS = new HashSet<>(Arrays.asList(
+            "putObject", "uploadPart", "copyObject", "copyPart"));
+
+    private final List<GatewayEndpoint> endpoints;
+    private final AwzS3Config.Gateway config;
+    private final String probeBucket;
+    private final ScheduledExecutorService prober;
+    private final AmazonS3 proxy;
+
+    public GatewayRouter(List<GatewayEndpoint> endpoints, AwzS3Config.Gateway config, String probeBucket) {
+        this.endpoints = new ArrayList<>(endpoints);
+        this.config = config;
+        this.probeBucket = probeBucket;
+        this.proxy = (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[]{AmazonS3.class}, this);
+        this.prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "s3-gateway-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getHealthCheckIntervalMillis();
+        prober.scheduleWithFixedDelay(this::probe, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 负载均衡的 AmazonS3 客户端。
+     */
+    public AmazonS3 getClient() {
+        return proxy;
+    }
+
+    public List<GatewayStatus> getStatus() {
+        return endpoints.stream().map(GatewayEndpoint::status).collect(Collectors.toList());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+        if ("shutdown".equals(method.getName()) && method.getParameterCount() == 0) {
+            shutdown();
+            return null;
+        }
+        GatewayEndpoint endpoint = choose();
+        endpoint.begin();
+        long start = System.nanoTime();
+        try {
+            Object result = method.invoke(endpoint.getClient(), args);
+            onSuccess(endpoint, method, start);
+            return result;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (isGatewayFailure(cause)) {
+                onFailure(endpoint);
+            } else {
+                // 4xx 等业务错误说明网关本身可用
+                onSuccess(endpoint, method, start);
+            }
+            throw cause;
+        } finally {
+            endpoint.end();
+        }
+    }
+
+    private void onSuccess(GatewayEndpoint endpoint, Method method, long start) {
+        endpoint.recordSuccess();
+        if (!isPayloadCall(method)) {
+            endpoint.recordLatency(elapsedMillis(start), config.getEwmaAlpha());
+        }
+    }
+
+    private static double elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    /**
+     * 上传数据、服务端复制或下载到本地文件的调用。
+     */
+    private static boolean isPayloadCall(Method method) {
+        if (PAYLOAD_METHODS.contains(method.getName())) {
+            return true;
+        }
+        Class<?>[] types = method.getParameterTypes();
+        return "getObject".equals(method.getName()) && types.length == 2 && types[1] == File.class;
+    }
+
+    /**
+     * 从未摘除的网关中选择负载最低的一个；全部被摘除时退回到所有网关中选择。
+     */
+    GatewayEndpoint choose() {
+        List<GatewayEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (GatewayEndpoint endpoint : endpoints) {
+            if (!endpoint.isEjected()) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = endpoints;
+        }
+        boolean ewma = config.getBalancer() == AwzS3Config.Balancer.EWMA;
+        for (GatewayEndpoint endpoint : candidates) {
+            // 没有耗时样本(如只有上传流量)时无法比较耗时
+            if (endpoint.getEwmaMillis() == 0) {
+                ewma = false;
+                break;
+            }
+        }
+        GatewayEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        int ties = 0;
+        for (GatewayEndpoint endpoint : candidates) {
+            double score = ewma
+                    ? endpoint.getEwmaMillis() * (endpoint.getOutstanding() + 1)
+                    : endpoint.getOutstanding();
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+                ties = 1;
+            } else if (score == bestScore && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                // 分数相同时随机选择，避免总是压在第一个网关上
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    private void onFailure(GatewayEndpoint endpoint) {
+        // 已摘除的网关再次失败时重新计算摘除时间
+        if (endpoint.recordFailure() >= config.getFailureThreshold()) {
+            endpoint.eject(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 探测所有网关：失败计入连续失败次数，成功的探测耗时计入 EWMA，
+     * 摘除时间超过 ejectionMillis 的网关探测成功后恢复，EWMA 从本次探测耗时重新开始。
+     */
+    private void probe() {
+        long now = System.currentTimeMillis();
+        for (GatewayEndpoint endpoint : endpoints) {
+            try {
+                long start = System.nanoTime();
+                // 桶不存在或无权限时返回 false，只有网关不可用才会抛出异常
+                endpoint.getClient().doesBucketExistV2(probeBucket);
+                double elapsed = elapsedMillis(start);
+                if (!endpoint.isEjected()) {
+                    endpoint.recordSuccess();
+                    endpoint.recordLatency(elapsed, config.getEwmaAlpha());
+                } else if (now - endpoint.getEjectedAt() >= config.getEjectionMillis()) {
+                    endpoint.restore(elapsed);
+                }
+            } catch (RuntimeException e) {
+                onFailure(endpoint);
+            }
+        }
+    }
+
+    /**
+     * 连接失败、超时和 5xx 说明网关异常。
+     */
+    private static boolean isGatewayFailure(Throwable e) {
+        if (e instanceof AmazonServiceException) {
+            return ((AmazonServiceException) e).getStatusCode() >= 500;
+        }
+        return e instanceof SdkClientException;
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "GatewayRouter" + endpoints.stream().map(GatewayEndpoint::getUrl).collect(Collectors.toList());
+        }
+    }
+
+    public void shutdown() {
+        prober.shutdownNow();
+        for (GatewayEndpoint endpoint : endpoints) {
+            endpoint.getClient().shutdown();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ceph.s3.file.gateway;
+
+import lombok.Data;
+
+/**
+ * 网关的负载和健康状态。
+ */
+@Data
+public class GatewayStatus {
+    private String url;
+    private boolean healthy;
+    private int outstanding;
+    private double ewmaMillis;
+    private long requests;
+    private long failures;
+    private int consecutiveFailures;
+}
@@ -0,0 +1,36 @@
+package ceph.s3.file.listing;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 列举对象时的过滤条件，未设置的条件不参与过滤。
+ */
+@Data
+public class ListFilter {
+    private String prefix;
+    // 对象大小下限(含)
+    private Long minSize;
+    // 对象大小上限(含)
+    private Long maxSize;
+    // 最后修改时间不早于该时间
+    private Date modifiedAfter;
+    // 最后修改时间早于该时间
+    private Date modifiedBefore;
+
+    public boolean matches(S3ObjectSummary summary) {
+        if (minSize != null && summary.getSize() < minSize) {
+            return false;
+        }
+        if (maxSize != null && summary.getSize() > maxSize) {
+            return false;
+        }
+        Date lastModified = summary.getLastModified();
+        if (modifiedAfter != null && (lastModified == null || lastModified.before(modifiedAfter))) {
+            return false;
+        }
+        return modifiedBefore == null || (lastModified != null && lastModified.before(modifiedBefore));
+    }
+}
@@ -0,0 +1,19 @@
+package ceph.s3.file.listing;
+
+import lombok.Data;
+
+/**
+ * 只统计不返回明细时的列举结果。
+ */
+@Data
+public class ListSummary {
+    private String bucket;
+    private String prefix;
+    private long count;
+    private long totalSize;
+
+    synchronized void add(long size) {
+        count++;
+        totalSize += size;
+    }
+}
@@ -0,0 +1,257 @@
+package ceph.s3.file.listing;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分页列举对象，每页处理完再取下一页，内存占用与对象总数无关。
+ * 并行模式下把前缀下的键空间划分为若干键范围 (after, upTo] 并发列举(StartAfter 开始，超过 upTo 停止)：
+ * 一个范围的第一页就被截断说明范围很大，按这一页最后一个键之后可能出现的数字或字母生成分界点，
+ * 把剩余部分拆成更小的范围继续并发，拆分逐层递归，平铺的键空间或只有一个顶层前缀的桶同样可以并行。
+ * 范围内按键的字典序输出，范围之间的顺序不确定。
+ */
+public class ObjectLister {
+    /**
+     * 处理列举到的对象。并行模式下调用是串行的，实现不需要线程安全。
+     */
+    public interface Visitor {
+        void visit(S3ObjectSummary summary) throws IOException;
+    }
+
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.Listing config;
+    private final ExecutorService shardExecutor;
+
+    public ObjectLister(AmazonS3 amazonS3, AwzS3Config.Listing config) {
+        this.amazonS3 = amazonS3;
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.shardExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalShardConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-list-shard-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void list(String bucket, ListFilter filter, boolean parallel, Visitor visitor) throws IOException {
+        String prefix = filter.getPrefix() == null ? "" : filter.getPrefix();
+        KeyRange whole = new KeyRange(null, null, 0);
+        if (!parallel) {
+            listRange(bucket, prefix, whole, filter, visitor, false);
+            return;
+        }
+        Object lock = new Object();
+        Visitor serialized = summary -> {
+            synchronized (lock) {
+                visitor.visit(summary);
+            }
+        };
+        // 由当前线程提交范围，单个列举同时在途的范围数不超过 shardConcurrency；范围拆出的子范围排队等待提交
+        int concurrency = Math.max(1, config.getShardConcurrency());
+        CompletionService<List<KeyRange>> completion = new ExecutorCompletionService<>(shardExecutor);
+        List<Future<List<KeyRange>>> futures = new ArrayList<>();
+        Deque<KeyRange> queued = new ArrayDeque<>();
+        queued.add(whole);
+        int running = 0;
+        try {
+            while (!queued.isEmpty() || running > 0) {
+                while (!queued.isEmpty() && running < concurrency) {
+                    KeyRange range = queued.poll();
+                    futures.add(completion.submit(() -> listRange(bucket, prefix, range, filter, serialized,
+                            range.depth < config.getMaxSplitDepth())));
+                    running++;
+                }
+                queued.addAll(await(take(completion)));
+                running--;
+            }
+        } catch (IOException | RuntimeException e) {
+            // 客户端断开或某个范围失败时停止其余范围
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+    }
+
+    public ListSummary summarize(String bucket, ListFilter filter, boolean parallel) throws IOException {
+        ListSummary summary = new ListSummary();
+        summary.setBucket(bucket);
+        summary.setPrefix(filter.getPrefix());
+        list(bucket, filter, parallel, object -> summary.add(object.getSize()));
+        return summary;
+    }
+
+    /**
+     * 按 continuation token 逐页列举 prefix 下 range 范围内的对象。
+     * split 为 true 且第一页被截断时不再继续翻页，把剩余部分拆成子范围返回，由调用方提交；否则返回空列表。
+     */
+    private List<KeyRange> listRange(String bucket, String prefix, KeyRange range, ListFilter filter,
+                                     Visitor visitor, boolean split) throws IOException {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucket)
+                .withPrefix(prefix)
+                .withStartAfter(range.after)
+                .withMaxKeys(config.getPageSize());
+        ListObjectsV2Result listing;
+        boolean firstPage = true;
+        do {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IOException("列举被中断");
+            }
+            listing = amazonS3.listObjectsV2(request);
+            List<S3ObjectSummary> summaries = listing.getObjectSummaries();
+            for (S3ObjectSummary summary : summaries) {
+                if (range.upTo != null && compareKeys(summary.getKey(), range.upTo) > 0) {
+                    return Collections.emptyList();
+                }
+                if (filter.matches(summary)) {
+                    visitor.visit(summary);
+                }
+            }
+            if (firstPage && split && listing.isTruncated() && !summaries.isEmpty()) {
+                String first = summaries.get(0).getKey();
+                String last = summaries.get(summaries.size() - 1).getKey();
+                List<String> bounds = splitPoints(prefix, first, last, range.upTo);
+                if (!bounds.isEmpty()) {
+                    List<KeyRange> children = new ArrayList<>(bounds.size() + 1);
+                    String after = last;
+                    for (String bound : bounds) {
+                        children.add(new KeyRange(after, bound, range.depth + 1));
+                        after = bound;
+                    }
+                    children.add(new KeyRange(after, range.upTo, range.depth + 1));
+                    return children;
+                }
+            }
+            firstPage = false;
+            request.setContinuationToken(listing.getNextContinuationToken());
+        } while (listing.isTruncated());
+        return Collections.emptyList();
+    }
+
+    /**
+     * 为 (last, upTo] 生成升序的分界点。一页内的键从第 from 个字符开始不同，之后的键也最可能在这些位置变化：
+     * 从位置 from 到前缀末尾(或与 upTo 的公共前缀末尾)逐层取 last 的前 j 个字符，加上与 last 第 j 个字符同类
+     * (数字、小写字母或大写字母)且更大的字符，每层最多 splitFanout 个。其他字符所在的位置不拆分，
+     * 超出这些字符的键都落在最后一个范围里，由它的第一页再拆分。
+     * 更深一层的分界点总小于更浅一层的，同层按字符升序，因此整体有序且都大于 last。
+     */
+    List<String> splitPoints(String prefix, String first, String last, String upTo) {
+        // (last, upTo] 内的键都以 last 与 upTo 的公共前缀开头，更浅的位置不会变化
+        int to = prefix.length();
+        if (upTo != null) {
+            to = Math.max(to, trimSurrogate(last, commonPrefixLength(last, upTo)));
+        }
+        int from = Math.max(to, trimSurrogate(last, commonPrefixLength(first, last)));
+        int fanout = Math.max(1, config.getSplitFanout());
+        List<String> bounds = new ArrayList<>();
+        for (int j = Math.min(from, last.length() - 1); j >= to; j--) {
+            char current = last.charAt(j);
+            char classEnd = current >= '0' && current <= '9' ? '9'
+                    : current >= 'a' && current <= 'z' ? 'z'
+                    : current >= 'A' && current <= 'Z' ? 'Z' : current;
+            int candidates = classEnd - current;
+            if (candidates <= 0) {
+                continue;
+            }
+            String stem = last.substring(0, j);
+            int step = (candidates + fanout - 1) / fanout;
+            for (char c = (char) (current + 1); c <= classEnd; c += step) {
+                String bound = stem + c;
+                if (upTo != null && compareKeys(bound, upTo) >= 0) {
+                    break;
+                }
+                bounds.add(bound);
+            }
+        }
+        return bounds;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // 不在代理对中间截断
+    private static int trimSurrogate(String s, int index) {
+        return index > 0 && index < s.length() && Character.isHighSurrogate(s.charAt(index - 1)) ? index - 1 : index;
+    }
+
+    /**
+     * 按 S3 的排序(UTF-8 字节序，即码点顺序)比较键；String.compareTo 按 UTF-16 比较，增补字符的顺序与之不同。
+     */
+    static int compareKeys(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    public void shutdown() {
+        shardExecutor.shutdownNow();
+    }
+
+    private static <T> Future<T> take(CompletionService<T> completion) throws IOException {
+        try {
+            return completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("列举被中断", e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("列举被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("列举失败", cause);
+        }
+    }
+
+    /**
+     * 键范围 (after, upTo]，null 表示不限。
+     */
+    private static class KeyRange {
+        final String after;
+        final String upTo;
+        final int depth;
+
+        KeyRange(String after, String upTo, int depth) {
+            this.after = after;
+            this.upTo = upTo;
+            this.depth = depth;
+        }
+    }
+}
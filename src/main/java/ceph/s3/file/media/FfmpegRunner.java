@@ -0,0 +1,81 @@
+package ceph.s3.file.media;
+
+import ceph.s3.file.metrics.S3Metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行 ffmpeg 进程，超时后强制结束进程，避免线程被挂起的进程永久占用。
+ */
+public class FfmpegRunner {
+    // 失败时错误信息中保留的日志长度
+    private static final int LOG_TAIL_BYTES = 4096;
+
+    private final long timeoutMillis;
+    private final S3Metrics metrics;
+
+    public FfmpegRunner(long timeoutMillis, S3Metrics metrics) {
+        this.timeoutMillis = timeoutMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 以给定参数运行 ffmpeg，退出码非0、超时或被中断时抛出 IOException。
+     */
+    public void run(String... args) throws IOException {
+        long start = System.nanoTime();
+        IOException error = null;
+        try {
+            doRun(args);
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        } finally {
+            metrics.recordFfmpeg(System.nanoTime() - start, error);
+        }
+    }
+
+    private void doRun(String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("ffmpeg");
+        // 不读取标准输入，并覆盖已存在的输出文件
+        command.add("-nostdin");
+        command.add("-y");
+        command.addAll(List.of(args));
+        // 输出写到临时日志文件，不需要额外线程读取管道
+        Path log = Files.createTempFile("ffmpeg-", ".log");
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile())
+                    .start();
+            try {
+                if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException("ffmpeg process timed out after " + timeoutMillis + " ms");
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new IOException("ffmpeg process was interrupted: " + tail(log), e);
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("ffmpeg process failed: " + tail(log));
+            }
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static String tail(Path log) throws IOException {
+        byte[] bytes = Files.readAllBytes(log);
+        int from = Math.max(0, bytes.length - LOG_TAIL_BYTES);
+        return new String(bytes, from, bytes.length - from, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,12 @@
+package ceph.s3.file.media;
+
+/**
+ * 媒体任务队列已满时抛出，调用方应稍后重试。
+ */
+public class MediaBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public MediaBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,85 @@
+package ceph.s3.file.media;
+
+import lombok.Getter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 媒体处理任务，按优先级和提交顺序排队执行，结果为处理后的文件内容。
+ */
+@Getter
+public class MediaJob extends FutureTask<byte[]> implements Comparable<MediaJob> {
+
+    public enum Priority {
+        // 同步请求，优先执行
+        INTERACTIVE,
+        // 异步任务
+        BATCH
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final Priority priority;
+    private final long sequence;
+    private final long createdAt;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile String error;
+    private volatile boolean failed;
+    // 离开队列(开始执行或在排队时被取消)时调用一次
+    private final AtomicBoolean dequeued = new AtomicBoolean();
+    private final Runnable onDequeue;
+
+    MediaJob(String id, Priority priority, long sequence, Callable<byte[]> task, Runnable onDequeue) {
+        super(task);
+        this.id = id;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.createdAt = System.currentTimeMillis();
+        this.onDequeue = onDequeue;
+    }
+
+    @Override
+    public void run() {
+        // 排队时已被取消的任务仍会被工作线程取出，此时不再计数，super.run 也不会执行
+        if (dequeued.compareAndSet(false, true)) {
+            onDequeue.run();
+            startedAt = System.currentTimeMillis();
+            status = Status.RUNNING;
+        }
+        super.run();
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+        failed = true;
+        error = t.getMessage() != null ? t.getMessage() : t.toString();
+        super.setException(t);
+    }
+
+    @Override
+    protected void done() {
+        // 排队时被取消，工作线程取出之前就要归还队列名额
+        if (dequeued.compareAndSet(false, true)) {
+            onDequeue.run();
+        }
+        finishedAt = System.currentTimeMillis();
+        if (isCancelled()) {
+            status = Status.CANCELLED;
+        } else {
+            status = failed ? Status.FAILED : Status.SUCCEEDED;
+        }
+    }
+
+    @Override
+    public int compareTo(MediaJob other) {
+        int result = priority.compareTo(other.priority);
+        return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+}
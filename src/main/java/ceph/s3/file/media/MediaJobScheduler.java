@@ -0,0 +1,151 @@
+package ceph.s3.file.media;
+
+import ceph.s3.config.AwzS3Config;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 媒体任务调度器：固定数量的工作线程从有界优先级队列中取任务执行，
+ * 队列满时直接拒绝，避免突发请求拉起大量 ffmpeg 进程拖垮节点。
+ * 同步请求以 INTERACTIVE 优先级排队并等待结果；异步任务以 BATCH 优先级排队，结果保留一段时间供查询。
+ */
+public class MediaJobScheduler {
+
+    /**
+     * 媒体处理逻辑，返回处理后的文件内容。
+     */
+    public interface Task {
+        byte[] run() throws IOException;
+    }
+
+    private final AwzS3Config.Media config;
+    private final ThreadPoolExecutor executor;
+    // 已提交但尚未开始执行的任务数
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    // 异步任务，按 jobId 查询
+    private final Map<String, MediaJob> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService cleaner;
+
+    public MediaJobScheduler(AwzS3Config.Media config) {
+        this.config = config;
+        int workers = config.getWorkers() > 0 ? config.getWorkers() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        // PriorityBlockingQueue 本身无界，容量由 queued 计数控制
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "media-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "media-job-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long retention = config.getJobRetentionMillis();
+        cleaner.scheduleWithFixedDelay(this::removeExpiredJobs, retention, retention, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 以 INTERACTIVE 优先级执行任务并等待结果。
+     *
+     * @throws MediaBusyException 队列已满
+     */
+    public byte[] execute(Task task) throws IOException {
+        MediaJob job = enqueue(MediaJob.Priority.INTERACTIVE, task);
+        try {
+            return job.get();
+        } catch (InterruptedException e) {
+            job.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("媒体任务被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("媒体任务失败", cause);
+        }
+    }
+
+    /**
+     * 以 BATCH 优先级提交异步任务，返回可用于查询的任务。
+     *
+     * @throws MediaBusyException 队列已满
+     */
+    public MediaJob submit(Task task) {
+        MediaJob job = enqueue(MediaJob.Priority.BATCH, task);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    public MediaJob getJob(String jobId) {
+        MediaJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new NoSuchElementException("媒体任务不存在: " + jobId);
+        }
+        return job;
+    }
+
+    /**
+     * 返回异步任务的结果，任务未结束时返回 null。
+     */
+    public byte[] getResult(String jobId) throws IOException {
+        MediaJob job = getJob(jobId);
+        if (!job.isDone()) {
+            return null;
+        }
+        try {
+            return job.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("媒体任务被中断", e);
+        } catch (ExecutionException | CancellationException e) {
+            throw new IOException("媒体任务失败: " + job.getError(), e);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private MediaJob enqueue(MediaJob.Priority priority, Task task) {
+        if (queued.incrementAndGet() > config.getQueueCapacity()) {
+            queued.decrementAndGet();
+            throw new MediaBusyException("媒体任务队列已满，请稍后重试");
+        }
+        MediaJob job = new MediaJob(UUID.randomUUID().toString(), priority, sequence.incrementAndGet(),
+                task::run, queued::decrementAndGet);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw new MediaBusyException("媒体任务调度器已关闭");
+        }
+        return job;
+    }
+
+    private void removeExpiredJobs() {
+        long deadline = System.currentTimeMillis() - config.getJobRetentionMillis();
+        jobs.values().removeIf(job -> job.isDone() && job.getFinishedAt() < deadline);
+    }
+
+    public void shutdown() {
+        cleaner.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,29 @@
+package ceph.s3.file.media;
+
+import lombok.Data;
+
+/**
+ * 返回给客户端的媒体任务状态。
+ */
+@Data
+public class MediaJobStatus {
+    private String jobId;
+    private MediaJob.Priority priority;
+    private MediaJob.Status status;
+    private long createdAt;
+    private long startedAt;
+    private long finishedAt;
+    private String error;
+
+    public static MediaJobStatus of(MediaJob job) {
+        MediaJobStatus status = new MediaJobStatus();
+        status.setJobId(job.getId());
+        status.setPriority(job.getPriority());
+        status.setStatus(job.getStatus());
+        status.setCreatedAt(job.getCreatedAt());
+        status.setStartedAt(job.getStartedAt());
+        status.setFinishedAt(job.getFinishedAt());
+        status.setError(job.getError());
+        return status;
+    }
+}
@@ -0,0 +1,224 @@
+package ceph.s3.file.media;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.util.BinaryUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 两级缩略图缓存：内存 LRU + 按总大小淘汰的磁盘缓存。
+ * 缓存键包含 bucket、key 和 ETag，对象被覆盖后 ETag 变化，旧缓存自然失效。
+ * 同一个键同时只会有一个生成任务，其余请求等待并共享结果。
+ * 生成任务应在媒体任务的工作线程中直接执行，等待的一方等的总是已经在执行的任务，工作线程之间不会等待排队中的任务。
+ */
+public class ThumbnailCache {
+
+    /**
+     * 缓存未命中时生成缩略图。
+     */
+    public interface Loader {
+        byte[] load() throws IOException;
+    }
+
+    private final AwzS3Config.Thumbnail config;
+    private final Path diskDir;
+    private final AtomicLong diskBytes = new AtomicLong();
+    // 访问顺序的 LinkedHashMap 实现 LRU，按总字节数淘汰
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    // 正在生成的缩略图，用于合并并发请求
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    public ThumbnailCache(AwzS3Config.Thumbnail config) throws IOException {
+        this.config = config;
+        this.diskDir = Paths.get(config.getDiskDir());
+        Files.createDirectories(diskDir);
+        try (Stream<Path> files = Files.list(diskDir)) {
+            diskBytes.set(files.mapToLong(ThumbnailCache::sizeOf).sum());
+        }
+    }
+
+    public byte[] get(String bucket, String key, String eTag, Loader loader) throws IOException {
+        String cacheKey = cacheKey(bucket, key, eTag);
+        byte[] cached = getFromMemory(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(cacheKey, future);
+        if (existing != null) {
+            // 已有相同的生成任务，等待其结果
+            return await(existing);
+        }
+        try {
+            byte[] data = getFromDisk(cacheKey);
+            if (data == null) {
+                data = loader.load();
+                putToDisk(cacheKey, data);
+            }
+            putToMemory(cacheKey, data);
+            future.complete(data);
+            return data;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 只查询缓存，不生成缩略图；有正在进行的生成任务时等待并共享其结果。未命中返回 null。
+     */
+    public byte[] getIfPresent(String bucket, String key, String eTag) throws IOException {
+        String cacheKey = cacheKey(bucket, key, eTag);
+        byte[] data = getFromMemory(cacheKey);
+        if (data != null) {
+            return data;
+        }
+        CompletableFuture<byte[]> existing = inFlight.get(cacheKey);
+        if (existing != null) {
+            return await(existing);
+        }
+        data = getFromDisk(cacheKey);
+        if (data != null) {
+            putToMemory(cacheKey, data);
+        }
+        return data;
+    }
+
+    private synchronized byte[] getFromMemory(String cacheKey) {
+        return memory.get(cacheKey);
+    }
+
+    private synchronized void putToMemory(String cacheKey, byte[] data) {
+        if (data.length > config.getMemoryMaxBytes()) {
+            return;
+        }
+        byte[] previous = memory.put(cacheKey, data);
+        memoryBytes += data.length - (previous != null ? previous.length : 0);
+        // 淘汰最久未访问的条目
+        Iterator<Map.Entry<String, byte[]>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > config.getMemoryMaxBytes() && iterator.hasNext()) {
+            memoryBytes -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    private byte[] getFromDisk(String cacheKey) {
+        Path file = diskDir.resolve(cacheKey);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            // 更新修改时间，磁盘淘汰按修改时间近似 LRU
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void putToDisk(String cacheKey, byte[] data) {
+        if (data.length > config.getDiskMaxBytes()) {
+            return;
+        }
+        Path file = diskDir.resolve(cacheKey);
+        Path tempFile = diskDir.resolve(cacheKey + ".tmp");
+        try {
+            long previous = sizeOf(file);
+            Files.write(tempFile, data);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(data.length - previous) > config.getDiskMaxBytes()) {
+                evictDisk();
+            }
+        } catch (IOException e) {
+            // 磁盘缓存写入失败不影响返回结果
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void evictDisk() throws IOException {
+        if (diskBytes.get() <= config.getDiskMaxBytes()) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(diskDir)) {
+            files = stream.filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .sorted(Comparator.comparingLong(ThumbnailCache::lastModified))
+                    .collect(Collectors.toList());
+        }
+        // 删除最早修改的文件，直到总大小降到上限的 90%
+        long target = config.getDiskMaxBytes() * 9 / 10;
+        for (Path file : files) {
+            if (diskBytes.get() <= target) {
+                break;
+            }
+            long size = sizeOf(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    private static String cacheKey(String bucket, String key, String eTag) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((bucket + "\n" + key + "\n" + eTag).getBytes(StandardCharsets.UTF_8));
+            return BinaryUtils.toHex(hash) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待缩略图生成被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("缩略图生成失败", cause);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
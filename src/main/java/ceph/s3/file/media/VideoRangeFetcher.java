@@ -0,0 +1,167 @@
+package ceph.s3.file.media;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.download.HedgedReader;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.util.IOUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * 只下载视频开头一段所需的字节，而不是整个对象。
+ * 对 MP4/MOV 会解析顶层 box 找到 moov：moov 在文件开头(faststart)时只取开头一段；
+ * moov 在文件末尾时再单独范围读取 moov。取回的范围按原偏移写入一个与对象等长的稀疏文件，
+ * ffmpeg 可以像读取完整文件一样 seek，而未下载的部分不占用磁盘和带宽。
+ */
+public class VideoRangeFetcher {
+    // box 头最长 16 字节(size + type + 64位 largesize)
+    private static final int BOX_HEADER_SIZE = 16;
+
+    private final AmazonS3 amazonS3;
+    private final HedgedReader hedgedReader;
+    private final AwzS3Config.Media config;
+
+    public VideoRangeFetcher(AmazonS3 amazonS3, HedgedReader hedgedReader, AwzS3Config.Media config) {
+        this.amazonS3 = amazonS3;
+        this.hedgedReader = hedgedReader;
+        this.config = config;
+    }
+
+    /**
+     * 把 bucket/key 开头部分(及 moov)写入稀疏文件 target，返回实际下载的字节数。
+     */
+    public long fetchLeading(String bucket, String key, Path target) throws IOException {
+        ObjectMetadata metadata = amazonS3.getObjectMetadata(bucket, key);
+        long length = metadata.getContentLength();
+        String eTag = metadata.getETag();
+        long probeEnd = Math.min(length, config.getProbeBytes());
+        byte[] head = readRange(bucket, key, eTag, 0, probeEnd);
+
+        try (RandomAccessFile file = new RandomAccessFile(target.toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            // 设置为对象长度，未写入的部分在文件系统里是空洞，不占用空间
+            file.setLength(length);
+            write(channel, head, 0);
+            long fetched = head.length;
+            if (length <= probeEnd) {
+                return fetched;
+            }
+
+            long moovStart = -1;
+            long moovEnd = -1;
+            long mdatStart = -1;
+            if (isIsoMedia(head)) {
+                // 逐个读取顶层 box 头，直到找到 moov 和 mdat
+                long offset = 0;
+                while (offset + 8 <= length && (moovStart < 0 || mdatStart < 0)) {
+                    byte[] header = offset + BOX_HEADER_SIZE <= head.length
+                            ? slice(head, offset)
+                            : readRange(bucket, key, eTag, offset, Math.min(length, offset + BOX_HEADER_SIZE));
+                    long size = boxSize(header, length - offset);
+                    if (size < 8) {
+                        break;
+                    }
+                    String type = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+                    if ("moov".equals(type)) {
+                        moovStart = offset;
+                        moovEnd = offset + size;
+                    } else if ("mdat".equals(type)) {
+                        mdatStart = offset;
+                    }
+                    offset += size;
+                }
+            }
+
+            // 需要的开头部分：媒体数据起始位置之后再取 leadingMediaBytes 字节
+            long mediaStart = mdatStart >= 0 ? mdatStart : 0;
+            long prefixEnd = Math.min(length, mediaStart + config.getLeadingMediaBytes());
+            if (moovStart >= 0 && moovStart < mediaStart) {
+                // faststart：moov 在媒体数据之前，开头部分必然包含完整的 moov
+                prefixEnd = Math.max(prefixEnd, Math.min(length, moovEnd));
+            }
+            if (prefixEnd > head.length) {
+                write(channel, readRange(bucket, key, eTag, head.length, prefixEnd), head.length);
+                fetched += prefixEnd - head.length;
+            }
+            // moov 在文件末尾，或跟在较短的 mdat 之后、只有开头一部分落在已读取的范围内，单独读取剩余部分
+            long covered = Math.max(prefixEnd, head.length);
+            if (moovStart >= 0 && moovEnd > covered) {
+                long from = Math.max(moovStart, covered);
+                write(channel, readRange(bucket, key, eTag, from, moovEnd), from);
+                fetched += moovEnd - from;
+            }
+            return fetched;
+        }
+    }
+
+    /**
+     * 读取 [start, end) 范围的内容。
+     */
+    private byte[] readRange(String bucket, String key, String eTag, long start, long end) throws IOException {
+        if (end <= start) {
+            return new byte[0];
+        }
+        GetObjectRequest request = new GetObjectRequest(bucket, key)
+                .withRange(start, end - 1)
+                .withMatchingETagConstraint(eTag);
+        S3Object s3Object = hedgedReader.getObject(request);
+        if (s3Object == null) {
+            throw new IOException("对象在读取过程中被修改: " + key);
+        }
+        try (S3Object object = s3Object) {
+            return IOUtils.toByteArray(object.getObjectContent());
+        }
+    }
+
+    private static void write(FileChannel channel, byte[] data, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 第一个 box 是 ftyp/moov/free 等 ISO 基础媒体格式 box 时认为是 MP4/MOV。
+     */
+    private static boolean isIsoMedia(byte[] head) {
+        if (head.length < 8) {
+            return false;
+        }
+        String type = new String(head, 4, 4, StandardCharsets.ISO_8859_1);
+        return "ftyp".equals(type) || "moov".equals(type) || "free".equals(type)
+                || "skip".equals(type) || "wide".equals(type) || "mdat".equals(type);
+    }
+
+    /**
+     * 解析 box 大小：1 表示后面跟 64 位大小，0 表示延伸到文件末尾。
+     */
+    private static long boxSize(byte[] header, long remaining) {
+        if (header.length < 8) {
+            return -1;
+        }
+        long size = ByteBuffer.wrap(header, 0, 4).getInt() & 0xFFFFFFFFL;
+        if (size == 1) {
+            if (header.length < BOX_HEADER_SIZE) {
+                return -1;
+            }
+            size = ByteBuffer.wrap(header, 8, 8).getLong();
+        } else if (size == 0) {
+            size = remaining;
+        }
+        return size > remaining ? remaining : size;
+    }
+
+    private static byte[] slice(byte[] data, long offset) {
+        byte[] header = new byte[BOX_HEADER_SIZE];
+        System.arraycopy(data, (int) offset, header, 0, BOX_HEADER_SIZE);
+        return header;
+    }
+}
@@ -0,0 +1,21 @@
+package ceph.s3.file.metadata;
+
+import lombok.Data;
+
+/**
+ * 元数据缓存的命中统计。
+ */
+@Data
+public class MetadataCacheStats {
+    private long hits;
+    private long negativeHits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private int size;
+
+    public double getHitRate() {
+        long total = hits + negativeHits + misses;
+        return total == 0 ? 0 : (double) (hits + negativeHits) / total;
+    }
+}
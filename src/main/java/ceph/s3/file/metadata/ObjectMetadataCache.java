@@ -0,0 +1,217 @@
+package ceph.s3.file.metadata;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对象元数据缓存，减少 HEAD 请求。
+ * 按条目数做 LRU 淘汰，条目在 TTL 后过期；对象不存在(404)时缓存一个较短 TTL 的空条目。
+ * 服务自身修改对象后调用 invalidate 使缓存失效。未启用时每次都直接 HEAD。
+ */
+public class ObjectMetadataCache {
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.MetadataCache config;
+    // 访问顺序的 LinkedHashMap 实现 LRU
+    private final LinkedHashMap<String, CachedEntry> entries;
+    private final ExecutorService headExecutor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    // 正在 HEAD 的键；加载期间该键失效过时不写入加载结果，避免缓存旧数据。只记录在途的加载，不会无限增长
+    private final Map<String, Load> loads = new HashMap<>();
+
+    public ObjectMetadataCache(AmazonS3 amazonS3, AwzS3Config.MetadataCache config) {
+        this.amazonS3 = amazonS3;
+        this.config = config;
+        this.entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                if (size() > config.getMaxEntries()) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.headExecutor = Executors.newFixedThreadPool(Math.max(1, config.getBulkConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-metadata-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 返回对象元数据的副本，对象不存在时返回 null。
+     */
+    public ObjectMetadata get(String bucket, String key) {
+        String cacheKey = cacheKey(bucket, key);
+        long now = System.currentTimeMillis();
+        CachedEntry entry = null;
+        if (config.isEnabled()) {
+            synchronized (entries) {
+                entry = entries.get(cacheKey);
+            }
+        }
+        if (entry != null && entry.expiresAt > now) {
+            if (entry.metadata == null) {
+                negativeHits.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.metadata.clone();
+        }
+        misses.incrementAndGet();
+        long loadVersion = beginLoad(cacheKey);
+        CachedEntry loaded = null;
+        try {
+            ObjectMetadata metadata;
+            try {
+                metadata = amazonS3.getObjectMetadata(bucket, key);
+            } catch (AmazonServiceException e) {
+                if (e.getStatusCode() != 404) {
+                    throw e;
+                }
+                // 对象不存在，短时间内缓存空结果
+                loaded = new CachedEntry(null, now + config.getNegativeTtlMillis());
+                return null;
+            }
+            loaded = new CachedEntry(metadata, now + config.getTtlMillis());
+            return metadata.clone();
+        } finally {
+            endLoad(cacheKey, loadVersion, loaded);
+        }
+    }
+
+    /**
+     * 并发获取多个对象的元数据，结果与 keys 顺序一致，不存在或获取失败的对象对应 null。
+     */
+    public Map<String, ObjectMetadata> getAll(String bucket, List<String> keys) {
+        Map<String, Future<ObjectMetadata>> futures = new LinkedHashMap<>();
+        for (String key : keys) {
+            futures.put(key, headExecutor.submit(() -> get(bucket, key)));
+        }
+        Map<String, ObjectMetadata> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<ObjectMetadata>> entry : futures.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(future -> future.cancel(true));
+                throw new SdkClientException("批量获取元数据被中断", e);
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                result.put(entry.getKey(), null);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(String bucket, String key) {
+        String cacheKey = cacheKey(bucket, key);
+        synchronized (entries) {
+            Load load = loads.get(cacheKey);
+            if (load != null) {
+                load.version++;
+            }
+            if (entries.remove(cacheKey) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 使某个桶下的全部缓存失效，用于无法确定具体修改了哪些对象的场景。
+     */
+    public void invalidateBucket(String bucket) {
+        String prefix = cacheKey(bucket, "");
+        synchronized (entries) {
+            for (Map.Entry<String, Load> load : loads.entrySet()) {
+                if (load.getKey().startsWith(prefix)) {
+                    load.getValue().version++;
+                }
+            }
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(prefix)) {
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public MetadataCacheStats getStats() {
+        MetadataCacheStats stats = new MetadataCacheStats();
+        stats.setHits(hits.get());
+        stats.setNegativeHits(negativeHits.get());
+        stats.setMisses(misses.get());
+        stats.setEvictions(evictions.get());
+        stats.setInvalidations(invalidations.get());
+        synchronized (entries) {
+            stats.setSize(entries.size());
+        }
+        return stats;
+    }
+
+    public void shutdown() {
+        headExecutor.shutdownNow();
+    }
+
+    /**
+     * 登记一次加载，返回该键当前的版本。
+     */
+    private long beginLoad(String cacheKey) {
+        synchronized (entries) {
+            Load load = loads.computeIfAbsent(cacheKey, k -> new Load());
+            load.count++;
+            return load.version;
+        }
+    }
+
+    /**
+     * 结束加载；加载期间该键没有失效过时写入结果，entry 为 null 表示加载失败。
+     */
+    private void endLoad(String cacheKey, long loadVersion, CachedEntry entry) {
+        synchronized (entries) {
+            Load load = loads.get(cacheKey);
+            if (entry != null && config.isEnabled() && load.version == loadVersion) {
+                entries.put(cacheKey, entry);
+            }
+            if (--load.count == 0) {
+                loads.remove(cacheKey);
+            }
+        }
+    }
+
+    private static String cacheKey(String bucket, String key) {
+        return bucket + "\n" + key;
+    }
+
+    // 一个键的在途加载：失效次数和加载数
+    private static class Load {
+        private long version;
+        private int count;
+    }
+
+    private static class CachedEntry {
+        // 为 null 表示对象不存在
+        private final ObjectMetadata metadata;
+        private final long expiresAt;
+
+        CachedEntry(ObjectMetadata metadata, long expiresAt) {
+            this.metadata = metadata;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ceph.s3.file.metrics;
+
+import ceph.s3.config.AwzS3Config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 指标 bucket 标签的取值。桶名来自请求参数，不加限制时每个不同的桶名都会产生一组新的时间序列，
+ * 因此只有默认桶和 aws.s3.metrics.bucket-tags 中列出的桶使用桶名，其他桶统一为 other，未指定桶为 none。
+ */
+public class BucketTags {
+    public static final String OTHER = "other";
+    public static final String NONE = "none";
+
+    private final Set<String> allowed;
+
+    public BucketTags(AwzS3Config config) {
+        this.allowed = new HashSet<>(config.getMetrics().getBucketTags());
+        if (config.getBucket() != null && !config.getBucket().isEmpty()) {
+            allowed.add(config.getBucket());
+        }
+    }
+
+    public String of(String bucket) {
+        if (bucket == null || bucket.isEmpty()) {
+            return NONE;
+        }
+        return allowed.contains(bucket) ? bucket : OTHER;
+    }
+}
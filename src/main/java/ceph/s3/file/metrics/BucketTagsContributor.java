@@ -0,0 +1,41 @@
+package ceph.s3.file.metrics;
+
+import ceph.s3.config.AwzS3Config;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTagsContributor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 给 http.server.requests 指标加上 bucket 标签，按桶区分接口耗时；标签取值见 BucketTags。
+ */
+@Component
+public class BucketTagsContributor implements WebMvcTagsContributor {
+    private final BucketTags bucketTags;
+
+    public BucketTagsContributor(AwzS3Config config) {
+        this.bucketTags = new BucketTags(config);
+    }
+
+    @Override
+    public Iterable<Tag> getTags(HttpServletRequest request, HttpServletResponse response, Object handler, Throwable exception) {
+        return Tags.of("bucket", bucketOf(request));
+    }
+
+    @Override
+    public Iterable<Tag> getLongRequestTags(HttpServletRequest request, Object handler) {
+        return Tags.of("bucket", bucketOf(request));
+    }
+
+    private String bucketOf(HttpServletRequest request) {
+        String bucket = request.getParameter("bucket");
+        if (bucket == null || bucket.isEmpty()) {
+            bucket = request.getParameter("sourceBucket");
+        }
+        return bucketTags.of(bucket);
+    }
+}
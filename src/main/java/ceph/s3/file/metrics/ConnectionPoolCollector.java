@@ -0,0 +1,43 @@
+package ceph.s3.file.metrics;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 从每次请求的 SDK 指标中取出连接池状态，作为一个网关的连接池指标。
+ */
+class ConnectionPoolCollector extends RequestMetricCollector {
+    private final AtomicLong available;
+    private final AtomicLong leased;
+    private final AtomicLong pending;
+
+    ConnectionPoolCollector(MeterRegistry registry, String endpoint) {
+        Tags tags = Tags.of("endpoint", endpoint);
+        this.available = registry.gauge("s3.http.pool.available", tags, new AtomicLong());
+        this.leased = registry.gauge("s3.http.pool.leased", tags, new AtomicLong());
+        this.pending = registry.gauge("s3.http.pool.pending", tags, new AtomicLong());
+    }
+
+    @Override
+    public void collectMetrics(Request<?> request, Response<?> response) {
+        AWSRequestMetrics metrics = request.getAWSRequestMetrics();
+        if (metrics == null) {
+            return;
+        }
+        update(available, metrics.getTimingInfo().getCounter(AWSRequestMetrics.Field.HttpClientPoolAvailableCount.name()));
+        update(leased, metrics.getTimingInfo().getCounter(AWSRequestMetrics.Field.HttpClientPoolLeasedCount.name()));
+        update(pending, metrics.getTimingInfo().getCounter(AWSRequestMetrics.Field.HttpClientPoolPendingCount.name()));
+    }
+
+    private static void update(AtomicLong gauge, Number value) {
+        if (value != null) {
+            gauge.set(value.longValue());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ceph.s3.file.metrics;
+
+import com.amazonaws.services.s3.AmazonS3;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 记录每次 AmazonS3 调用耗时的代理，operation 为方法名，bucket 取自第一个参数。
+ */
+class InstrumentedS3 implements InvocationHandler {
+    // 各请求类型的 getBucketName 方法，没有该方法的类型为 empty
+    private static final Map<Class<?>, Optional<Method>> BUCKET_GETTERS = new ConcurrentHashMap<>();
+
+    private final AmazonS3 delegate;
+    private final S3Metrics metrics;
+
+    InstrumentedS3(AmazonS3 delegate, S3Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "InstrumentedS3(" + delegate + ")";
+            }
+        }
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            error = e.getCause();
+            throw error;
+        } finally {
+            if (!"shutdown".equals(method.getName())) {
+                metrics.recordClientCall(method.getName(), bucketOf(args), System.nanoTime() - start, error);
+            }
+        }
+    }
+
+    private static String bucketOf(Object[] args) {
+        if (args == null || args.length == 0 || args[0] == null) {
+            return null;
+        }
+        Object first = args[0];
+        if (first instanceof String) {
+            return (String) first;
+        }
+        Optional<Method> getter = BUCKET_GETTERS.computeIfAbsent(first.getClass(), type -> {
+            try {
+                return Optional.of(type.getMethod("getBucketName"));
+            } catch (NoSuchMethodException e) {
+                return Optional.empty();
+            }
+        });
+        if (!getter.isPresent()) {
+            return null;
+        }
+        try {
+            Object bucket = getter.get().invoke(first);
+            return bucket instanceof String ? (String) bucket : null;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
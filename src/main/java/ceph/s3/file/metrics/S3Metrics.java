@@ -0,0 +1,208 @@
+package ceph.s3.file.metrics;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.services.s3.AmazonS3;
+import io.micrometer.core.instrument.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * S3 和媒体操作的指标，通过 Actuator 暴露(/actuator/prometheus)：
+ * <ul>
+ *     <li>s3.operation：AwzS3Util 操作耗时，按 operation、bucket、outcome 区分</li>
+ *     <li>s3.client.requests：每次 SDK 调用(即每次访问 RGW)的耗时</li>
+ *     <li>s3.upload.part：单个分段上传耗时</li>
+ *     <li>s3.transfer.bytes / s3.transfer.throughput / s3.transfer.inflight：传输字节数、每秒字节数和在途传输数</li>
+ *     <li>media.ffmpeg.run：ffmpeg 运行耗时</li>
+ *     <li>s3.http.pool.*：SDK 连接池的可用、已借出和等待连接数</li>
+ * </ul>
+ * bucket 标签只区分默认桶和配置的桶(见 BucketTags)。耗时超过阈值的操作和 SDK 调用会打印慢日志，慢日志中是实际的桶名。
+ */
+public class S3Metrics {
+    static final Logger SLOW_LOG = LoggerFactory.getLogger("ceph.s3.slow");
+
+    public static final String UPLOAD = "upload";
+    public static final String DOWNLOAD = "download";
+
+    private final MeterRegistry registry;
+    private final AwzS3Config.Metrics config;
+    private final BucketTags bucketTags;
+    // 当前线程正在计时的操作，嵌套调用的其他 AwzS3Util 操作不再重复计时
+    private final ThreadLocal<String> currentOperation = new ThreadLocal<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> bytes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> throughput = new ConcurrentHashMap<>();
+    private final Map<String, Double> lastBytes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService throughputUpdater;
+
+    public S3Metrics(MeterRegistry registry, AwzS3Config config) {
+        this.registry = registry;
+        this.config = config.getMetrics();
+        this.bucketTags = new BucketTags(config);
+        for (String direction : new String[]{UPLOAD, DOWNLOAD}) {
+            Tags tags = Tags.of("direction", direction);
+            inFlight.put(direction, registry.gauge("s3.transfer.inflight", tags, new AtomicInteger()));
+            bytes.put(direction, Counter.builder("s3.transfer.bytes").tags(tags).baseUnit("bytes").register(registry));
+            throughput.put(direction, registry.gauge("s3.transfer.throughput", tags, new AtomicLong()));
+        }
+        this.throughputUpdater = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "s3-metrics-throughput");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, this.config.getThroughputIntervalMillis());
+        throughputUpdater.scheduleAtFixedRate(() -> updateThroughput(interval), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 返回记录每次调用耗时的 AmazonS3 代理。
+     */
+    public AmazonS3 instrument(AmazonS3 amazonS3) {
+        return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[]{AmazonS3.class},
+                new InstrumentedS3(amazonS3, this));
+    }
+
+    /**
+     * 采集 endpoint 对应客户端连接池状态的收集器，设置到客户端上后每次请求都会更新连接池指标。
+     */
+    public RequestMetricCollector connectionPoolCollector(String endpoint) {
+        return new ConnectionPoolCollector(registry, endpoint);
+    }
+
+    /**
+     * 一个可能抛出受检异常的操作。
+     */
+    public interface Operation<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * 执行 task 并记录为一次 s3.operation；在另一个计时中的操作内调用时只执行不计时。
+     */
+    public <T, E extends Exception> T time(String operation, String bucket, Operation<T, E> task) throws E {
+        if (currentOperation.get() != null) {
+            return task.call();
+        }
+        currentOperation.set(operation);
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return task.call();
+        } catch (Exception | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            currentOperation.remove();
+            recordOperation(operation, bucket, System.nanoTime() - start, error);
+        }
+    }
+
+    public void recordOperation(String operation, String bucket, long nanos, Throwable error) {
+        record("s3.operation", operation, bucket, nanos, error, config.getSlowOperationMillis());
+    }
+
+    void recordClientCall(String operation, String bucket, long nanos, Throwable error) {
+        record("s3.client.requests", operation, bucket, nanos, error, config.getSlowRequestMillis());
+    }
+
+    public void recordQueueWait(String operationClass, long nanos) {
+        Timer.builder("s3.operation.queue")
+                .tag("class", operationClass)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPart(String bucket, long nanos, long size, Throwable error) {
+        Timer.builder("s3.upload.part")
+                .tags("bucket", bucketTags.of(bucket), "outcome", outcome(error))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (error == null) {
+            addBytes(UPLOAD, size);
+        }
+    }
+
+    public void recordFfmpeg(long nanos, Throwable error) {
+        Timer.builder("media.ffmpeg.run")
+                .tag("outcome", outcome(error))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (millis >= config.getSlowOperationMillis()) {
+            SLOW_LOG.warn("慢 ffmpeg 运行: {} ms, outcome={}", millis, outcome(error));
+        }
+    }
+
+    public void transferStarted(String direction) {
+        inFlight.get(direction).incrementAndGet();
+    }
+
+    public void transferFinished(String direction) {
+        inFlight.get(direction).decrementAndGet();
+    }
+
+    public void addBytes(String direction, long count) {
+        bytes.get(direction).increment(count);
+    }
+
+    public <T> void gauge(String name, String description, T object, ToDoubleFunction<T> value) {
+        gauge(name, Tags.empty(), description, object, value);
+    }
+
+    public <T> void gauge(String name, Tags tags, String description, T object, ToDoubleFunction<T> value) {
+        Gauge.builder(name, object, value).tags(tags).description(description).register(registry);
+    }
+
+    public void shutdown() {
+        throughputUpdater.shutdownNow();
+    }
+
+    private void record(String name, String operation, String bucket, long nanos, Throwable error, long slowMillis) {
+        String outcome = outcome(error);
+        Timer.builder(name)
+                .tags("operation", operation, "bucket", bucketTags.of(bucket), "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (millis >= slowMillis) {
+            SLOW_LOG.warn("慢操作 {}: operation={}, bucket={}, outcome={}, {} ms", name, operation, bucket, outcome, millis);
+        }
+    }
+
+    private void updateThroughput(long intervalMillis) {
+        bytes.forEach((direction, counter) -> {
+            double total = counter.count();
+            double previous = lastBytes.getOrDefault(direction, 0d);
+            lastBytes.put(direction, total);
+            throughput.get(direction).set((long) ((total - previous) * 1000 / intervalMillis));
+        });
+    }
+
+    /**
+     * success、client_error(4xx)、server_error(5xx) 或 error(网络等其他异常)。
+     */
+    static String outcome(Throwable error) {
+        if (error == null) {
+            return "success";
+        }
+        if (error instanceof AmazonServiceException) {
+            return ((AmazonServiceException) error).getStatusCode() >= 500 ? "server_error" : "client_error";
+        }
+        return "error";
+    }
+}
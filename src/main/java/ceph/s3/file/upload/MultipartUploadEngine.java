@@ -0,0 +1,313 @@
+package ceph.s3.file.upload;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.util.PartBuffer;
+import ceph.s3.file.util.PartBufferPool;
+import ceph.s3.file.util.ReleasingFutureTask;
+import ceph.s3.file.util.S3Retry;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 并发分段上传引擎。
+ * 调用线程顺序读取输入流并切分分段，分段数据放在从共享缓冲池借出的缓冲区中，由共享线程池并发上传；
+ * 单个上传在途分段数受 partConcurrency 限制，全局并发受线程池大小限制，全局内存受缓冲池预算限制。
+ * 任一分段重试耗尽后会中止整个分段上传，避免在集群里留下孤立分段。
+ */
+public class MultipartUploadEngine {
+    // S3 单个分段上传允许的最大分段数
+    private static final int MAX_PARTS = 10000;
+    private static final long MB = 1024 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final AwzS3Config.Upload config;
+    private final PartBufferPool bufferPool;
+    private final S3Metrics metrics;
+    private final ExecutorService partExecutor;
+
+    public MultipartUploadEngine(AmazonS3 amazonS3, PartBufferPool bufferPool, S3Metrics metrics, AwzS3Config.Upload config) {
+        this.amazonS3 = amazonS3;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalPartConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-part-upload-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 根据文件大小计算分段大小：期望分段数为 targetPartCount，按 MB 取整，
+     * 并限制在 [minPartSize, maxPartSize] 内，同时保证分段数不超过 10000。
+     * 长度未知(小于0)时返回 minPartSize。
+     */
+    public long partSizeFor(long contentLength) {
+        long minPartSize = config.getMinPartSize();
+        if (contentLength < 0) {
+            return minPartSize;
+        }
+        long partSize = roundUpToMb(ceilDiv(contentLength, Math.max(1, config.getTargetPartCount())));
+        partSize = Math.max(minPartSize, Math.min(partSize, config.getMaxPartSize()));
+        // 即使超过 maxPartSize 也要保证分段数不超过上限
+        return Math.max(partSize, roundUpToMb(ceilDiv(contentLength, MAX_PARTS)));
+    }
+
+    /**
+     * 所有分段上传完成、提交之前的检查。返回 false 时中止分段上传，抛出异常时同样中止并向上抛出。
+     */
+    public interface CompletionGuard {
+        boolean beforeComplete() throws IOException;
+    }
+
+    public CompleteMultipartUploadResult upload(String bucket, String key, InputStream inputStream, long contentLength) throws IOException {
+        return upload(bucket, key, inputStream, contentLength, config.getPartConcurrency());
+    }
+
+    /**
+     * 同 upload，guard 在提交前调用，见 CompletionGuard。
+     */
+    public CompleteMultipartUploadResult upload(String bucket, String key, InputStream inputStream, long contentLength,
+                                                CompletionGuard guard) throws IOException {
+        return upload(bucket, key, inputStream, contentLength, config.getPartConcurrency(), null, guard);
+    }
+
+    /**
+     * 将输入流以分段上传的方式写入 bucket/key。
+     *
+     * @param contentLength   流的总长度，未知时传 -1
+     * @param partConcurrency 本次上传最多同时在途的分段数
+     */
+    public CompleteMultipartUploadResult upload(String bucket, String key, InputStream inputStream,
+                                                long contentLength, int partConcurrency) throws IOException {
+        return upload(bucket, key, inputStream, contentLength, partConcurrency, null, null);
+    }
+
+    /**
+     * 同 upload，metadata 为发起分段上传时设置的对象元数据(可为 null)；
+     * guard 不为 null 时在提交前调用，返回 false 则中止分段上传并返回 null。
+     */
+    public CompleteMultipartUploadResult upload(String bucket, String key, InputStream inputStream, long contentLength,
+                                                int partConcurrency, ObjectMetadata metadata,
+                                                CompletionGuard guard) throws IOException {
+        metrics.transferStarted(S3Metrics.UPLOAD);
+        try {
+            return doUpload(bucket, key, inputStream, contentLength, partConcurrency, metadata, guard);
+        } finally {
+            metrics.transferFinished(S3Metrics.UPLOAD);
+        }
+    }
+
+    private CompleteMultipartUploadResult doUpload(String bucket, String key, InputStream inputStream,
+                                                   long contentLength, int partConcurrency, ObjectMetadata metadata,
+                                                   CompletionGuard guard) throws IOException {
+        long partSize = partSizeFor(contentLength);
+        // 发起分段上传，并获取 uploadId
+        InitiateMultipartUploadRequest initiateRequest = metadata == null
+                ? new InitiateMultipartUploadRequest(bucket, key)
+                : new InitiateMultipartUploadRequest(bucket, key, metadata);
+        String uploadId = amazonS3.initiateMultipartUpload(initiateRequest).getUploadId();
+        // 限制本次上传同时在途(已读入内存但尚未上传完成)的分段数
+        Semaphore inFlight = new Semaphore(Math.max(1, partConcurrency));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<PartETag>> futures = new ArrayList<>();
+        try {
+            long uploaded = 0;
+            int partNumber = 1;
+            while (failure.get() == null) {
+                // 长度未知时每 1000 个分段把分段大小翻倍，保证 10000 个分段内能传完
+                long currentPartSize = contentLength < 0
+                        ? Math.min(partSize << ((partNumber - 1) / 1000), Math.max(partSize, config.getMaxPartSize()))
+                        : Math.min(partSize, contentLength - uploaded);
+                if (partNumber > MAX_PARTS) {
+                    throw new IOException("分段数超过上限 " + MAX_PARTS);
+                }
+                acquire(inFlight);
+                PartBuffer part;
+                long bytesRead;
+                try {
+                    part = acquireBuffer(currentPartSize);
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                try {
+                    bytesRead = fillPart(part, inputStream);
+                } catch (IOException | RuntimeException e) {
+                    part.close();
+                    inFlight.release();
+                    throw e;
+                }
+                // 流已结束；第一个分段即使为空也要上传，保证空文件也能完成上传
+                if (bytesRead == 0 && partNumber > 1) {
+                    part.close();
+                    inFlight.release();
+                    break;
+                }
+                futures.add(submitPart(bucket, key, uploadId, partNumber, part, inFlight, failure));
+                uploaded += bytesRead;
+                partNumber++;
+                // 已知长度时读满即结束；读不满说明流已结束
+                if (bytesRead < currentPartSize || (contentLength >= 0 && uploaded >= contentLength)) {
+                    break;
+                }
+            }
+            // 已知长度时流不能提前结束，否则会提交一个被截断的对象；分段失败时由下面的等待抛出原始异常
+            if (contentLength >= 0 && uploaded < contentLength && failure.get() == null) {
+                throw new IOException("输入流提前结束，已读取 " + uploaded + " 字节，预期 " + contentLength + " 字节");
+            }
+            // 等待所有分段上传结束并收集 ETag
+            List<PartETag> partETags = new ArrayList<>(futures.size());
+            for (Future<PartETag> future : futures) {
+                partETags.add(await(future));
+            }
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            if (guard != null && !guard.beforeComplete()) {
+                abortQuietly(bucket, key, uploadId);
+                return null;
+            }
+            return amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+        } catch (IOException | RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            abortQuietly(bucket, key, uploadId);
+            throw e;
+        }
+    }
+
+    /**
+     * 提交一个分段，上传结束或在执行前被取消时都会归还缓冲区和在途名额。
+     */
+    private Future<PartETag> submitPart(String bucket, String key, String uploadId, int partNumber, PartBuffer part,
+                                        Semaphore inFlight, AtomicReference<Exception> failure) {
+        FutureTask<PartETag> task = new ReleasingFutureTask<>(() -> {
+            try {
+                return uploadPart(bucket, key, uploadId, partNumber, part);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        }, () -> {
+            part.close();
+            inFlight.release();
+        });
+        partExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * 从输入流填充分段缓冲区，开启 contentMd5 时同时计算分段的 MD5。
+     */
+    public long fillPart(PartBuffer part, InputStream inputStream) throws IOException {
+        return part.fill(inputStream, config.isContentMd5());
+    }
+
+    /**
+     * 从缓冲池借出容量为 size 的缓冲区，等待时被中断转为 IOException。
+     */
+    public PartBuffer acquireBuffer(long size) throws IOException {
+        try {
+            return bufferPool.acquire(size);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待上传缓冲区被中断", e);
+        }
+    }
+
+    /**
+     * 上传单个分段，失败后按指数退避重试，重试规则见 S3Retry。
+     * 缓冲区由调用方归还；缓冲区带有 MD5 时作为 Content-MD5 发送。
+     */
+    public PartETag uploadPart(String bucket, String key, String uploadId, int partNumber, PartBuffer part)
+            throws IOException, InterruptedException {
+        return S3Retry.call(config.getMaxAttempts(), config.getRetryBackoffMillis(), () -> {
+            long start = System.nanoTime();
+            try {
+                UploadPartRequest uploadRequest = new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withPartSize(part.getSize())
+                        .withMD5Digest(part.getContentMd5())
+                        .withInputStream(part.newInputStream());
+                PartETag partETag = amazonS3.uploadPart(uploadRequest).getPartETag();
+                metrics.recordPart(bucket, System.nanoTime() - start, part.getSize(), null);
+                return partETag;
+            } catch (SdkClientException e) {
+                metrics.recordPart(bucket, System.nanoTime() - start, part.getSize(), e);
+                throw e;
+            }
+        });
+    }
+
+    public void abortQuietly(String bucket, String key, String uploadId) {
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (SdkClientException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void shutdown() {
+        partExecutor.shutdownNow();
+    }
+
+    private static PartETag await(Future<PartETag> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分段上传被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("分段上传失败", cause);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分段上传被中断", e);
+        }
+    }
+
+    /**
+     * 循环读取直到填满缓冲区或流结束，返回实际读取的字节数。
+     */
+    public static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int len = inputStream.read(buffer, total, buffer.length - total);
+            if (len < 0) {
+                break;
+            }
+            total += len;
+        }
+        return total;
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return (a + b - 1) / b;
+    }
+
+    private static long roundUpToMb(long size) {
+        return ceilDiv(size, MB) * MB;
+    }
+}
@@ -0,0 +1,185 @@
+package ceph.s3.file.upload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本服务创建的上传会话登记表，重启后只恢复登记过的会话，不会接管其他服务或工具发起的分段上传。
+ * 修改以追加日志的方式写入文件("+ uploadId 桶 键 总分段数 创建时间" 或 "- uploadId")，
+ * 启动时回放得到上次退出时仍未结束的会话。
+ */
+public class SessionRegistry {
+    /**
+     * 登记的会话。
+     */
+    public static class Record {
+        private final String uploadId;
+        private final String bucket;
+        private final String key;
+        // 未声明总分段数时为 null
+        private final Integer totalParts;
+        private final long createdAt;
+
+        Record(String uploadId, String bucket, String key, Integer totalParts, long createdAt) {
+            this.uploadId = uploadId;
+            this.bucket = bucket;
+            this.key = key;
+            this.totalParts = totalParts;
+            this.createdAt = createdAt;
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Integer getTotalParts() {
+            return totalParts;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Record> records = new LinkedHashMap<>();
+    private BufferedWriter writer;
+
+    public SessionRegistry(String file) throws IOException {
+        this.file = Paths.get(file).toAbsolutePath();
+        Files.createDirectories(this.file.getParent());
+        load();
+    }
+
+    /**
+     * 上次退出时仍未结束的会话。
+     */
+    public synchronized List<Record> pending() {
+        return new ArrayList<>(records.values());
+    }
+
+    /**
+     * 去掉已经结束或不再恢复的会话并重写登记表，之后开始追加新的修改；在此之前登记和结束的会话已反映在内存中。
+     */
+    public synchronized void compact(Collection<String> finished) throws IOException {
+        records.keySet().removeAll(finished);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Record record : records.values()) {
+                out.write(line(record));
+                out.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (writer == null) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    public synchronized void add(UploadSession session) {
+        Record record = new Record(session.getUploadId(), session.getBucket(), session.getKey(),
+                session.getTotalParts(), session.getCreatedAt());
+        records.put(record.uploadId, record);
+        append(line(record));
+    }
+
+    public synchronized void remove(String uploadId) {
+        if (records.remove(uploadId) != null) {
+            append("-\t" + uploadId);
+        }
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 登记失败只影响重启后能否恢复，不影响当前的上传
+    private void append(String line) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // 进程退出时可能留下写了一半的行，跳过
+                if (fields.length == 6 && "+".equals(fields[0])) {
+                    try {
+                        Integer totalParts = fields[4].isEmpty() || "-".equals(fields[4]) ? null : Integer.valueOf(fields[4]);
+                        records.put(fields[1], new Record(fields[1], fields[2], decode(fields[3]), totalParts,
+                                Long.parseLong(fields[5])));
+                    } catch (NumberFormatException e) {
+                        // 不完整的行
+                    }
+                } else if (fields.length == 2 && "-".equals(fields[0])) {
+                    records.remove(fields[1]);
+                }
+            }
+        }
+    }
+
+    private static String line(Record record) {
+        return "+\t" + record.uploadId + '\t' + record.bucket + '\t' + encode(record.key) + '\t'
+                + (record.totalParts == null ? "-" : record.totalParts.toString()) + '\t' + record.createdAt;
+    }
+
+    // 对象键可能包含制表符和换行，编码后再写入
+    private static String encode(String key) {
+        try {
+            return URLEncoder.encode(key, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String key) {
+        try {
+            return URLDecoder.decode(key, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ceph.s3.file.upload;
+
+import com.amazonaws.services.s3.model.PartETag;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 客户端驱动的分段上传会话，记录已上传分段的 ETag，供断点续传和最终合并使用。
+ */
+@Getter
+public class UploadSession {
+    private final String uploadId;
+    private final String bucket;
+    private final String key;
+    // 客户端声明的总分段数，未知时为 null
+    private final Integer totalParts;
+    private final long createdAt;
+    private volatile long lastAccessAt;
+    // 会话已完成或已中止后不再接受分段
+    private volatile boolean closed;
+    private final ConcurrentSkipListMap<Integer, PartETag> parts = new ConcurrentSkipListMap<>();
+    // 分段上传持有读锁，合并和中止持有写锁，合并时不会有分段正在覆盖 RGW 中的同号分段
+    @Getter(AccessLevel.NONE)
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public UploadSession(String uploadId, String bucket, String key, Integer totalParts) {
+        this(uploadId, bucket, key, totalParts, System.currentTimeMillis(), System.currentTimeMillis());
+    }
+
+    /**
+     * 重启后按登记表恢复的会话，创建时间取自登记表。
+     */
+    UploadSession(String uploadId, String bucket, String key, Integer totalParts, long createdAt, long lastAccessAt) {
+        this.uploadId = uploadId;
+        this.bucket = bucket;
+        this.key = key;
+        this.totalParts = totalParts;
+        this.createdAt = createdAt;
+        this.lastAccessAt = lastAccessAt;
+    }
+
+    ReentrantReadWriteLock.ReadLock partLock() {
+        return lock.readLock();
+    }
+
+    ReentrantReadWriteLock.WriteLock closeLock() {
+        return lock.writeLock();
+    }
+
+    void touch() {
+        lastAccessAt = System.currentTimeMillis();
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    void addPart(PartETag partETag) {
+        parts.put(partETag.getPartNumber(), partETag);
+    }
+
+    public List<PartETag> getPartETags() {
+        return new ArrayList<>(parts.values());
+    }
+
+    public List<Integer> getUploadedParts() {
+        return new ArrayList<>(parts.keySet());
+    }
+
+    /**
+     * 返回尚未上传的分段号；未声明总分段数时按已上传的最大分段号计算中间的空缺。
+     */
+    public List<Integer> getMissingParts() {
+        int last = totalParts != null ? totalParts : (parts.isEmpty() ? 0 : parts.lastKey());
+        List<Integer> missing = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= last; partNumber++) {
+            if (!parts.containsKey(partNumber)) {
+                missing.add(partNumber);
+            }
+        }
+        return missing;
+    }
+}
@@ -0,0 +1,260 @@
+package ceph.s3.file.upload;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.util.PartBuffer;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 管理客户端驱动的分段上传会话：一次初始化，分段可乱序、并发上传，按需合并。
+ * 后台定时任务会中止长时间没有活动的会话，释放集群中的孤立分段。
+ * 会话保存在内存中，同时登记在本地的 SessionRegistry。开启 recoverOnStartup 时，启动后按登记表
+ * 通过 ListParts 重建上次退出时未结束的会话，可以继续续传，重启后无人继续的在空闲超时后被中止。
+ * 只恢复和中止本服务创建的会话，其他服务、工具或普通上传发起的分段上传不受影响。
+ */
+public class UploadSessionManager {
+    // S3 单个分段上传允许的最大分段号
+    private static final int MAX_PART_NUMBER = 10000;
+
+    private final AmazonS3 amazonS3;
+    private final MultipartUploadEngine uploadEngine;
+    private final AwzS3Config.Session config;
+    private final SessionRegistry registry;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper;
+    private final CountDownLatch recovered = new CountDownLatch(1);
+
+    public UploadSessionManager(AmazonS3 amazonS3, MultipartUploadEngine uploadEngine, AwzS3Config.Session config,
+                                SessionRegistry registry) {
+        this.amazonS3 = amazonS3;
+        this.uploadEngine = uploadEngine;
+        this.config = config;
+        this.registry = registry;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "s3-upload-session-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 构造完成前不会有新会话登记，此时的登记表就是上次退出时未结束的会话
+        List<SessionRegistry.Record> previous = registry.pending();
+        reaper.execute(() -> recoverSessions(previous));
+        long interval = config.getReaperIntervalMillis();
+        reaper.scheduleWithFixedDelay(this::reapIdleSessions, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public UploadSession initiate(String bucket, String key, Integer totalParts) {
+        if (totalParts != null && (totalParts <= 0 || totalParts > MAX_PART_NUMBER)) {
+            throw new IllegalArgumentException("分段总数必须在1到" + MAX_PART_NUMBER + "之间!");
+        }
+        String uploadId = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key)).getUploadId();
+        UploadSession session = new UploadSession(uploadId, bucket, key, totalParts);
+        sessions.put(uploadId, session);
+        registry.add(session);
+        return session;
+    }
+
+    /**
+     * 上传会话中的一个分段；同一分段号重复上传时以最后一次为准。
+     */
+    public PartETag uploadPart(String uploadId, int partNumber, InputStream inputStream, long partSize) throws IOException {
+        UploadSession session = getSession(uploadId);
+        int maxPartNumber = session.getTotalParts() != null ? session.getTotalParts() : MAX_PART_NUMBER;
+        if (partNumber <= 0 || partNumber > maxPartNumber) {
+            throw new IllegalArgumentException("分段号必须在1到" + maxPartNumber + "之间!");
+        }
+        if (partSize < 0) {
+            throw new IllegalArgumentException("分段大小不合法!");
+        }
+        session.touch();
+        PartETag partETag;
+        try (PartBuffer part = uploadEngine.acquireBuffer(partSize)) {
+            long bytesRead = uploadEngine.fillPart(part, inputStream);
+            if (bytesRead != partSize) {
+                throw new IOException("分段数据不完整，期望 " + partSize + " 字节，实际读取 " + bytesRead + " 字节");
+            }
+            // 上传到 RGW 和记录 ETag 在同一个读锁内，合并时不会用到被覆盖前的旧 ETag
+            Lock lock = session.partLock();
+            lock.lockInterruptibly();
+            try {
+                if (session.isClosed()) {
+                    throw new IllegalStateException("上传会话已结束!");
+                }
+                partETag = uploadEngine.uploadPart(session.getBucket(), session.getKey(), uploadId, partNumber, part);
+                session.addPart(partETag);
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分段上传被中断", e);
+        }
+        session.touch();
+        return partETag;
+    }
+
+    public UploadSession getSession(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null && recovered.getCount() > 0) {
+            // 启动后的恢复还没有完成，会话可能稍后出现
+            try {
+                recovered.await(config.getRecoveryWaitMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            session = sessions.get(uploadId);
+        }
+        if (session == null || session.isClosed()) {
+            throw new NoSuchElementException("上传会话不存在: " + uploadId);
+        }
+        return session;
+    }
+
+    /**
+     * 合并会话中已上传的分段；仍有缺失分段时拒绝合并，客户端可据此续传。
+     */
+    public CompleteMultipartUploadResult complete(String uploadId) {
+        UploadSession session = getSession(uploadId);
+        // 等待正在上传的分段结束，之后到达的分段会被拒绝
+        Lock lock = session.closeLock();
+        lock.lock();
+        try {
+            ensureOpen(session);
+            List<Integer> missingParts = session.getMissingParts();
+            if (!missingParts.isEmpty()) {
+                throw new IllegalStateException("仍有分段未上传: " + missingParts);
+            }
+            List<PartETag> partETags = session.getPartETags();
+            if (partETags.isEmpty()) {
+                throw new IllegalStateException("没有已上传的分段!");
+            }
+            CompleteMultipartUploadResult result = amazonS3.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(session.getBucket(), session.getKey(), uploadId, partETags));
+            session.close();
+            sessions.remove(uploadId);
+            registry.remove(uploadId);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void abort(String uploadId) {
+        UploadSession session = getSession(uploadId);
+        Lock lock = session.closeLock();
+        lock.lock();
+        try {
+            closeAndAbort(session);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeAndAbort(UploadSession session) {
+        ensureOpen(session);
+        session.close();
+        sessions.remove(session.getUploadId());
+        registry.remove(session.getUploadId());
+        uploadEngine.abortQuietly(session.getBucket(), session.getKey(), session.getUploadId());
+    }
+
+    private static void ensureOpen(UploadSession session) {
+        if (session.isClosed()) {
+            throw new NoSuchElementException("上传会话不存在: " + session.getUploadId());
+        }
+    }
+
+    private void reapIdleSessions() {
+        long deadline = System.currentTimeMillis() - config.getIdleTimeoutMillis();
+        for (UploadSession session : sessions.values()) {
+            if (session.getLastAccessAt() >= deadline) {
+                continue;
+            }
+            // 有分段正在上传时说明会话仍在使用，跳过，不阻塞定时任务
+            Lock lock = session.closeLock();
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                closeAndAbort(session);
+            } catch (NoSuchElementException e) {
+                // 会话刚被客户端合并或中止，忽略
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按登记表重建上次退出时未结束的会话；集群中已不存在的分段上传从登记表中去掉。
+     * 未开启恢复时只清空登记表，上次的会话不再续传。
+     */
+    private void recoverSessions(List<SessionRegistry.Record> previous) {
+        List<String> finished = new ArrayList<>();
+        try {
+            for (SessionRegistry.Record record : previous) {
+                if (!config.isRecoverOnStartup()) {
+                    finished.add(record.getUploadId());
+                    continue;
+                }
+                try {
+                    recoverUpload(record);
+                } catch (AmazonServiceException e) {
+                    if (e.getStatusCode() == 404) {
+                        // 已被合并或中止
+                        finished.add(record.getUploadId());
+                    } else {
+                        // 暂时无法确认，保留登记，下次启动再恢复
+                        e.printStackTrace();
+                    }
+                } catch (SdkClientException e) {
+                    e.printStackTrace();
+                }
+            }
+            registry.compact(finished);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            recovered.countDown();
+        }
+    }
+
+    /**
+     * 通过 ListParts 重建会话。最后活动时间取恢复的时间，客户端在重启后有完整的空闲超时可以续传。
+     */
+    private void recoverUpload(SessionRegistry.Record record) {
+        List<PartETag> partETags = new ArrayList<>();
+        ListPartsRequest request = new ListPartsRequest(record.getBucket(), record.getKey(), record.getUploadId());
+        PartListing listing;
+        do {
+            listing = amazonS3.listParts(request);
+            for (PartSummary part : listing.getParts()) {
+                partETags.add(new PartETag(part.getPartNumber(), part.getETag()));
+            }
+            request.setPartNumberMarker(listing.getNextPartNumberMarker());
+        } while (listing.isTruncated());
+        UploadSession session = new UploadSession(record.getUploadId(), record.getBucket(), record.getKey(),
+                record.getTotalParts(), record.getCreatedAt(), System.currentTimeMillis());
+        partETags.forEach(session::addPart);
+        sessions.putIfAbsent(record.getUploadId(), session);
+    }
+
+    public void shutdown() {
+        reaper.shutdownNow();
+        registry.close();
+    }
+}
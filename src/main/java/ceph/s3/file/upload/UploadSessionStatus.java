@@ -0,0 +1,31 @@
+package ceph.s3.file.upload;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 返回给客户端的上传会话状态。
+ */
+@Data
+public class UploadSessionStatus {
+    private String uploadId;
+    private String bucket;
+    private String key;
+    private Integer totalParts;
+    private List<Integer> uploadedParts;
+    private List<Integer> missingParts;
+    private long lastAccessAt;
+
+    public static UploadSessionStatus of(UploadSession session) {
+        UploadSessionStatus status = new UploadSessionStatus();
+        status.setUploadId(session.getUploadId());
+        status.setBucket(session.getBucket());
+        status.setKey(session.getKey());
+        status.setTotalParts(session.getTotalParts());
+        status.setUploadedParts(session.getUploadedParts());
+        status.setMissingParts(session.getMissingParts());
+        status.setLastAccessAt(session.getLastAccessAt());
+        return status;
+    }
+}
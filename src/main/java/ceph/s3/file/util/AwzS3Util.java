@@ -16,23 +16,73 @@ import com.amazonaws.services.s3.model.*;
 import com.amazonaws.util.IOUtils;
 import com.amazonaws.util.StringUtils;
 import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.async.AsyncExecutors;
+import ceph.s3.file.copy.CopyJobManager;
+import ceph.s3.file.copy.CopyJobStatus;
+import ceph.s3.file.copy.CopyResult;
+import ceph.s3.file.copy.MetadataRewrite;
+import ceph.s3.file.copy.ObjectCopier;
+import ceph.s3.file.dedup.DedupUploadResult;
+import ceph.s3.file.dedup.DedupUploader;
+import ceph.s3.file.dedup.HashIndex;
+import ceph.s3.file.delete.BulkDeleter;
+import ceph.s3.file.delete.DeleteResult;
+import ceph.s3.file.download.HedgedReader;
+import ceph.s3.file.download.ObjectStreamer;
+import ceph.s3.file.download.ParallelDownloader;
+import ceph.s3.file.gateway.GatewayEndpoint;
+import ceph.s3.file.gateway.GatewayRouter;
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.gateway.GatewayStatus;
+import ceph.s3.file.listing.ListFilter;
+import ceph.s3.file.listing.ListSummary;
+import ceph.s3.file.listing.ObjectLister;
+import ceph.s3.file.media.FfmpegRunner;
+import ceph.s3.file.metadata.MetadataCacheStats;
+import ceph.s3.file.metadata.ObjectMetadataCache;
+import ceph.s3.file.media.MediaJobScheduler;
+import ceph.s3.file.media.MediaJobStatus;
+import ceph.s3.file.media.ThumbnailCache;
+import ceph.s3.file.media.VideoRangeFetcher;
+import ceph.s3.file.upload.MultipartUploadEngine;
+import ceph.s3.file.upload.SessionRegistry;
+import ceph.s3.file.upload.UploadSessionManager;
+import ceph.s3.file.upload.UploadSessionStatus;
+import ceph.s3.file.zip.DecompressResult;
+import ceph.s3.file.zip.S3ZipReader;
+import ceph.s3.file.zip.ZipArchiveStreamer;
+import ceph.s3.file.zip.ZipCentralEntry;
+import ceph.s3.file.zip.ZipEntryResult;
+import ceph.s3.file.zip.ZipStreamExtractor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.*;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -40,20 +90,118 @@ import java.util.zip.ZipInputStream;
 public class AwzS3Util {
     @Resource
     private AwzS3Config injectAwzS3Config;
+    @Resource
+    private MeterRegistry injectMeterRegistry;
     private static AwzS3Config awzS3Config;
     private static AmazonS3 amazonS3;
+    private static MultipartUploadEngine uploadEngine;
+    private static UploadSessionManager uploadSessionManager;
+    private static ObjectStreamer objectStreamer;
+    private static ParallelDownloader parallelDownloader;
+    private static VideoRangeFetcher videoRangeFetcher;
+    private static ThumbnailCache thumbnailCache;
+    private static FfmpegRunner ffmpegRunner;
+    private static MediaJobScheduler mediaJobScheduler;
+    private static ZipStreamExtractor zipStreamExtractor;
+    private static S3ZipReader s3ZipReader;
+    private static ObjectMetadataCache metadataCache;
+    private static BulkDeleter bulkDeleter;
+    private static ObjectLister objectLister;
+    private static GatewayRouter gatewayRouter;
+    private static HedgedReader hedgedReader;
+    private static AsyncExecutors asyncExecutors;
+    private static PartBufferPool partBufferPool;
+    private static S3Metrics s3Metrics;
+    private static ObjectCopier objectCopier;
+    private static CopyJobManager copyJobManager;
+    private static ZipArchiveStreamer zipArchiveStreamer;
+    private static DedupUploader dedupUploader;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     @PostConstruct
-    public void init() {
+    public void init() throws IOException {
         // 从注入的 AwzS3Config 中获取 AWS S3 相关配置
         awzS3Config = this.injectAwzS3Config;
+        // 创建 S3 和媒体操作指标
+        s3Metrics = new S3Metrics(this.injectMeterRegistry, awzS3Config);
         // 创建 AWS 认证对象
         AWSCredentials credentials = new BasicAWSCredentials(awzS3Config.getAccessKey(), awzS3Config.getSecretKey());
         // 创建 AWS 认证提供程序
         AWSCredentialsProvider credentialsProvider = new AWSStaticCredentialsProvider(credentials);
+        // 未配置多个网关时使用 url 作为唯一网关
+        List<AwzS3Config.Endpoint> endpoints = awzS3Config.getEndpoints();
+        if (endpoints.isEmpty()) {
+            AwzS3Config.Endpoint endpoint = new AwzS3Config.Endpoint();
+            endpoint.setUrl(awzS3Config.getUrl());
+            endpoints = Collections.singletonList(endpoint);
+        }
+        // 每个网关一个客户端，多个网关时通过路由器按负载分配请求
+        List<GatewayEndpoint> gateways = new ArrayList<>(endpoints.size());
+        for (AwzS3Config.Endpoint endpoint : endpoints) {
+            gateways.add(new GatewayEndpoint(endpoint.getUrl(), buildClient(endpoint, credentialsProvider)));
+        }
+        if (gateways.size() == 1) {
+            amazonS3 = gateways.get(0).getClient();
+        } else {
+            gatewayRouter = new GatewayRouter(gateways, awzS3Config.getGateway(), awzS3Config.getBucket());
+            amazonS3 = gatewayRouter.getClient();
+        }
+        // 记录每次 SDK 调用的耗时和结果
+        amazonS3 = s3Metrics.instrument(amazonS3);
+        // 创建所有上传路径共享的分段缓冲池和并发分段上传引擎
+        partBufferPool = new PartBufferPool(awzS3Config.getBuffer());
+        uploadEngine = new MultipartUploadEngine(amazonS3, partBufferPool, s3Metrics, awzS3Config.getUpload());
+        // 创建分段上传会话管理器
+        uploadSessionManager = new UploadSessionManager(amazonS3, uploadEngine, awzS3Config.getSession(),
+                new SessionRegistry(awzS3Config.getSession().getRegistryFile()));
+        // 创建流式下载器
+        objectStreamer = new ObjectStreamer(amazonS3, s3Metrics);
+        // 创建对冲读取器，供下载和范围读取使用
+        hedgedReader = new HedgedReader(amazonS3, awzS3Config.getHedge());
+        // 创建并发范围下载器
+        parallelDownloader = new ParallelDownloader(amazonS3, hedgedReader, s3Metrics, awzS3Config.getDownload());
+        // 创建视频开头范围读取器
+        videoRangeFetcher = new VideoRangeFetcher(amazonS3, hedgedReader, awzS3Config.getMedia());
+        // 创建第一帧截图缓存
+        if (awzS3Config.getThumbnail().isEnabled()) {
+            thumbnailCache = new ThumbnailCache(awzS3Config.getThumbnail());
+        }
+        // 创建 ffmpeg 运行器和媒体任务调度器
+        ffmpegRunner = new FfmpegRunner(awzS3Config.getMedia().getJobTimeoutMillis(), s3Metrics);
+        mediaJobScheduler = new MediaJobScheduler(awzS3Config.getMedia());
+        // 创建流式解压器
+        zipStreamExtractor = new ZipStreamExtractor(amazonS3, uploadEngine, awzS3Config.getDecompress());
+        // 创建基于范围读取的 zip 读取器
+        s3ZipReader = new S3ZipReader(amazonS3, uploadEngine, awzS3Config.getDecompress());
+        // 创建对象元数据缓存
+        metadataCache = new ObjectMetadataCache(amazonS3, awzS3Config.getMetadataCache());
+        // 创建批量删除器
+        bulkDeleter = new BulkDeleter(amazonS3, awzS3Config.getDelete());
+        // 创建对象列举器
+        objectLister = new ObjectLister(amazonS3, awzS3Config.getListing());
+        // 创建多对象打包下载器，预读缓冲区与上传共用缓冲池
+        zipArchiveStreamer = new ZipArchiveStreamer(amazonS3, hedgedReader, partBufferPool, s3Metrics, awzS3Config.getArchive());
+        // 创建服务端复制器和后台复制任务管理器
+        objectCopier = new ObjectCopier(amazonS3, awzS3Config.getCopy());
+        copyJobManager = new CopyJobManager(objectCopier, objectLister, awzS3Config.getCopy(), metadataCache::invalidate);
+        // 创建按内容去重的上传器，加载本地哈希索引
+        dedupUploader = new DedupUploader(amazonS3, uploadEngine, objectCopier,
+                new HashIndex(awzS3Config.getDedup().getIndexFile()));
+        // 创建按操作类别划分的异步执行器
+        asyncExecutors = new AsyncExecutors(awzS3Config.getAsync(), s3Metrics);
+        // 注册缓冲池、媒体任务队列和元数据缓存的状态指标
+        s3Metrics.gauge("s3.buffer.pool.used", "上传缓冲池已借出字节数", partBufferPool, pool -> pool.getStats().getUsedBytes());
+        s3Metrics.gauge("s3.buffer.pool.waiting", "等待上传缓冲区的线程数", partBufferPool, pool -> pool.getStats().getWaitingThreads());
+        s3Metrics.gauge("media.jobs.queued", "排队中的媒体任务数", mediaJobScheduler, MediaJobScheduler::getQueueDepth);
+        s3Metrics.gauge("media.jobs.active", "执行中的媒体任务数", mediaJobScheduler, MediaJobScheduler::getActiveCount);
+        s3Metrics.gauge("s3.metadata.cache.size", "元数据缓存条目数", metadataCache, cache -> cache.getStats().getSize());
+    }
+
+    private static AmazonS3 buildClient(AwzS3Config.Endpoint endpoint, AWSCredentialsProvider credentialsProvider) {
         // 设置 S3 客户端的终端配置
         AwsClientBuilder.EndpointConfiguration endpointConfig =
-                new AwsClientBuilder.EndpointConfiguration(awzS3Config.getUrl(), Regions.CN_NORTH_1.getName());
+                new AwsClientBuilder.EndpointConfiguration(endpoint.getUrl(), Regions.CN_NORTH_1.getName());
         // 创建客户端配置对象
         ClientConfiguration config = new ClientConfiguration();
         // 设置签名类型为 S3SignerType
@@ -64,18 +212,95 @@ public class AwzS3Util {
         config.withUseExpectContinue(false);
         // 禁用 Socket 代理
         config.disableSocketProxy();
+        // 设置连接池大小、超时时间和 TCP keep-alive
+        config.setMaxConnections(endpoint.getMaxConnections());
+        config.setConnectionTimeout(endpoint.getConnectionTimeoutMillis());
+        config.setSocketTimeout(endpoint.getSocketTimeoutMillis());
+        config.setUseTcpKeepAlive(endpoint.isTcpKeepAlive());
         // 创建 Amazon S3 客户端
-        amazonS3 = AmazonS3Client.builder()
+        return AmazonS3Client.builder()
                 .withEndpointConfiguration(endpointConfig)
                 .withClientConfiguration(config)
                 .withCredentials(credentialsProvider)
+                .withMetricsCollector(s3Metrics.connectionPoolCollector(endpoint.getUrl()))
                 .disableChunkedEncoding()
                 .withPathStyleAccessEnabled(true)
                 .withForceGlobalBucketAccessEnabled(true)
                 .build();
     }
 
+    /**
+     * 各网关的负载和健康状态。
+     */
+    public static List<GatewayStatus> getGatewayStatus() {
+        return gatewayRouter != null ? gatewayRouter.getStatus() : Collections.emptyList();
+    }
+
+    /**
+     * 执行 task 并记录为一次 s3.operation，未指定桶时按默认桶统计。
+     */
+    private static <T, E extends Exception> T timed(String operation, String bucket, S3Metrics.Operation<T, E> task) throws E {
+        return s3Metrics.time(operation, StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket, task);
+    }
+
+    /**
+     * 流式响应的操作耗时从调用开始计到响应体写完为止，没有响应体(如 304)时计到返回响应为止。
+     */
+    private static <E extends Exception> ResponseEntity<StreamingResponseBody> timedStream(
+            String operation, String bucket, S3Metrics.Operation<ResponseEntity<StreamingResponseBody>, E> task) throws E {
+        long start = System.nanoTime();
+        ResponseEntity<StreamingResponseBody> response;
+        try {
+            response = task.call();
+        } catch (Exception | Error e) {
+            s3Metrics.recordOperation(operation, bucket, System.nanoTime() - start, e);
+            throw e;
+        }
+        StreamingResponseBody body = response.getBody();
+        if (body == null) {
+            s3Metrics.recordOperation(operation, bucket, System.nanoTime() - start, null);
+            return response;
+        }
+        StreamingResponseBody timedBody = outputStream -> {
+            Throwable error = null;
+            try {
+                body.writeTo(outputStream);
+            } catch (IOException | RuntimeException e) {
+                error = e;
+                throw e;
+            } finally {
+                s3Metrics.recordOperation(operation, bucket, System.nanoTime() - start, error);
+            }
+        };
+        return new ResponseEntity<>(timedBody, response.getHeaders(), response.getStatusCode());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        asyncExecutors.shutdown();
+        copyJobManager.shutdown();
+        dedupUploader.shutdown();
+        zipArchiveStreamer.shutdown();
+        objectCopier.shutdown();
+        metadataCache.shutdown();
+        bulkDeleter.shutdown();
+        objectLister.shutdown();
+        s3ZipReader.shutdown();
+        zipStreamExtractor.shutdown();
+        mediaJobScheduler.shutdown();
+        parallelDownloader.shutdown();
+        hedgedReader.shutdown();
+        uploadSessionManager.shutdown();
+        uploadEngine.shutdown();
+        amazonS3.shutdown();
+        s3Metrics.shutdown();
+    }
+
     public static boolean createBucket(String bucket) {
+        return timed("createBucket", bucket, () -> doCreateBucket(bucket));
+    }
+
+    private static boolean doCreateBucket(String bucket) {
         if (StringUtils.isNullOrEmpty(bucket)) {
             throw new IllegalArgumentException("桶名称不能为空!");
         }
@@ -89,12 +314,35 @@ public class AwzS3Util {
     }
 
     public static boolean deleteBucket(String bucket) {
+        return deleteBucket(bucket, false);
+    }
+
+    /**
+     * 删除桶；force 为 true 时先批量删除桶内所有对象(及所有版本)并中止未完成的分段上传。
+     */
+    public static boolean deleteBucket(String bucket, boolean force) {
+        return timed("deleteBucket", bucket, () -> doDeleteBucket(bucket, force));
+    }
+
+    private static boolean doDeleteBucket(String bucket, boolean force) {
         if (StringUtils.isNullOrEmpty(bucket)) {
             throw new IllegalArgumentException("桶名称不能为空!");
         }
         try {
+            if (force) {
+                DeleteResult result;
+                try {
+                    result = bulkDeleter.emptyBucket(bucket);
+                } finally {
+                    metadataCache.invalidateBucket(bucket);
+                }
+                if (!result.isSuccess()) {
+                    // 仍有对象未删除，删除桶必然失败
+                    return false;
+                }
+            }
             amazonS3.deleteBucket(bucket);
-        } catch (SdkClientException e) {
+        } catch (IOException | SdkClientException e) {
             e.printStackTrace();
             return false;
         }
@@ -102,59 +350,93 @@ public class AwzS3Util {
     }
 
     public static boolean uploadByBlock(MultipartFile file, String bucket) {
+        return uploadByBlock(file, bucket, awzS3Config.getUpload().getPartConcurrency());
+    }
+
+    public static boolean uploadByBlock(MultipartFile file, String bucket, int partConcurrency) {
+        return timed("uploadByBlock", bucket, () -> doUploadByBlock(file, bucket, partConcurrency));
+    }
+
+    private static boolean doUploadByBlock(MultipartFile file, String bucket, int partConcurrency) {
         // 检查文件是否为空，如果为空，则抛出异常
         if (Objects.isNull(file)) {
             throw new IllegalArgumentException("文件不能为空!");
         }
+        if (partConcurrency <= 0) {
+            throw new IllegalArgumentException("分段并发数必须大于0!");
+        }
         // 获取文件名
         String fileName = file.getOriginalFilename();
         // 如果未指定存储桶，则使用默认存储桶
         bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
-        // 初始化分段上传请求
-        InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(bucket, fileName);
-        // 发起分段上传，并获取初始化结果
-        InitiateMultipartUploadResult initiateResult = amazonS3.initiateMultipartUpload(initiateRequest);
-        // 获取文件大小和分段大小
-        long contentLength = file.getSize();
-        long partSize = 5 * 1024 * 1024; // 分段大小为5MB
-        int totalParts = (int) Math.ceil((double) contentLength / partSize);
-        // 用于存储每个分段的 ETag
-        List<PartETag> partsETags = new ArrayList<>();
-
         try (InputStream inputStream = file.getInputStream()) {
-            // 循环上传每个分段
-            for (int i = 0; i < totalParts; i++) {
-                // 计算当前分段的起始位置和大小
-                long filePosition = i * partSize;
-                long partSizeTemp = Math.min(partSize, contentLength - filePosition);
-                // 读取分段数据
-                byte[] partData = new byte[(int) partSizeTemp];
-                inputStream.read(partData);
-                // 创建分段上传请求
-                UploadPartRequest uploadRequest = new UploadPartRequest()
-                        .withBucketName(bucket)
-                        .withKey(fileName)
-                        .withUploadId(initiateResult.getUploadId())
-                        .withPartNumber(i + 1)
-                        .withPartSize(partSizeTemp)
-                        .withInputStream(new ByteArrayInputStream(partData));
-                // 上传分段并获取结果
-                UploadPartResult uploadResult = amazonS3.uploadPart(uploadRequest);
-                // 将分段的 ETag 添加到列表中
-                partsETags.add(uploadResult.getPartETag());
-            }
-            // 完成分段上传请求
-            CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(bucket, fileName, initiateResult.getUploadId(), partsETags);
-            // 完成分段上传并获取结果
-            CompleteMultipartUploadResult completeResult = amazonS3.completeMultipartUpload(completeRequest);
-        } catch (IOException e) {
+            // 按文件大小自适应分段，并发上传各分段；失败时引擎会中止分段上传
+            uploadEngine.upload(bucket, fileName, inputStream, file.getSize(), partConcurrency);
+        } catch (IOException | SdkClientException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            metadataCache.invalidate(bucket, fileName);
         }
         return true;
     }
 
+    /**
+     * 边接收边上传：直接从请求体读取数据切分分段并发上传，不经过 MultipartFile 落盘，
+     * 内存占用上限为 分段并发数 × 分段大小。
+     *
+     * @param contentLength 请求体长度，chunked 传输时为 -1
+     */
+    public static String uploadByStream(InputStream inputStream, long contentLength, String bucket, String fileName) throws IOException {
+        return timed("uploadByStream", bucket, () -> doUploadByStream(inputStream, contentLength, bucket, fileName));
+    }
+
+    private static String doUploadByStream(InputStream inputStream, long contentLength, String bucket, String fileName) throws IOException {
+        if (Objects.isNull(inputStream)) {
+            throw new IllegalArgumentException("文件不能为空!");
+        }
+        if (StringUtils.isNullOrEmpty(fileName)) {
+            throw new IllegalArgumentException("文件名称不能为空!");
+        }
+        // 如果未指定存储桶，则使用默认存储桶
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        try {
+            return uploadEngine.upload(bucket, fileName, inputStream, contentLength).getKey();
+        } finally {
+            metadataCache.invalidate(bucket, fileName);
+        }
+    }
+
+    /**
+     * 按内容去重上传：边上传边计算 SHA-256 和分段 MD5，同一桶内已有相同内容的对象时改为服务端复制。
+     * sha256 为客户端预先计算的内容哈希，可为空；索引命中时不上传数据，与实际内容不符时上传失败。
+     */
+    public static DedupUploadResult uploadDedup(MultipartFile file, String bucket, String sha256, int partConcurrency) throws IOException {
+        return timed("uploadDedup", bucket, () -> doUploadDedup(file, bucket, sha256, partConcurrency));
+    }
+
+    private static DedupUploadResult doUploadDedup(MultipartFile file, String bucket, String sha256, int partConcurrency) throws IOException {
+        if (Objects.isNull(file)) {
+            throw new IllegalArgumentException("文件不能为空!");
+        }
+        if (partConcurrency <= 0) {
+            throw new IllegalArgumentException("分段并发数必须大于0!");
+        }
+        String fileName = file.getOriginalFilename();
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        try (InputStream inputStream = file.getInputStream()) {
+            return dedupUploader.upload(bucket, fileName, inputStream, file.getSize(), file.getContentType(),
+                    StringUtils.isNullOrEmpty(sha256) ? null : sha256, partConcurrency);
+        } finally {
+            metadataCache.invalidate(bucket, fileName);
+        }
+    }
+
     public static String uploadOneBlock(MultipartFile file, int position, long blockSize, String bucket) {
+        return timed("uploadOneBlock", bucket, () -> doUploadOneBlock(file, position, blockSize, bucket));
+    }
+
+    private static String doUploadOneBlock(MultipartFile file, int position, long blockSize, String bucket) {
         // 检查文件是否为空，如果为空，则返回错误信息
         if (Objects.isNull(file)) {
             return "文件为空";
@@ -176,50 +458,138 @@ public class AwzS3Util {
         PartETag partETag = null;
         try (InputStream inputStream = file.getInputStream()) {
             // 跳过文件中前面的数据到指定的起始位置
-            inputStream.skip(start);
-            // 读取分段数据
-            byte[] partData = new byte[(int) partSize];
-            int bytesRead = inputStream.read(partData);
-            // 创建分段上传请求
-            UploadPartRequest uploadRequest = new UploadPartRequest()
-                    .withBucketName(bucket)
-                    .withKey(fileName)
-                    .withUploadId(initiateResult.getUploadId())
-                    .withPartNumber(position + 1)
-                    .withPartSize(partSize)
-                    .withInputStream(new ByteArrayInputStream(partData));
-            // 上传分段并获取结果
-            UploadPartResult uploadResult = amazonS3.uploadPart(uploadRequest);
-            partETag = uploadResult.getPartETag();
+            org.apache.commons.io.IOUtils.skipFully(inputStream, start);
+            // 从缓冲池借出缓冲区读取分段数据，读满为止
+            try (PartBuffer part = uploadEngine.acquireBuffer(partSize)) {
+                if (uploadEngine.fillPart(part, inputStream) != partSize) {
+                    throw new IOException("分段数据不完整");
+                }
+                // 上传分段并获取结果
+                partETag = uploadEngine.uploadPart(bucket, fileName, initiateResult.getUploadId(), position + 1, part);
+            }
             // 完成分段上传请求
             CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(bucket, fileName, initiateResult.getUploadId(), List.of(partETag));
             CompleteMultipartUploadResult completeResult = amazonS3.completeMultipartUpload(completeRequest);
+            metadataCache.invalidate(bucket, fileName);
             return completeResult.getKey();
-        } catch (IOException | AmazonServiceException e) {
+        } catch (IOException | AmazonServiceException | InterruptedException e) {
             // 处理异常
             e.printStackTrace();
+            uploadEngine.abortQuietly(bucket, fileName, initiateResult.getUploadId());
             return e.getMessage();
+        } catch (RuntimeException e) {
+            uploadEngine.abortQuietly(bucket, fileName, initiateResult.getUploadId());
+            throw e;
         }
     }
 
+    /**
+     * 在已有的上传会话中上传文件的第 position 块(从0开始)，不会合并分段；
+     * 所有块上传完成后调用 completeUpload 合并。
+     */
+    public static PartETag uploadBlockToSession(MultipartFile file, int position, long blockSize, String uploadId) throws IOException {
+        return s3Metrics.time("uploadBlockToSession", null,
+                () -> doUploadBlockToSession(file, position, blockSize, uploadId));
+    }
+
+    private static PartETag doUploadBlockToSession(MultipartFile file, int position, long blockSize, String uploadId) throws IOException {
+        if (Objects.isNull(file)) {
+            throw new IllegalArgumentException("文件不能为空!");
+        }
+        if (position < 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("分块位置或大小不合法!");
+        }
+        long start = position * blockSize;
+        long partSize = Math.max(0, Math.min(start + blockSize, file.getSize()) - start);
+        try (InputStream inputStream = file.getInputStream()) {
+            // 跳过文件中前面的数据到指定的起始位置
+            org.apache.commons.io.IOUtils.skipFully(inputStream, start);
+            return uploadSessionManager.uploadPart(uploadId, position + 1, inputStream, partSize);
+        }
+    }
+
+    public static UploadSessionStatus initiateUpload(String bucket, String fileName, Integer totalParts) {
+        return timed("initiateUpload", bucket, () -> doInitiateUpload(bucket, fileName, totalParts));
+    }
+
+    private static UploadSessionStatus doInitiateUpload(String bucket, String fileName, Integer totalParts) {
+        if (StringUtils.isNullOrEmpty(fileName)) {
+            throw new IllegalArgumentException("文件名称不能为空!");
+        }
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        return UploadSessionStatus.of(uploadSessionManager.initiate(bucket, fileName, totalParts));
+    }
+
+    /**
+     * 上传会话中的一个分段，file 只包含该分段的数据；分段可以乱序、并发上传。
+     */
+    public static PartETag uploadPart(String uploadId, int partNumber, MultipartFile file) throws IOException {
+        return s3Metrics.time("uploadPart", null, () -> doUploadPart(uploadId, partNumber, file));
+    }
+
+    private static PartETag doUploadPart(String uploadId, int partNumber, MultipartFile file) throws IOException {
+        if (Objects.isNull(file)) {
+            throw new IllegalArgumentException("文件不能为空!");
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadSessionManager.uploadPart(uploadId, partNumber, inputStream, file.getSize());
+        }
+    }
+
+    public static UploadSessionStatus getUploadStatus(String uploadId) {
+        return UploadSessionStatus.of(uploadSessionManager.getSession(uploadId));
+    }
+
+    public static String completeUpload(String uploadId) {
+        return s3Metrics.time("completeUpload", null, () -> {
+            CompleteMultipartUploadResult result = uploadSessionManager.complete(uploadId);
+            metadataCache.invalidate(result.getBucketName(), result.getKey());
+            return result.getKey();
+        });
+    }
+
+    public static void abortUpload(String uploadId) {
+        s3Metrics.time("abortUpload", null, () -> {
+            uploadSessionManager.abort(uploadId);
+            return null;
+        });
+    }
+
     public static ResponseEntity<byte[]> downloadByName(String bucket, String fileName, String localPath) throws IOException {
+        return downloadByName(bucket, fileName, localPath, awzS3Config.getHedge().getDeadlineMillis());
+    }
+
+    /**
+     * deadlineMillis 为读取首字节的截止时间，0 表示不限制；开启对冲读取时慢请求会被对冲。
+     */
+    public static ResponseEntity<byte[]> downloadByName(String bucket, String fileName, String localPath,
+                                                        long deadlineMillis) throws IOException {
+        return timed("downloadByName", bucket, () -> doDownloadByName(bucket, fileName, localPath, deadlineMillis));
+    }
+
+    private static ResponseEntity<byte[]> doDownloadByName(String bucket, String fileName, String localPath,
+                                                          long deadlineMillis) throws IOException {
         if (!StringUtils.hasValue(bucket)) {
             throw new IllegalArgumentException("存储桶名称不能为空!");
         }
 
         bucket = !StringUtils.hasValue(bucket) ? awzS3Config.getBucket() : bucket;
 
-        GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, fileName);
-        S3Object s3Object = amazonS3.getObject(getObjectRequest);
-        S3ObjectInputStream objectInputStream = s3Object.getObjectContent();
-        byte[] bytes = IOUtils.toByteArray(objectInputStream);
-        // 检查并创建本地路径
-        if (!Files.exists(Paths.get(localPath))) {
-            Files.createDirectories(Paths.get(localPath));
-        }
-        // 保存文件到本地路径
-        try (FileOutputStream fos = new FileOutputStream(localPath + "/" + fileName)) {
-            fos.write(bytes);
+        byte[] bytes;
+        // 指定了本地路径时先并发范围下载到本地，再从本地文件读取
+        if (StringUtils.hasValue(localPath)) {
+            Path localFile = downloadToLocal(bucket, fileName, localPath);
+            bytes = Files.readAllBytes(localFile);
+        } else {
+            GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, fileName);
+            S3Object s3Object = hedgedReader.getObject(getObjectRequest, deadlineMillis);
+            s3Metrics.transferStarted(S3Metrics.DOWNLOAD);
+            try (S3ObjectInputStream objectInputStream = s3Object.getObjectContent()) {
+                bytes = IOUtils.toByteArray(objectInputStream);
+                s3Metrics.addBytes(S3Metrics.DOWNLOAD, bytes.length);
+            } finally {
+                s3Metrics.transferFinished(S3Metrics.DOWNLOAD);
+            }
         }
 
         String showFileName = URLEncoder.encode(fileName, "UTF-8").replaceAll("\\+", "%20");
@@ -231,7 +601,127 @@ public class AwzS3Util {
         return new ResponseEntity<>(bytes, httpHeaders, HttpStatus.OK);
     }
 
+    /**
+     * 并发范围下载到 localPath 目录，按 ETag 校验后返回本地文件路径。
+     */
+    public static Path downloadToLocal(String bucket, String fileName, String localPath) throws IOException {
+        return timed("downloadToLocal", bucket, () -> doDownloadToLocal(bucket, fileName, localPath));
+    }
+
+    private static Path doDownloadToLocal(String bucket, String fileName, String localPath) throws IOException {
+        if (StringUtils.isNullOrEmpty(fileName)) {
+            throw new IllegalArgumentException("文件名称不能为空!");
+        }
+        if (StringUtils.isNullOrEmpty(localPath)) {
+            throw new IllegalArgumentException("本地路径不能为空!");
+        }
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        Path localFile = Paths.get(localPath, fileName);
+        parallelDownloader.download(bucket, fileName, localFile);
+        return localFile;
+    }
+
+    /**
+     * 流式下载：对象内容直接写到响应，支持 Range(206) 和 If-None-Match(304)；
+     * localPath 非空时完整下载的同时保存到本地。
+     */
+    public static ResponseEntity<StreamingResponseBody> downloadStream(String bucket, String fileName, String range,
+                                                                       String ifNoneMatch, String localPath) throws IOException {
+        if (StringUtils.isNullOrEmpty(fileName)) {
+            throw new IllegalArgumentException("文件名称不能为空!");
+        }
+        String streamBucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        return timedStream("downloadStream", streamBucket,
+                () -> objectStreamer.stream(streamBucket, fileName, range, ifNoneMatch, localPath));
+    }
+
+    /**
+     * 列举对象，以 NDJSON 格式边分页边输出，每行一个对象。
+     * parallel 为 true 时把键空间拆成多个键范围递归并发列举，输出不再整体有序。
+     */
+    public static ResponseEntity<StreamingResponseBody> listObjects(String bucket, ListFilter filter, boolean parallel) {
+        String listBucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        StreamingResponseBody body = outputStream -> {
+            BufferedOutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+            objectLister.list(listBucket, filter, parallel, summary -> {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("key", summary.getKey());
+                line.put("size", summary.getSize());
+                line.put("eTag", summary.getETag());
+                line.put("lastModified", summary.getLastModified() == null ? null : summary.getLastModified().toInstant().toString());
+                line.put("storageClass", summary.getStorageClass());
+                out.write(OBJECT_MAPPER.writeValueAsBytes(line));
+                out.write('\n');
+            });
+            out.flush();
+        };
+        return timedStream("listObjects", listBucket, () -> ResponseEntity.ok().contentType(NDJSON).body(body));
+    }
+
+    /**
+     * 把 fileNames 中的对象或 prefix 下的全部对象打包成 zip 流式返回，边读取边写出。
+     * 按前缀打包时条目名为对象键去掉前缀中最后一个 "/" 及之前的部分；打包时已不存在的对象被跳过。
+     */
+    public static ResponseEntity<StreamingResponseBody> downloadZip(String bucket, List<String> fileNames, String prefix,
+                                                                    String zipName) throws IOException {
+        boolean byKeys = fileNames != null && !fileNames.isEmpty();
+        if (byKeys == (prefix != null)) {
+            throw new IllegalArgumentException("fileNames 和 prefix 必须且只能指定一个!");
+        }
+        String zipBucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        StreamingResponseBody body = outputStream -> {
+            BufferedOutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+            try (ZipArchiveStreamer.Archive archive = zipArchiveStreamer.open(zipBucket, out)) {
+                if (byKeys) {
+                    // 去掉重复的键，保持请求中的顺序
+                    for (String key : new LinkedHashSet<>(fileNames)) {
+                        if (!StringUtils.isNullOrEmpty(key)) {
+                            archive.add(key, key, -1, null, 0);
+                        }
+                    }
+                } else {
+                    int nameStart = prefix.lastIndexOf('/') + 1;
+                    ListFilter filter = new ListFilter();
+                    filter.setPrefix(prefix);
+                    objectLister.list(zipBucket, filter, false, summary -> {
+                        String key = summary.getKey();
+                        // 跳过目录占位对象
+                        if (key.endsWith("/")) {
+                            return;
+                        }
+                        archive.add(key, key.substring(nameStart), summary.getSize(), summary.getETag(),
+                                summary.getLastModified() == null ? System.currentTimeMillis() : summary.getLastModified().getTime());
+                    });
+                }
+                archive.finish();
+            }
+            out.flush();
+        };
+        String name = StringUtils.isNullOrEmpty(zipName) ? "download.zip" : zipName;
+        String showFileName = URLEncoder.encode(name, "UTF-8").replaceAll("\\+", "%20");
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.parseMediaType("application/zip"));
+        httpHeaders.setContentDispositionFormData("attachment", showFileName);
+        return timedStream("downloadZip", zipBucket, () -> new ResponseEntity<>(body, httpHeaders, HttpStatus.OK));
+    }
+
+    /**
+     * 只统计满足条件的对象数量和总大小。
+     */
+    public static ListSummary summarizeObjects(String bucket, ListFilter filter, boolean parallel) throws IOException {
+        return timed("summarizeObjects", bucket, () -> doSummarizeObjects(bucket, filter, parallel));
+    }
+
+    private static ListSummary doSummarizeObjects(String bucket, ListFilter filter, boolean parallel) throws IOException {
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        return objectLister.summarize(bucket, filter, parallel);
+    }
+
     public static boolean deleteFile(String bucket, String fileName) {
+        return timed("deleteFile", bucket, () -> doDeleteFile(bucket, fileName));
+    }
+
+    private static boolean doDeleteFile(String bucket, String fileName) {
         if (StringUtils.isNullOrEmpty(fileName)) {
             throw new IllegalArgumentException("文件名称不能为空!");
         }
@@ -241,11 +731,58 @@ public class AwzS3Util {
         } catch (SdkClientException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            metadataCache.invalidate(bucket, fileName);
         }
         return true;
     }
 
+    /**
+     * 批量删除文件，每批最多 1000 个键用一次 DeleteObjects 请求删除，多个批次并发。
+     */
+    public static DeleteResult deleteFiles(String bucket, List<String> fileNames) throws IOException {
+        return timed("deleteFiles", bucket, () -> doDeleteFiles(bucket, fileNames));
+    }
+
+    private static DeleteResult doDeleteFiles(String bucket, List<String> fileNames) throws IOException {
+        if (fileNames == null || fileNames.isEmpty()) {
+            throw new IllegalArgumentException("文件名称不能为空!");
+        }
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        try {
+            return bulkDeleter.deleteKeys(bucket, fileNames);
+        } finally {
+            for (String fileName : fileNames) {
+                metadataCache.invalidate(bucket, fileName);
+            }
+        }
+    }
+
+    /**
+     * 删除前缀下的所有文件，并中止该前缀下未完成的分段上传。
+     */
+    public static DeleteResult deleteByPrefix(String bucket, String prefix) throws IOException {
+        return timed("deleteByPrefix", bucket, () -> doDeleteByPrefix(bucket, prefix));
+    }
+
+    private static DeleteResult doDeleteByPrefix(String bucket, String prefix) throws IOException {
+        // 清空整个桶应使用 deleteBucket 的 force 选项
+        if (StringUtils.isNullOrEmpty(prefix)) {
+            throw new IllegalArgumentException("前缀不能为空!");
+        }
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        try {
+            return bulkDeleter.deletePrefix(bucket, prefix, false);
+        } finally {
+            metadataCache.invalidateBucket(bucket);
+        }
+    }
+
     public static ObjectMetadata getFileInfo(String bucket, String fileName) {
+        return timed("getFileInfo", bucket, () -> doGetFileInfo(bucket, fileName));
+    }
+
+    private static ObjectMetadata doGetFileInfo(String bucket, String fileName) {
         // 检查文件名是否为空，如果为空，则抛出异常
         if (StringUtils.isNullOrEmpty(fileName)) {
             throw new IllegalArgumentException("文件名称不能为空!");
@@ -255,8 +792,8 @@ public class AwzS3Util {
         // 初始化对象元数据为 null
         ObjectMetadata objectMetadata = null;
         try {
-            // 获取对象的元数据信息
-            objectMetadata = amazonS3.getObjectMetadata(bucket, fileName);
+            // 通过缓存获取对象的元数据信息，对象不存在时为 null
+            objectMetadata = metadataCache.get(bucket, fileName);
         } catch (SdkClientException e) {
             // 捕获 AWS SDK 客户端异常，并打印异常信息
             e.printStackTrace();
@@ -265,119 +802,282 @@ public class AwzS3Util {
         return objectMetadata;
     }
 
-    //解压缩sourceBucket里的sourceKey文件，并将解压缩后的文件上传到targetBucket
-    public static boolean decompressAndUpload(String sourceBucket, String sourceKey, String targetBucket) {
+    /**
+     * 并发获取多个文件的元数据，同样经过元数据缓存；不存在的文件对应 null。
+     */
+    public static Map<String, ObjectMetadata> getFileInfos(String bucket, List<String> fileNames) {
+        return timed("getFileInfos", bucket, () -> doGetFileInfos(bucket, fileNames));
+    }
+
+    private static Map<String, ObjectMetadata> doGetFileInfos(String bucket, List<String> fileNames) {
+        if (fileNames == null || fileNames.isEmpty()) {
+            throw new IllegalArgumentException("文件名称不能为空!");
+        }
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        return metadataCache.getAll(bucket, fileNames);
+    }
+
+    public static BufferPoolStats getBufferPoolStats() {
+        return partBufferPool.getStats();
+    }
+
+    public static MetadataCacheStats getMetadataCacheStats() {
+        return metadataCache.getStats();
+    }
+
+    //解压缩sourceBucket里的sourceKey文件，并将解压缩后的文件上传到targetBucket，返回每个条目的大小和 ETag
+    public static DecompressResult decompressAndUpload(String sourceBucket, String sourceKey, String targetBucket) throws IOException {
+        return decompressAndUpload(sourceBucket, sourceKey, targetBucket, null);
+    }
+
+    public static DecompressResult decompressAndUpload(String sourceBucket, String sourceKey, String targetBucket, String charset) throws IOException {
+        return timed("decompressAndUpload", sourceBucket,
+                () -> doDecompressAndUpload(sourceBucket, sourceKey, targetBucket, charset));
+    }
+
+    private static DecompressResult doDecompressAndUpload(String sourceBucket, String sourceKey, String targetBucket, String charset) throws IOException {
+        if (StringUtils.isNullOrEmpty(sourceKey)) {
+            throw new IllegalArgumentException("压缩文件名称不能为空!");
+        }
+        sourceBucket = StringUtils.isNullOrEmpty(sourceBucket) ? awzS3Config.getBucket() : sourceBucket;
+        targetBucket = StringUtils.isNullOrEmpty(targetBucket) ? awzS3Config.getBucket() : targetBucket;
+        // 边解压边上传，不落临时文件
+        DecompressResult result = null;
         try {
-            // 从S3获取压缩文件
-            S3Object s3object = amazonS3.getObject(new GetObjectRequest(sourceBucket, sourceKey));
-            ZipInputStream zis = new ZipInputStream(new BufferedInputStream(s3object.getObjectContent()), Charset.forName("GBK"));
-            ZipEntry entry;
-
-            while ((entry = zis.getNextEntry()) != null) {
-                String fileName = entry.getName();
-                File tempFile = File.createTempFile("decompressed_", fileName);
-
-                // 解压缩文件内容到临时文件
-                try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    while ((len = zis.read(buffer)) > 0) {
-                        fos.write(buffer, 0, len);
-                    }
-                }
+            result = zipStreamExtractor.extract(sourceBucket, sourceKey, targetBucket, zipCharset(charset));
+            return result;
+        } finally {
+            invalidateMetadata(targetBucket, result);
+        }
+    }
+
+    /**
+     * 只读取压缩包的中央目录，列出其中的条目，不下载整个压缩包。
+     */
+    public static List<ZipCentralEntry> listZipEntries(String bucket, String key, String charset) throws IOException {
+        return timed("listZipEntries", bucket, () -> doListZipEntries(bucket, key, charset));
+    }
+
+    private static List<ZipCentralEntry> doListZipEntries(String bucket, String key, String charset) throws IOException {
+        if (StringUtils.isNullOrEmpty(key)) {
+            throw new IllegalArgumentException("压缩文件名称不能为空!");
+        }
+        bucket = StringUtils.isNullOrEmpty(bucket) ? awzS3Config.getBucket() : bucket;
+        return s3ZipReader.listEntries(bucket, key, zipCharset(charset));
+    }
 
-                // 上传解压后的文件到目标存储桶
-                amazonS3.putObject(targetBucket, fileName, new FileInputStream(tempFile).toString());
-                tempFile.delete(); // 删除临时文件
+    /**
+     * 通过范围读取并发解压压缩包中选中的条目(entries 为空时解压全部)并上传到 targetBucket。
+     */
+    public static DecompressResult extractZipEntries(String sourceBucket, String sourceKey, String targetBucket,
+                                                     List<String> entries, String charset) throws IOException {
+        return timed("extractZipEntries", sourceBucket,
+                () -> doExtractZipEntries(sourceBucket, sourceKey, targetBucket, entries, charset));
+    }
+
+    private static DecompressResult doExtractZipEntries(String sourceBucket, String sourceKey, String targetBucket,
+                                                       List<String> entries, String charset) throws IOException {
+        if (StringUtils.isNullOrEmpty(sourceKey)) {
+            throw new IllegalArgumentException("压缩文件名称不能为空!");
+        }
+        sourceBucket = StringUtils.isNullOrEmpty(sourceBucket) ? awzS3Config.getBucket() : sourceBucket;
+        targetBucket = StringUtils.isNullOrEmpty(targetBucket) ? awzS3Config.getBucket() : targetBucket;
+        DecompressResult result = null;
+        try {
+            result = s3ZipReader.extract(sourceBucket, sourceKey, targetBucket, entries, zipCharset(charset));
+            return result;
+        } finally {
+            invalidateMetadata(targetBucket, result);
+        }
+    }
+
+    // 解压写入的对象使元数据缓存失效；解压中途失败时无法确定写入了哪些对象，使整个桶失效
+    private static void invalidateMetadata(String targetBucket, DecompressResult result) {
+        if (result == null) {
+            metadataCache.invalidateBucket(targetBucket);
+            return;
+        }
+        for (ZipEntryResult entry : result.getEntries()) {
+            metadataCache.invalidate(targetBucket, entry.getKey());
+        }
+    }
+
+    private static Charset zipCharset(String charset) {
+        try {
+            return Charset.forName(StringUtils.isNullOrEmpty(charset) ? awzS3Config.getDecompress().getCharset() : charset);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的字符集: " + charset);
+        }
+    }
+
+    /**
+     * 服务端复制对象，数据不经过本服务；targetKey 为空时与 sourceKey 相同。
+     * rewrite 不为 null 时替换目标对象的元数据，否则沿用源对象的元数据。
+     */
+    public static CopyResult copyObject(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                                        MetadataRewrite rewrite) throws IOException {
+        return copyOrMove(sourceBucket, sourceKey, targetBucket, targetKey, rewrite, false);
+    }
+
+    /**
+     * 服务端复制对象，复制成功后删除源对象。
+     */
+    public static CopyResult moveObject(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                                        MetadataRewrite rewrite) throws IOException {
+        return copyOrMove(sourceBucket, sourceKey, targetBucket, targetKey, rewrite, true);
+    }
+
+    private static CopyResult copyOrMove(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                                         MetadataRewrite rewrite, boolean move) throws IOException {
+        return timed(move ? "moveObject" : "copyObject", sourceBucket,
+                () -> doCopyOrMove(sourceBucket, sourceKey, targetBucket, targetKey, rewrite, move));
+    }
+
+    private static CopyResult doCopyOrMove(String sourceBucket, String sourceKey, String targetBucket, String targetKey,
+                                           MetadataRewrite rewrite, boolean move) throws IOException {
+        if (StringUtils.isNullOrEmpty(sourceKey)) {
+            throw new IllegalArgumentException("源文件名称不能为空!");
+        }
+        sourceBucket = StringUtils.isNullOrEmpty(sourceBucket) ? awzS3Config.getBucket() : sourceBucket;
+        targetBucket = StringUtils.isNullOrEmpty(targetBucket) ? awzS3Config.getBucket() : targetBucket;
+        targetKey = StringUtils.isNullOrEmpty(targetKey) ? sourceKey : targetKey;
+        try {
+            return move
+                    ? objectCopier.move(sourceBucket, sourceKey, targetBucket, targetKey, rewrite, bytes -> {
+                    })
+                    : objectCopier.copy(sourceBucket, sourceKey, targetBucket, targetKey, rewrite);
+        } finally {
+            metadataCache.invalidate(targetBucket, targetKey);
+            if (move) {
+                metadataCache.invalidate(sourceBucket, sourceKey);
+            }
+        }
+    }
+
+    /**
+     * 提交后台复制(移动)任务：sourceKey 不为空时复制单个对象，否则复制 sourcePrefix 下的全部对象到 target 前缀。
+     * 立即返回任务状态，之后通过 jobId 查询进度；任务队列满时抛出 RejectedExecutionException。
+     */
+    public static CopyJobStatus submitCopyJob(String sourceBucket, String sourceKey, String sourcePrefix,
+                                              String targetBucket, String target, MetadataRewrite rewrite, boolean move) {
+        boolean hasKey = !StringUtils.isNullOrEmpty(sourceKey);
+        if (hasKey == (sourcePrefix != null)) {
+            throw new IllegalArgumentException("sourceKey 和 sourcePrefix 必须且只能指定一个!");
+        }
+        sourceBucket = StringUtils.isNullOrEmpty(sourceBucket) ? awzS3Config.getBucket() : sourceBucket;
+        targetBucket = StringUtils.isNullOrEmpty(targetBucket) ? awzS3Config.getBucket() : targetBucket;
+        if (hasKey) {
+            target = StringUtils.isNullOrEmpty(target) ? sourceKey : target;
+        } else {
+            target = target == null ? sourcePrefix : target;
+            // 同一桶内复制到源前缀之内，新写入的对象会再次被列举出来
+            if (sourceBucket.equals(targetBucket) && target.startsWith(sourcePrefix)) {
+                throw new IllegalArgumentException("目标前缀不能位于源前缀之内!");
             }
-            zis.close();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
         }
+        return CopyJobStatus.of(copyJobManager.submit(sourceBucket, hasKey ? sourceKey : null,
+                hasKey ? null : sourcePrefix, targetBucket, target, rewrite, move));
+    }
+
+    public static CopyJobStatus getCopyJobStatus(String jobId) {
+        return CopyJobStatus.of(copyJobManager.getJob(jobId));
+    }
+
+    public static CopyJobStatus cancelCopyJob(String jobId) {
+        return CopyJobStatus.of(copyJobManager.cancel(jobId));
     }
 
     //读取视频的前1秒，截取第一帧，返回第一帧的图片(第一帧对应第0秒)
     public static byte[] extractFirstFrame(String bucket, String fileName, String localPath) throws IOException {
-        //只下载视频前1秒到本地
-        downloadInRange(bucket, fileName, localPath);
-        // 本地视频文件路径
-        String videoFilePath = localPath + "/" + fileName;
-        // 提取视频文件名前缀
-        String filePrefix = fileName.substring(0, fileName.lastIndexOf('.'));
-        String outputImagePath = localPath + "/" + filePrefix + ".jpg";
-        // 使用 ffmpeg 只读取前1秒并截取第一帧
-        ProcessBuilder processBuilder = new ProcessBuilder(
-                "ffmpeg", "-i", videoFilePath, "-t", "00:00:01", "-ss", "00:00:01", "-vframes", "1", outputImagePath);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-        try {
-            if (process.waitFor() != 0) {
-                throw new IOException("ffmpeg process failed");
+        String finalBucket = !StringUtils.hasValue(bucket) ? awzS3Config.getBucket() : bucket;
+        return timed("extractFirstFrame", finalBucket, () -> {
+            // 截图在媒体任务调度器中执行，队列满时抛出 MediaBusyException
+            if (thumbnailCache == null) {
+                return mediaJobScheduler.execute(() -> doExtractFirstFrame(finalBucket, fileName, localPath));
+            }
+            // 以 ETag 作为缓存键的一部分，对象被覆盖后重新截取；已缓存或正在截取时不再排队
+            String eTag = amazonS3.getObjectMetadata(finalBucket, fileName).getETag();
+            byte[] frame = thumbnailCache.getIfPresent(finalBucket, fileName, eTag);
+            if (frame != null) {
+                return frame;
+            }
+            return mediaJobScheduler.execute(() -> cachedFirstFrame(finalBucket, fileName, eTag, localPath));
+        });
+    }
+
+    /**
+     * 提交异步截取第一帧的任务，返回任务状态，之后通过 jobId 查询状态和结果。
+     */
+    public static MediaJobStatus submitFirstFrameJob(String bucket, String fileName, String localPath) {
+        String finalBucket = !StringUtils.hasValue(bucket) ? awzS3Config.getBucket() : bucket;
+        return MediaJobStatus.of(mediaJobScheduler.submit(() -> {
+            if (thumbnailCache == null) {
+                return doExtractFirstFrame(finalBucket, fileName, localPath);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("ffmpeg process was interrupted", e);
-        }
-        // 读取截取的第一帧图片
-        byte[] imageBytes = Files.readAllBytes(Paths.get(outputImagePath));
-        // 删除临时文件
-        new File(videoFilePath).delete();
-        //如果注释掉下面一行代码，那么localPath目录下的第一帧截图会被保留到本地
-        //new File(outputImagePath).delete();
-        return imageBytes;
+            String eTag = amazonS3.getObjectMetadata(finalBucket, fileName).getETag();
+            return cachedFirstFrame(finalBucket, fileName, eTag, localPath);
+        }));
+    }
+
+    // 在工作线程中经缩略图缓存截取，同步请求和异步任务对同一个对象只截取一次
+    private static byte[] cachedFirstFrame(String bucket, String fileName, String eTag, String localPath) throws IOException {
+        return thumbnailCache.get(bucket, fileName, eTag, () -> doExtractFirstFrame(bucket, fileName, localPath));
+    }
+
+    public static MediaJobStatus getMediaJobStatus(String jobId) {
+        return MediaJobStatus.of(mediaJobScheduler.getJob(jobId));
+    }
+
+    /**
+     * 返回异步任务的结果，任务未结束时返回 null。
+     */
+    public static byte[] getMediaJobResult(String jobId) throws IOException {
+        return mediaJobScheduler.getResult(jobId);
+    }
+
+    private static byte[] doExtractFirstFrame(String bucket, String fileName, String localPath) throws IOException {
+        // 每个任务使用独立的工作目录，并发截取同一个文件时不会互相覆盖
+        Path workDir = createWorkDir(localPath);
+        try {
+            //只下载视频前1秒到本地
+            Path videoFile = cutLeadingSecond(bucket, fileName, workDir);
+            // 提取视频文件名前缀
+            String filePrefix = fileName.substring(0, fileName.lastIndexOf('.'));
+            Path imageFile = workDir.resolve("frame.jpg");
+            // 使用 ffmpeg 只读取前1秒并截取第一帧
+            ffmpegRunner.run("-i", videoFile.toString(), "-t", "00:00:01", "-ss", "00:00:01", "-vframes", "1", imageFile.toString());
+            // 读取截取的第一帧图片
+            byte[] imageBytes = Files.readAllBytes(imageFile);
+            //如果注释掉下面一行代码，那么localPath目录下不会保留第一帧截图
+            keepLocal(imageFile, Paths.get(localPath, filePrefix + ".jpg"));
+            return imageBytes;
+        } finally {
+            // 删除临时文件
+            deleteWorkDir(workDir);
+        }
     }
     //范围下载
     public static ResponseEntity<byte[]> downloadInRange(String bucket, String fileName, String localPath) throws IOException {
+        return timed("downloadInRange", bucket, () -> doDownloadInRange(bucket, fileName, localPath));
+    }
+
+    private static ResponseEntity<byte[]> doDownloadInRange(String bucket, String fileName, String localPath) throws IOException {
         if (!StringUtils.hasValue(bucket)) {
             throw new IllegalArgumentException("存储桶名称不能为空!");
         }
-        bucket = !StringUtils.hasValue(bucket) ? awzS3Config.getBucket() : bucket;
-        // 从 S3 获取对象
-        GetObjectRequest getObjectRequest = new GetObjectRequest(bucket, fileName);
-        S3Object s3Object = amazonS3.getObject(getObjectRequest);
-        S3ObjectInputStream objectInputStream = s3Object.getObjectContent();
-        // 创建临时文件来存储从 S3 下载的对象
-        File tempFile = File.createTempFile("s3object-", ".tmp");
-        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-            IOUtils.copy(objectInputStream, fos);
-        }
-        // 使用 ffmpeg 下载前1秒视频
-        String tempFilePath = tempFile.getAbsolutePath();
-        String outputFilePath = localPath + "/" + fileName;
-        ProcessBuilder processBuilder = new ProcessBuilder(
-                "ffmpeg", "-ss", "0", "-i", tempFilePath, "-t", "1", "-c", "copy", outputFilePath);
-        processBuilder.redirectErrorStream(true);
-        Process process = processBuilder.start();
-        // 捕获 ffmpeg 进程的输出日志
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+        String finalBucket = bucket;
+        // 在媒体任务调度器中截取，读取截取的前1秒视频，该文件同时保留在本地路径
+        byte[] bytes = mediaJobScheduler.execute(() -> {
+            Path workDir = createWorkDir(localPath);
+            try {
+                Path clip = cutLeadingSecond(finalBucket, fileName, workDir);
+                byte[] clipBytes = Files.readAllBytes(clip);
+                keepLocal(clip, Paths.get(localPath, fileName));
+                return clipBytes;
+            } finally {
+                deleteWorkDir(workDir);
             }
-        }
-        try {
-            if (process.waitFor() != 0) {
-                throw new IOException("ffmpeg process failed: " + output.toString());
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("ffmpeg process was interrupted: " + output.toString(), e);
-        }
-        // 读取截取的前1秒视频
-        byte[] bytes = Files.readAllBytes(Paths.get(outputFilePath));
-        // 删除临时文件
-        Files.delete(Paths.get(tempFilePath));
-        // 检查并创建本地路径
-        if (!Files.exists(Paths.get(localPath))) {
-            Files.createDirectories(Paths.get(localPath));
-        }
-        // 保存文件到本地路径
-        try (FileOutputStream fos = new FileOutputStream(outputFilePath)) {
-            fos.write(bytes);
-        }
+        });
         String showFileName = URLEncoder.encode(fileName, "UTF-8").replaceAll("\\+", "%20");
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
@@ -385,4 +1085,122 @@ public class AwzS3Util {
         httpHeaders.setContentDispositionFormData("attachment", showFileName);
         return new ResponseEntity<>(bytes, httpHeaders, HttpStatus.OK);
     }
+
+    // 截取视频前1秒保存到工作目录，返回截取的文件，需在媒体任务工作线程中调用
+    private static Path cutLeadingSecond(String bucket, String fileName, Path workDir) throws IOException {
+        // 只范围读取视频开头(及末尾的 moov)到稀疏临时文件，不下载整个对象
+        File tempFile = File.createTempFile("s3object-", ".tmp");
+        // 保留扩展名，ffmpeg 按扩展名选择输出格式
+        int dot = fileName.lastIndexOf('.');
+        Path outputFile = workDir.resolve("clip" + (dot >= 0 ? fileName.substring(dot) : ""));
+        try {
+            videoRangeFetcher.fetchLeading(bucket, fileName, tempFile.toPath());
+            // 使用 ffmpeg 截取前1秒视频
+            ffmpegRunner.run("-ss", "0", "-i", tempFile.getAbsolutePath(), "-t", "1", "-c", "copy", outputFile.toString());
+        } finally {
+            // 删除临时文件
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        return outputFile;
+    }
+
+    // 在 localPath 下创建本任务独用的工作目录
+    private static Path createWorkDir(String localPath) throws IOException {
+        Path dir = Paths.get(localPath);
+        Files.createDirectories(dir);
+        return Files.createTempDirectory(dir, ".media-");
+    }
+
+    // 处理结果整体移动到 localPath 下的目标位置，并发任务只会整体替换，读者不会看到写了一半的文件
+    private static void keepLocal(Path source, Path target) {
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 本地保留失败不影响返回结果
+            e.printStackTrace();
+        }
+    }
+
+    private static void deleteWorkDir(Path workDir) {
+        try (Stream<Path> files = Files.list(workDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(workDir);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- 异步版本：在独立的有界执行器上执行，不占用调用线程 ----------
+
+    public static CompletableFuture<ObjectMetadata> getFileInfoAsync(String bucket, String fileName) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.METADATA, "getFileInfo", bucket, () -> getFileInfo(bucket, fileName));
+    }
+
+    public static CompletableFuture<Map<String, ObjectMetadata>> getFileInfosAsync(String bucket, List<String> fileNames) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.METADATA, "getFileInfos", bucket, () -> getFileInfos(bucket, fileNames));
+    }
+
+    public static CompletableFuture<Boolean> uploadByBlockAsync(MultipartFile file, String bucket, Integer partConcurrency) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "uploadByBlock", bucket, () -> partConcurrency == null
+                ? uploadByBlock(file, bucket)
+                : uploadByBlock(file, bucket, partConcurrency));
+    }
+
+    public static CompletableFuture<DedupUploadResult> uploadDedupAsync(MultipartFile file, String bucket, String sha256,
+                                                                      Integer partConcurrency) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "uploadDedup", bucket, () -> uploadDedup(file, bucket,
+                sha256, partConcurrency == null ? awzS3Config.getUpload().getPartConcurrency() : partConcurrency));
+    }
+
+    public static CompletableFuture<ResponseEntity<byte[]>> downloadByNameAsync(String bucket, String fileName,
+                                                                               String localPath, Long deadlineMillis) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "downloadByName", bucket, () -> deadlineMillis == null
+                ? downloadByName(bucket, fileName, localPath)
+                : downloadByName(bucket, fileName, localPath, deadlineMillis));
+    }
+
+    public static CompletableFuture<Path> downloadToLocalAsync(String bucket, String fileName, String localPath) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "downloadToLocal", bucket, () -> downloadToLocal(bucket, fileName, localPath));
+    }
+
+    public static CompletableFuture<DeleteResult> deleteFilesAsync(String bucket, List<String> fileNames, String prefix) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "deleteFiles", bucket, () -> prefix != null
+                ? deleteByPrefix(bucket, prefix)
+                : deleteFiles(bucket, fileNames));
+    }
+
+    public static CompletableFuture<DecompressResult> decompressAndUploadAsync(String sourceBucket, String sourceKey,
+                                                                               String targetBucket, String charset) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "decompressAndUpload", sourceBucket,
+                () -> decompressAndUpload(sourceBucket, sourceKey, targetBucket, charset));
+    }
+
+    public static CompletableFuture<DecompressResult> extractZipEntriesAsync(String sourceBucket, String sourceKey, String targetBucket,
+                                                                             List<String> entries, String charset) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "extractZipEntries", sourceBucket,
+                () -> extractZipEntries(sourceBucket, sourceKey, targetBucket, entries, charset));
+    }
+
+    public static CompletableFuture<CopyResult> copyObjectAsync(String sourceBucket, String sourceKey, String targetBucket,
+                                                                String targetKey, MetadataRewrite rewrite) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "copyObject", sourceBucket,
+                () -> copyObject(sourceBucket, sourceKey, targetBucket, targetKey, rewrite));
+    }
+
+    public static CompletableFuture<CopyResult> moveObjectAsync(String sourceBucket, String sourceKey, String targetBucket,
+                                                                String targetKey, MetadataRewrite rewrite) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.TRANSFER, "moveObject", sourceBucket,
+                () -> moveObject(sourceBucket, sourceKey, targetBucket, targetKey, rewrite));
+    }
+
+    public static CompletableFuture<byte[]> extractFirstFrameAsync(String bucket, String fileName, String localPath) {
+        return asyncExecutors.supply(AsyncExecutors.OperationClass.MEDIA, "extractFirstFrame", bucket, () -> extractFirstFrame(bucket, fileName, localPath));
+    }
+
+    public static Map<String, Map<String, Object>> getAsyncStats() {
+        return asyncExecutors.getStats();
+    }
 }
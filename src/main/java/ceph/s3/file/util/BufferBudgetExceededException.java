@@ -0,0 +1,12 @@
+package ceph.s3.file.util;
+
+/**
+ * 缓冲区内存预算在等待时间内仍未释放时抛出，调用方应稍后重试。
+ */
+public class BufferBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public BufferBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package ceph.s3.file.util;
+
+import lombok.Data;
+
+/**
+ * 缓冲池占用情况。
+ */
+@Data
+public class BufferPoolStats {
+    private int chunkSize;
+    private boolean direct;
+    // 内存预算
+    private long budgetBytes;
+    // 正在被分段使用的字节数
+    private long usedBytes;
+    // 已分配、空闲待复用的字节数
+    private long pooledBytes;
+    // 等待预算的线程数
+    private int waitingThreads;
+    private long acquireCount;
+    private long rejectedCount;
+}
@@ -0,0 +1,14 @@
+package ceph.s3.file.util;
+
+import java.io.IOException;
+
+/**
+ * 带 ETag 条件的请求不满足条件(返回 null 或 412)：对象在读取或复制过程中被覆盖，重试没有意义。
+ */
+public class ObjectModifiedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ObjectModifiedException(String key) {
+        super("对象在处理过程中被修改: " + key);
+    }
+}
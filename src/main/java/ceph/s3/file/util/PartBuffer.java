@@ -0,0 +1,178 @@
+package ceph.s3.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 从 PartBufferPool 借出的缓冲区，由若干固定大小的块组成，避免为大分段分配单个大数组。
+ * 用完后必须 close 归还；可以多次调用，只归还一次。
+ */
+public class PartBuffer implements AutoCloseable {
+    private final PartBufferPool pool;
+    private final List<ByteBuffer> chunks;
+    private final int chunkSize;
+    private final long capacity;
+    private long size;
+    // 最近一次 fill 时计算的内容 MD5(Base64)，未计算时为 null
+    private String contentMd5;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    PartBuffer(PartBufferPool pool, List<ByteBuffer> chunks, int chunkSize, long capacity) {
+        this.pool = pool;
+        this.chunks = chunks;
+        this.chunkSize = chunkSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 从输入流循环读取直到填满缓冲区或流结束，返回实际读取的字节数。
+     */
+    public long fill(InputStream inputStream) throws IOException {
+        return fill(inputStream, false);
+    }
+
+    /**
+     * 同 fill(InputStream)；computeMd5 为 true 时在读取的同时计算内容的 MD5，通过 getContentMd5 获取。
+     */
+    public long fill(InputStream inputStream, boolean computeMd5) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(inputStream);
+        MessageDigest digest = computeMd5 ? md5() : null;
+        size = 0;
+        contentMd5 = null;
+        try {
+            for (ByteBuffer chunk : chunks) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunkSize, capacity - size));
+                boolean eof = false;
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                size += chunk.position();
+                if (digest != null) {
+                    // 块刚写满，还在缓存中，顺带计算摘要不需要再读一遍
+                    ByteBuffer filled = chunk.duplicate();
+                    filled.flip();
+                    digest.update(filled);
+                }
+                if (eof) {
+                    break;
+                }
+            }
+        } finally {
+            if (digest != null) {
+                contentMd5 = Base64.getEncoder().encodeToString(digest.digest());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 最近一次 fill 时计算的内容 MD5(Base64)，可作为 Content-MD5 让服务端校验。
+     */
+    public String getContentMd5() {
+        return contentMd5;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 读取已填充内容的输入流，支持 mark/reset，SDK 重试时可以从头重新发送。
+     */
+    public InputStream newInputStream() {
+        return new ChunkInputStream();
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(chunks);
+        }
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class ChunkInputStream extends InputStream {
+        private long position;
+        private long mark;
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            ByteBuffer chunk = chunks.get((int) (position / chunkSize));
+            return chunk.get((int) (position++ % chunkSize)) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            int total = 0;
+            while (total < len && position < size) {
+                ByteBuffer chunk = chunks.get((int) (position / chunkSize)).duplicate();
+                int offset = (int) (position % chunkSize);
+                int n = (int) Math.min(len - total, Math.min(chunkSize - offset, size - position));
+                chunk.position(offset);
+                chunk.get(b, off + total, n);
+                total += n;
+                position += n;
+            }
+            return total;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+    }
+}
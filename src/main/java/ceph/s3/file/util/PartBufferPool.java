@@ -0,0 +1,81 @@
+package ceph.s3.file.util;
+
+import ceph.s3.config.AwzS3Config;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 所有上传路径共享的分段缓冲池。缓冲区按固定大小的块分配并复用，避免大分段在 G1 下成为巨型对象；
+ * 借出的总字节数受内存预算限制，预算用尽时 acquire 等待，超过等待时间抛出 BufferBudgetExceededException。
+ */
+public class PartBufferPool {
+    private final int chunkSize;
+    private final boolean direct;
+    private final int totalChunks;
+    private final long acquireTimeoutMillis;
+    // 公平模式，避免大分段一直等不到足够的块
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public PartBufferPool(AwzS3Config.Buffer config) {
+        this.chunkSize = config.getChunkSize();
+        this.direct = config.isDirect();
+        this.totalChunks = (int) Math.max(1, config.getMemoryBudget() / chunkSize);
+        this.acquireTimeoutMillis = config.getAcquireTimeoutMillis();
+        this.permits = new Semaphore(totalChunks, true);
+    }
+
+    /**
+     * 借出容量为 capacity 字节的缓冲区。
+     */
+    public PartBuffer acquire(long capacity) throws InterruptedException {
+        int chunkCount = (int) Math.max(1, (capacity + chunkSize - 1) / chunkSize);
+        if (chunkCount > totalChunks) {
+            throw new IllegalArgumentException("分段大小 " + capacity + " 超过缓冲区内存预算");
+        }
+        if (!permits.tryAcquire(chunkCount, acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            rejectedCount.incrementAndGet();
+            throw new BufferBudgetExceededException("上传缓冲区内存已用尽，请稍后重试");
+        }
+        acquireCount.incrementAndGet();
+        List<ByteBuffer> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            ByteBuffer chunk = free.poll();
+            if (chunk == null) {
+                chunk = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+            }
+            chunks.add(chunk);
+        }
+        return new PartBuffer(this, chunks, chunkSize, capacity);
+    }
+
+    void release(List<ByteBuffer> chunks) {
+        free.addAll(chunks);
+        permits.release(chunks.size());
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public BufferPoolStats getStats() {
+        BufferPoolStats stats = new BufferPoolStats();
+        stats.setChunkSize(chunkSize);
+        stats.setDirect(direct);
+        stats.setBudgetBytes((long) totalChunks * chunkSize);
+        stats.setUsedBytes((long) (totalChunks - permits.availablePermits()) * chunkSize);
+        stats.setPooledBytes((long) free.size() * chunkSize);
+        stats.setWaitingThreads(permits.getQueueLength());
+        stats.setAcquireCount(acquireCount.get());
+        stats.setRejectedCount(rejectedCount.get());
+        return stats;
+    }
+}
@@ -0,0 +1,42 @@
+package ceph.s3.file.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 持有缓冲区等资源的任务：任务执行结束后归还资源；在开始执行前被取消时由 done 归还。
+ * 已经开始执行的任务即使被取消也要等执行结束才归还，避免资源在仍被读取时被复用。
+ */
+public class ReleasingFutureTask<T> extends FutureTask<T> {
+    // 由任务本身或取消回调先占到的一方负责归还
+    private final AtomicBoolean claimed;
+    private final Runnable release;
+
+    public ReleasingFutureTask(Callable<T> callable, Runnable release) {
+        this(callable, release, new AtomicBoolean());
+    }
+
+    private ReleasingFutureTask(Callable<T> callable, Runnable release, AtomicBoolean claimed) {
+        super(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                // 已被取消
+                return null;
+            }
+            try {
+                return callable.call();
+            } finally {
+                release.run();
+            }
+        });
+        this.claimed = claimed;
+        this.release = release;
+    }
+
+    @Override
+    protected void done() {
+        if (claimed.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
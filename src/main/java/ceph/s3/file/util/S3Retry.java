@@ -0,0 +1,55 @@
+package ceph.s3.file.util;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 分段上传、范围下载、服务端复制共用的重试：失败后按指数退避重试，退避时间加入随机抖动，避免大量分段同时重试。
+ */
+public final class S3Retry {
+    private S3Retry() {
+    }
+
+    public interface Attempt<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    /**
+     * 执行 attempt，可重试的异常最多尝试 maxAttempts 次，第一次重试前等待 backoffMillis，之后每次翻倍。
+     */
+    public static <T> T call(int maxAttempts, long backoffMillis, Attempt<T> attempt) throws IOException, InterruptedException {
+        int attempts = Math.max(1, maxAttempts);
+        long backoff = backoffMillis;
+        for (int i = 1; ; i++) {
+            try {
+                return attempt.call();
+            } catch (IOException | SdkClientException e) {
+                if (i >= attempts || !isRetryable(e)) {
+                    throw e;
+                }
+                Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                backoff *= 2;
+            }
+        }
+    }
+
+    /**
+     * 5xx、408、429 和 BadDigest(内容在传输中损坏，重传即可)可以重试，其他 4xx 客户端错误不重试；
+     * 连接中断等 IO 异常可以重试，对象已被修改或线程被中断不重试。
+     */
+    public static boolean isRetryable(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            int status = ((AmazonServiceException) e).getStatusCode();
+            return status >= 500 || status == 408 || status == 429
+                    || "BadDigest".equals(((AmazonServiceException) e).getErrorCode());
+        }
+        if (e instanceof SdkClientException) {
+            return ((SdkClientException) e).isRetryable();
+        }
+        return !(e instanceof ObjectModifiedException || e instanceof InterruptedIOException);
+    }
+}
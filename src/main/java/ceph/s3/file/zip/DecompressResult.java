@@ -0,0 +1,29 @@
+package ceph.s3.file.zip;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解压并上传的结果清单。
+ */
+@Data
+public class DecompressResult {
+    private String targetBucket;
+    private List<ZipEntryResult> entries = new ArrayList<>();
+    private long totalBytes;
+    private int failedCount;
+
+    public boolean isSuccess() {
+        return failedCount == 0;
+    }
+
+    void add(ZipEntryResult entry) {
+        entries.add(entry);
+        totalBytes += entry.getSize();
+        if (entry.getError() != null) {
+            failedCount++;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package ceph.s3.file.zip;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.upload.MultipartUploadEngine;
+import ceph.s3.file.util.PartBuffer;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.util.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 基于 S3 范围读取的随机访问 zip 读取器。
+ * 先从对象末尾读取 EOCD(必要时读取 ZIP64 EOCD)定位中央目录，再一次范围读取整个中央目录；
+ * 每个条目都可以用独立的范围读取解压，因此可以只解压选中的条目，也可以多个条目并发解压。
+ */
+public class S3ZipReader {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    // 本地文件头的扩展字段可能比中央目录中的长，多读一些避免再发一次请求
+    private static final int LOCAL_EXTRA_SLACK = 1024;
+    private static final long UINT16_MAX = 0xFFFF;
+    private static final long UINT32_MAX = 0xFFFFFFFFL;
+
+    private final AmazonS3 amazonS3;
+    private final MultipartUploadEngine uploadEngine;
+    private final AwzS3Config.Decompress config;
+    private final ExecutorService entryExecutor;
+
+    public S3ZipReader(AmazonS3 amazonS3, MultipartUploadEngine uploadEngine, AwzS3Config.Decompress config) {
+        this.amazonS3 = amazonS3;
+        this.uploadEngine = uploadEngine;
+        this.config = config;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.entryExecutor = Executors.newFixedThreadPool(Math.max(1, config.getEntryConcurrency()), r -> {
+            Thread thread = new Thread(r, "zip-range-extract-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 读取中央目录，返回所有条目；条目名未设置 UTF-8 标志时按 charset 解码。
+     */
+    public List<ZipCentralEntry> listEntries(String bucket, String key, Charset charset) throws IOException {
+        return readCentralDirectory(bucket, key, amazonS3.getObjectMetadata(bucket, key), charset);
+    }
+
+    private List<ZipCentralEntry> readCentralDirectory(String bucket, String key, ObjectMetadata metadata,
+                                                       Charset charset) throws IOException {
+        long length = metadata.getContentLength();
+        String eTag = metadata.getETag();
+        // EOCD 在文件末尾，后面最多跟 65535 字节的注释
+        long tailStart = Math.max(0, length - (EOCD_SIZE + UINT16_MAX));
+        byte[] tail = readRange(bucket, key, eTag, tailStart, length);
+        int eocd = findEocd(tail);
+        if (eocd < 0) {
+            throw new IOException("不是有效的 zip 文件: " + key);
+        }
+        ByteBuffer eocdBuffer = littleEndian(tail, eocd, EOCD_SIZE);
+        long entryCount = eocdBuffer.getShort(10) & UINT16_MAX;
+        long centralSize = eocdBuffer.getInt(12) & UINT32_MAX;
+        long centralOffset = eocdBuffer.getInt(16) & UINT32_MAX;
+
+        // 任一字段达到上限说明是 ZIP64，需要读取 ZIP64 EOCD
+        if (entryCount == UINT16_MAX || centralSize == UINT32_MAX || centralOffset == UINT32_MAX) {
+            int locator = eocd - ZIP64_EOCD_LOCATOR_SIZE;
+            if (locator < 0 || littleEndian(tail, locator, 4).getInt(0) != ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                throw new IOException("缺少 ZIP64 EOCD 定位记录: " + key);
+            }
+            long zip64EocdOffset = littleEndian(tail, locator, ZIP64_EOCD_LOCATOR_SIZE).getLong(8);
+            byte[] zip64Eocd = zip64EocdOffset >= tailStart && zip64EocdOffset + ZIP64_EOCD_SIZE <= length
+                    ? Arrays.copyOfRange(tail, (int) (zip64EocdOffset - tailStart), (int) (zip64EocdOffset - tailStart) + ZIP64_EOCD_SIZE)
+                    : readRange(bucket, key, eTag, zip64EocdOffset, zip64EocdOffset + ZIP64_EOCD_SIZE);
+            ByteBuffer zip64Buffer = littleEndian(zip64Eocd, 0, ZIP64_EOCD_SIZE);
+            if (zip64Buffer.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                throw new IOException("ZIP64 EOCD 记录无效: " + key);
+            }
+            entryCount = zip64Buffer.getLong(32);
+            centralSize = zip64Buffer.getLong(40);
+            centralOffset = zip64Buffer.getLong(48);
+        }
+        if (centralSize > Integer.MAX_VALUE || centralOffset + centralSize > length) {
+            throw new IOException("中央目录无效: " + key);
+        }
+        // 中央目录通常已包含在末尾读取的数据里
+        byte[] central = centralOffset >= tailStart
+                ? Arrays.copyOfRange(tail, (int) (centralOffset - tailStart), (int) (centralOffset - tailStart + centralSize))
+                : readRange(bucket, key, eTag, centralOffset, centralOffset + centralSize);
+        return parseCentralDirectory(central, entryCount, charset);
+    }
+
+    /**
+     * 并发解压选中的条目(names 为空时解压全部)并上传到 targetBucket。
+     */
+    public DecompressResult extract(String sourceBucket, String sourceKey, String targetBucket,
+                                    Collection<String> names, Charset charset) throws IOException {
+        ObjectMetadata metadata = amazonS3.getObjectMetadata(sourceBucket, sourceKey);
+        String eTag = metadata.getETag();
+        List<ZipCentralEntry> entries = readCentralDirectory(sourceBucket, sourceKey, metadata, charset);
+        Set<String> selected = names == null || names.isEmpty() ? null : new HashSet<>(names);
+        if (selected != null) {
+            Set<String> missing = new HashSet<>(selected);
+            entries.forEach(entry -> missing.remove(entry.getName()));
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("压缩包中不存在: " + missing);
+            }
+        }
+        DecompressResult result = new DecompressResult();
+        result.setTargetBucket(targetBucket);
+        List<Future<ZipEntryResult>> futures = new ArrayList<>();
+        for (ZipCentralEntry entry : entries) {
+            if (entry.isDirectory() || (selected != null && !selected.contains(entry.getName()))) {
+                continue;
+            }
+            futures.add(entryExecutor.submit(() -> extractEntry(sourceBucket, sourceKey, eTag, entry, targetBucket)));
+        }
+        try {
+            for (Future<ZipEntryResult> future : futures) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("解压被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IOException("条目解压失败", e.getCause());
+        }
+        return result;
+    }
+
+    private ZipEntryResult extractEntry(String bucket, String key, String eTag, ZipCentralEntry entry, String targetBucket) {
+        String targetKey = entry.getName();
+        if (entry.isEncrypted() || (entry.getMethod() != 0 && entry.getMethod() != 8)) {
+            return new ZipEntryResult(targetKey, entry.getSize(), null, "不支持的压缩方法或加密条目");
+        }
+        // 一次范围读取覆盖本地文件头和压缩数据
+        long start = entry.getLocalHeaderOffset();
+        long end = start + LOCAL_HEADER_SIZE + entry.getNameLength() + entry.getExtraLength()
+                + LOCAL_EXTRA_SLACK + entry.getCompressedSize();
+        S3ObjectInputStream objectInputStream = null;
+        Inflater inflater = null;
+        boolean completed = false;
+        try {
+            objectInputStream = openRange(bucket, key, eTag, start, end);
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            if (MultipartUploadEngine.readFully(objectInputStream, header) != LOCAL_HEADER_SIZE) {
+                throw new IOException("本地文件头不完整");
+            }
+            ByteBuffer headerBuffer = littleEndian(header, 0, LOCAL_HEADER_SIZE);
+            if (headerBuffer.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("本地文件头签名无效");
+            }
+            long skip = (headerBuffer.getShort(26) & UINT16_MAX) + (headerBuffer.getShort(28) & UINT16_MAX);
+            long dataStart = start + LOCAL_HEADER_SIZE + skip;
+            if (dataStart + entry.getCompressedSize() > end) {
+                // 本地扩展字段超出预估，重新范围读取压缩数据
+                objectInputStream.abort();
+                objectInputStream = openRange(bucket, key, eTag, dataStart, dataStart + entry.getCompressedSize());
+            } else {
+                org.apache.commons.io.IOUtils.skipFully(objectInputStream, skip);
+            }
+
+            InputStream data = new BoundedInputStream(objectInputStream, entry.getCompressedSize());
+            if (entry.getMethod() == 8) {
+                // 传入的 Inflater 不会随流关闭而释放，在 finally 中 end，避免并发解压时本地内存等到 GC 才释放
+                inflater = new Inflater(true);
+                data = new InflaterInputStream(data, inflater, 64 * 1024);
+            }
+            CheckedInputStream checked = new CheckedInputStream(data, new CRC32());
+            String uploadedETag = upload(targetBucket, targetKey, checked, entry.getSize(), entry.getCrc());
+            // 读完范围末尾多读的少量字节，连接可以复用
+            org.apache.commons.io.IOUtils.skip(objectInputStream, Long.MAX_VALUE);
+            completed = true;
+            return new ZipEntryResult(targetKey, entry.getSize(), uploadedETag, null);
+        } catch (IOException | SdkClientException e) {
+            e.printStackTrace();
+            return new ZipEntryResult(targetKey, entry.getSize(), null, e.getMessage());
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+            if (objectInputStream != null) {
+                if (completed) {
+                    closeQuietly(objectInputStream);
+                } else {
+                    objectInputStream.abort();
+                }
+            }
+        }
+    }
+
+    private S3ObjectInputStream openRange(String bucket, String key, String eTag, long start, long end) throws IOException {
+        S3Object s3Object = amazonS3.getObject(new GetObjectRequest(bucket, key)
+                .withRange(start, end - 1)
+                .withMatchingETagConstraint(eTag));
+        if (s3Object == null) {
+            throw new IOException("压缩包在读取过程中被修改: " + key);
+        }
+        return s3Object.getObjectContent();
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    /**
+     * 上传条目内容，提交前校验 CRC：内容损坏时中止分段上传或不发出 PUT，不会覆盖已有的目标对象。
+     */
+    private String upload(String bucket, String key, CheckedInputStream inputStream, long size, long crc) throws IOException {
+        MultipartUploadEngine.CompletionGuard crcCheck = () -> {
+            if (inputStream.getChecksum().getValue() != crc) {
+                throw new IOException("CRC 校验失败");
+            }
+            return true;
+        };
+        if (size > config.getBufferSize()) {
+            return uploadEngine.upload(bucket, key, inputStream, size, crcCheck).getETag();
+        }
+        try (PartBuffer buffer = uploadEngine.acquireBuffer(size)) {
+            if (buffer.fill(inputStream) != size) {
+                throw new IOException("条目数据不完整");
+            }
+            crcCheck.beforeComplete();
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(size);
+            return amazonS3.putObject(new PutObjectRequest(bucket, key, buffer.newInputStream(), metadata)).getETag();
+        }
+    }
+
+    private List<ZipCentralEntry> parseCentralDirectory(byte[] central, long entryCount, Charset charset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(central).order(ByteOrder.LITTLE_ENDIAN);
+        List<ZipCentralEntry> entries = new ArrayList<>((int) Math.min(entryCount, 100000));
+        int position = 0;
+        while (position + 46 <= central.length) {
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                break;
+            }
+            int flags = buffer.getShort(position + 8) & 0xFFFF;
+            int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            ZipCentralEntry entry = new ZipCentralEntry();
+            entry.setFlags(flags);
+            entry.setMethod(buffer.getShort(position + 10) & 0xFFFF);
+            entry.setCrc(buffer.getInt(position + 16) & UINT32_MAX);
+            entry.setCompressedSize(buffer.getInt(position + 20) & UINT32_MAX);
+            entry.setSize(buffer.getInt(position + 24) & UINT32_MAX);
+            entry.setLocalHeaderOffset(buffer.getInt(position + 42) & UINT32_MAX);
+            // 第11位表示条目名使用 UTF-8 编码
+            Charset nameCharset = (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : charset;
+            entry.setName(new String(central, position + 46, nameLength, nameCharset));
+            entry.setNameLength(nameLength);
+            entry.setExtraLength(extraLength);
+            readZip64Extra(buffer, position + 46 + nameLength, extraLength, entry);
+            entries.add(entry);
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        if (entries.size() != entryCount) {
+            throw new IOException("中央目录条目数不一致，期望 " + entryCount + "，实际 " + entries.size());
+        }
+        return entries;
+    }
+
+    /**
+     * ZIP64 扩展字段按顺序只包含中央目录里取值为 0xFFFFFFFF 的字段。
+     */
+    private static void readZip64Extra(ByteBuffer buffer, int offset, int length, ZipCentralEntry entry) {
+        int end = offset + length;
+        while (offset + 4 <= end) {
+            int headerId = buffer.getShort(offset) & 0xFFFF;
+            int dataSize = buffer.getShort(offset + 2) & 0xFFFF;
+            if (headerId == 0x0001) {
+                int field = offset + 4;
+                int fieldEnd = field + dataSize;
+                if (entry.getSize() == UINT32_MAX && field + 8 <= fieldEnd) {
+                    entry.setSize(buffer.getLong(field));
+                    field += 8;
+                }
+                if (entry.getCompressedSize() == UINT32_MAX && field + 8 <= fieldEnd) {
+                    entry.setCompressedSize(buffer.getLong(field));
+                    field += 8;
+                }
+                if (entry.getLocalHeaderOffset() == UINT32_MAX && field + 8 <= fieldEnd) {
+                    entry.setLocalHeaderOffset(buffer.getLong(field));
+                }
+                return;
+            }
+            offset += 4 + dataSize;
+        }
+    }
+
+    private static int findEocd(byte[] tail) {
+        ByteBuffer buffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = tail.length - EOCD_SIZE; i >= 0; i--) {
+            if (buffer.getInt(i) == EOCD_SIGNATURE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] readRange(String bucket, String key, String eTag, long start, long end) throws IOException {
+        if (end <= start) {
+            return new byte[0];
+        }
+        try (InputStream inputStream = openRange(bucket, key, eTag, start, end)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    private static ByteBuffer littleEndian(byte[] data, int offset, int length) {
+        return ByteBuffer.wrap(data, offset, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void shutdown() {
+        entryExecutor.shutdownNow();
+    }
+}
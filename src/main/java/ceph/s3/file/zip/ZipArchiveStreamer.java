@@ -0,0 +1,368 @@
+package ceph.s3.file.zip;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.download.HedgedReader;
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.util.PartBuffer;
+import ceph.s3.file.util.ObjectModifiedException;
+import ceph.s3.file.util.PartBufferPool;
+import ceph.s3.file.util.S3Retry;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把多个对象打包成 zip 流式写出。
+ * 写当前条目时，后续 prefetchObjects 个对象已经在后台按范围预读到缓冲区，输出流不需要等待 RGW 的往返；
+ * 每个对象最多预读 readAheadRanges 个范围，读完一个范围才继续读下一个，预读内存与压缩包大小无关。
+ * 预读缓冲区从上传共用的 PartBufferPool 借出，受同一个内存预算限制。
+ */
+public class ZipArchiveStreamer {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 amazonS3;
+    private final HedgedReader hedgedReader;
+    private final PartBufferPool bufferPool;
+    private final S3Metrics metrics;
+    private final AwzS3Config.Archive config;
+    private final Set<String> storedExtensions = new HashSet<>();
+    private final ExecutorService prefetchExecutor;
+
+    public ZipArchiveStreamer(AmazonS3 amazonS3, HedgedReader hedgedReader, PartBufferPool bufferPool,
+                              S3Metrics metrics, AwzS3Config.Archive config) {
+        this.amazonS3 = amazonS3;
+        this.hedgedReader = hedgedReader;
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        this.config = config;
+        for (String extension : config.getStoredExtensions()) {
+            storedExtensions.add(extension.toLowerCase(Locale.ROOT));
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, config.getGlobalPrefetchConcurrency()), r -> {
+            Thread thread = new Thread(r, "s3-zip-prefetch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始向 out 写出压缩包。依次调用 add 添加对象，最后调用 finish；无论成功与否都要 close。
+     */
+    public Archive open(String bucket, OutputStream out) {
+        return new Archive(bucket, out);
+    }
+
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    public class Archive implements AutoCloseable {
+        private final String bucket;
+        private final ZipArchiveWriter writer;
+        // 已添加但还没写出的对象，最早添加的在队首
+        private final Deque<Prefetch> window = new ArrayDeque<>();
+        private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+        private int skipped;
+        private boolean finished;
+
+        private Archive(String bucket, OutputStream out) {
+            this.bucket = bucket;
+            this.writer = new ZipArchiveWriter(out, config.getDeflateLevel());
+            metrics.transferStarted(S3Metrics.DOWNLOAD);
+        }
+
+        /**
+         * 添加一个对象并开始预读；预取窗口已满时先写出最早添加的对象。
+         *
+         * @param size 对象大小，未知时传 -1，由预读线程先 HEAD 获取大小、ETag 和修改时间
+         */
+        public void add(String key, String entryName, long size, String eTag, long lastModified) throws IOException {
+            Prefetch prefetch = new Prefetch(bucket, key, entryName, size, eTag, lastModified);
+            window.addLast(prefetch);
+            prefetch.schedule();
+            while (window.size() > Math.max(1, config.getPrefetchObjects())) {
+                writeEntry(window.pollFirst());
+            }
+        }
+
+        /**
+         * 写出剩余的对象和中央目录，不关闭输出流。
+         */
+        public void finish() throws IOException {
+            while (!window.isEmpty()) {
+                writeEntry(window.pollFirst());
+            }
+            writer.finish();
+            finished = true;
+        }
+
+        public int getEntryCount() {
+            return writer.getEntryCount();
+        }
+
+        /**
+         * 添加后不存在(已被删除)而跳过的对象数。
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            for (Prefetch prefetch : window) {
+                prefetch.cancel();
+            }
+            window.clear();
+            if (!finished) {
+                writer.abort();
+            }
+            metrics.transferFinished(S3Metrics.DOWNLOAD);
+        }
+
+        private void writeEntry(Prefetch prefetch) throws IOException {
+            try {
+                if (!prefetch.awaitFirstRange()) {
+                    skipped++;
+                    return;
+                }
+                writer.putEntry(prefetch.entryName, prefetch.lastModified, prefetch.size, shouldDeflate(prefetch.entryName));
+                PartBuffer buffer;
+                while ((buffer = prefetch.next()) != null) {
+                    try (PartBuffer range = buffer; InputStream in = range.newInputStream()) {
+                        int len;
+                        while ((len = in.read(copyBuffer)) != -1) {
+                            writer.write(copyBuffer, 0, len);
+                        }
+                    }
+                }
+                writer.closeEntry();
+            } finally {
+                prefetch.cancel();
+            }
+        }
+    }
+
+    private boolean shouldDeflate(String name) {
+        if (config.getDeflateLevel() <= 0) {
+            return false;
+        }
+        int dot = name.lastIndexOf('.');
+        return dot < 0 || !storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 单个对象的预读状态。预读任务每次读取一个范围，放入 ready 后如果还有预读名额就继续读取下一个范围；
+     * 写出线程每取走一个范围就补充调度，同一对象同时只有一个范围在读取。
+     */
+    private class Prefetch {
+        private final String bucket;
+        private final String key;
+        private final String entryName;
+        private long size;
+        private String eTag;
+        private long lastModified;
+        // 下一个要读取的字节位置
+        private long position;
+        private final Deque<PartBuffer> ready = new ArrayDeque<>();
+        private boolean fetching;
+        private boolean done;
+        private boolean missing;
+        private boolean cancelled;
+        private Exception failure;
+        private Future<?> future;
+
+        Prefetch(String bucket, String key, String entryName, long size, String eTag, long lastModified) {
+            this.bucket = bucket;
+            this.key = key;
+            this.entryName = entryName;
+            this.size = size;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.done = size == 0;
+        }
+
+        synchronized void schedule() {
+            if (fetching || done || cancelled || failure != null || ready.size() >= Math.max(1, config.getReadAheadRanges())) {
+                return;
+            }
+            fetching = true;
+            try {
+                future = prefetchExecutor.submit(this::fetchNext);
+            } catch (RejectedExecutionException e) {
+                fetching = false;
+                failure = e;
+                notifyAll();
+            }
+        }
+
+        private void fetchNext() {
+            PartBuffer buffer = null;
+            try {
+                if (size < 0 && !fetchMetadata()) {
+                    return;
+                }
+                long start = position;
+                long end = Math.min(start + config.getRangeSize(), size) - 1;
+                buffer = bufferPool.acquire(end - start + 1);
+                fetchRange(buffer, start, end);
+                synchronized (this) {
+                    fetching = false;
+                    if (!cancelled) {
+                        ready.addLast(buffer);
+                        buffer = null;
+                        position = end + 1;
+                        done = position >= size;
+                    }
+                    notifyAll();
+                }
+                schedule();
+            } catch (Exception e) {
+                synchronized (this) {
+                    fetching = false;
+                    if (isNotFound(e) && ready.isEmpty() && position == 0) {
+                        // 对象在添加后被删除，跳过该条目
+                        missing = true;
+                        done = true;
+                    } else {
+                        failure = e;
+                    }
+                    notifyAll();
+                }
+            } finally {
+                if (buffer != null) {
+                    buffer.close();
+                }
+            }
+        }
+
+        /**
+         * 大小未知时 HEAD 获取大小、ETag 和修改时间；空对象不需要再读取，返回 false。
+         */
+        private boolean fetchMetadata() {
+            ObjectMetadata metadata = amazonS3.getObjectMetadata(bucket, key);
+            synchronized (this) {
+                size = metadata.getContentLength();
+                eTag = metadata.getETag();
+                lastModified = metadata.getLastModified() == null ? System.currentTimeMillis() : metadata.getLastModified().getTime();
+                if (size > 0) {
+                    return true;
+                }
+                fetching = false;
+                done = true;
+                notifyAll();
+                return false;
+            }
+        }
+
+        /**
+         * 读取 [start, end] 范围到 buffer，失败时按指数退避重试整个范围。
+         */
+        private void fetchRange(PartBuffer buffer, long start, long end) throws IOException, InterruptedException {
+            S3Retry.call(config.getMaxAttempts(), config.getRetryBackoffMillis(), () -> {
+                GetObjectRequest request = new GetObjectRequest(bucket, key).withRange(start, end);
+                if (eTag != null) {
+                    request.withMatchingETagConstraint(eTag);
+                }
+                S3Object s3Object = hedgedReader.getObject(request);
+                if (s3Object == null) {
+                    throw new ObjectModifiedException(key);
+                }
+                S3ObjectInputStream inputStream = s3Object.getObjectContent();
+                long filled;
+                boolean completed = false;
+                try {
+                    filled = buffer.fill(inputStream);
+                    completed = true;
+                } finally {
+                    if (completed) {
+                        inputStream.close();
+                    } else {
+                        // 读取失败时放弃连接，避免把剩余内容读完
+                        inputStream.abort();
+                    }
+                }
+                if (filled != end - start + 1) {
+                    throw new IOException("范围数据不完整: " + key + " " + start + "-" + end + "，实际读取 " + filled);
+                }
+                metrics.addBytes(S3Metrics.DOWNLOAD, filled);
+                return null;
+            });
+        }
+
+        /**
+         * 等待第一个范围读完，对象已不存在时返回 false。
+         */
+        synchronized boolean awaitFirstRange() throws IOException {
+            await();
+            return !missing;
+        }
+
+        /**
+         * 按顺序取出下一个已读完的范围，调用方用完后 close；全部取完返回 null。
+         */
+        synchronized PartBuffer next() throws IOException {
+            await();
+            PartBuffer buffer = ready.pollFirst();
+            if (buffer != null) {
+                schedule();
+            }
+            return buffer;
+        }
+
+        private void await() throws IOException {
+            try {
+                while (ready.isEmpty() && !done && failure == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("打包下载被中断", e);
+            }
+            if (ready.isEmpty() && failure != null) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                throw new IOException("读取对象失败: " + key, failure);
+            }
+        }
+
+        /**
+         * 放弃预读并归还已读取的缓冲区。
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            for (PartBuffer buffer : ready) {
+                buffer.close();
+            }
+            ready.clear();
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static boolean isNotFound(Exception e) {
+        return e instanceof AmazonServiceException && ((AmazonServiceException) e).getStatusCode() == 404;
+    }
+}
@@ -0,0 +1,303 @@
+package ceph.s3.file.zip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 流式写出 zip 压缩包，输出流只需顺序写入，不需要回填。
+ * 条目的 CRC 和压缩后大小写在数据之后的数据描述符中(通用标志位 3)，条目名使用 UTF-8(通用标志位 11)；
+ * 条目大小、偏移或条目数超出 32 位限制时写出 ZIP64 扩展字段和 ZIP64 目录结束记录。
+ * 中央目录需要在末尾写出，只保存每个条目的名称和几个数值，占用与条目数成正比而与数据量无关。
+ */
+public class ZipArchiveWriter {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EXTRA_TAG = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long LIMIT_32 = 0xFFFFFFFFL;
+    private static final int LIMIT_16 = 0xFFFF;
+
+    private final OutputStream out;
+    private final byte[] scratch = new byte[64];
+    private final List<Entry> entries = new ArrayList<>();
+    private final Deflater deflater;
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+    private final CRC32 crc = new CRC32();
+    private long offset;
+    private Entry current;
+    private boolean finished;
+
+    /**
+     * @param deflateLevel DEFLATE 压缩级别，只对以 deflate 方式写入的条目生效
+     */
+    public ZipArchiveWriter(OutputStream out, int deflateLevel) {
+        this.out = out;
+        this.deflater = new Deflater(Math.max(Deflater.BEST_SPEED, Math.min(deflateLevel, Deflater.BEST_COMPRESSION)), true);
+    }
+
+    /**
+     * 开始一个条目，之后调用 write 写入内容，最后调用 closeEntry。
+     *
+     * @param expectedSize 条目的原始大小，用于决定本地文件头是否带 ZIP64 扩展字段；未知时传 -1
+     * @param deflate      是否 DEFLATE 压缩，否则直接存储
+     */
+    public void putEntry(String name, long lastModified, long expectedSize, boolean deflate) throws IOException {
+        if (current != null) {
+            closeEntry();
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.dosTime = dosTime(lastModified);
+        entry.method = deflate ? 8 : 0;
+        entry.offset = offset;
+        // 压缩后的数据最多比原始数据略大，预留余量；大小未知时按大文件处理
+        entry.zip64 = expectedSize < 0 || expectedSize + (expectedSize >>> 8) + 1024 >= LIMIT_32;
+        if (entry.name.length > LIMIT_16) {
+            throw new IOException("条目名称过长: " + name);
+        }
+
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(entry.zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(entry.method);
+        writeInt((int) entry.dosTime);
+        // CRC 和大小写在数据描述符中
+        writeInt(0);
+        writeInt(entry.zip64 ? (int) LIMIT_32 : 0);
+        writeInt(entry.zip64 ? (int) LIMIT_32 : 0);
+        writeShort(entry.name.length);
+        writeShort(entry.zip64 ? 20 : 0);
+        writeBytes(entry.name, 0, entry.name.length);
+        if (entry.zip64) {
+            writeShort(ZIP64_EXTRA_TAG);
+            writeShort(16);
+            writeLong(0);
+            writeLong(0);
+        }
+        crc.reset();
+        if (deflate) {
+            deflater.reset();
+        }
+        current = entry;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("没有打开的条目");
+        }
+        crc.update(b, off, len);
+        current.size += len;
+        if (current.method == 0) {
+            writeBytes(b, off, len);
+            current.compressedSize += len;
+            return;
+        }
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            drainDeflater();
+        }
+    }
+
+    public void closeEntry() throws IOException {
+        Entry entry = current;
+        if (entry == null) {
+            return;
+        }
+        if (entry.method == 8) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drainDeflater();
+            }
+        }
+        entry.crc = crc.getValue();
+        if (!entry.zip64 && (entry.size >= LIMIT_32 || entry.compressedSize >= LIMIT_32)) {
+            throw new IOException("条目实际大小超过预期，无法写出: " + new String(entry.name, StandardCharsets.UTF_8));
+        }
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt((int) entry.crc);
+        if (entry.zip64) {
+            writeLong(entry.compressedSize);
+            writeLong(entry.size);
+        } else {
+            writeInt((int) entry.compressedSize);
+            writeInt((int) entry.size);
+        }
+        entries.add(entry);
+        current = null;
+    }
+
+    /**
+     * 写出中央目录和目录结束记录，不关闭底层输出流。
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        long centralOffset = offset;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralSize = offset - centralOffset;
+        int count = entries.size();
+        if (count >= LIMIT_16 || centralOffset >= LIMIT_32 || centralSize >= LIMIT_32) {
+            long zip64EndOffset = offset;
+            writeInt(ZIP64_END_SIGNATURE);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(centralSize);
+            writeLong(centralOffset);
+            writeInt(ZIP64_LOCATOR_SIGNATURE);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+        writeInt(END_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, LIMIT_16));
+        writeShort(Math.min(count, LIMIT_16));
+        writeInt((int) Math.min(centralSize, LIMIT_32));
+        writeInt((int) Math.min(centralOffset, LIMIT_32));
+        writeShort(0);
+        deflater.end();
+        finished = true;
+    }
+
+    /**
+     * 释放 Deflater，写出失败时调用。
+     */
+    public void abort() {
+        deflater.end();
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * 已写出的字节数。
+     */
+    public long getBytesWritten() {
+        return offset;
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        // 超出 32 位的字段写 0xFFFFFFFF，实际值按 原始大小、压缩后大小、偏移 的顺序放入 ZIP64 扩展字段
+        boolean sizeOverflow = entry.size >= LIMIT_32;
+        boolean compressedOverflow = entry.compressedSize >= LIMIT_32;
+        boolean offsetOverflow = entry.offset >= LIMIT_32;
+        int extraLength = (sizeOverflow ? 8 : 0) + (compressedOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+        boolean zip64 = entry.zip64 || extraLength > 0;
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(VERSION_ZIP64);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+        writeShort(entry.method);
+        writeInt((int) entry.dosTime);
+        writeInt((int) entry.crc);
+        writeInt(compressedOverflow ? (int) LIMIT_32 : (int) entry.compressedSize);
+        writeInt(sizeOverflow ? (int) LIMIT_32 : (int) entry.size);
+        writeShort(entry.name.length);
+        writeShort(extraLength > 0 ? extraLength + 4 : 0);
+        // 注释长度、起始磁盘号、内部属性、外部属性
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(offsetOverflow ? (int) LIMIT_32 : (int) entry.offset);
+        writeBytes(entry.name, 0, entry.name.length);
+        if (extraLength > 0) {
+            writeShort(ZIP64_EXTRA_TAG);
+            writeShort(extraLength);
+            if (sizeOverflow) {
+                writeLong(entry.size);
+            }
+            if (compressedOverflow) {
+                writeLong(entry.compressedSize);
+            }
+            if (offsetOverflow) {
+                writeLong(entry.offset);
+            }
+        }
+    }
+
+    private void drainDeflater() throws IOException {
+        int len = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.NO_FLUSH);
+        if (len > 0) {
+            writeBytes(deflateBuffer, 0, len);
+            current.compressedSize += len;
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        writeBytes(scratch, 0, 2);
+    }
+
+    private void writeInt(int value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        scratch[2] = (byte) (value >>> 16);
+        scratch[3] = (byte) (value >>> 24);
+        writeBytes(scratch, 0, 4);
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) value);
+        writeInt((int) (value >>> 32));
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        offset += len;
+    }
+
+    /**
+     * MS-DOS 格式的修改时间，高 16 位为日期，低 16 位为时间，只能表示 1980 年之后的时间。
+     */
+    private static long dosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (time.getYear() - 1980) << 25)
+                | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16)
+                | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5)
+                | (time.getSecond() >> 1);
+    }
+
+    private static class Entry {
+        byte[] name;
+        long dosTime;
+        int method;
+        long offset;
+        boolean zip64;
+        long crc;
+        long size;
+        long compressedSize;
+    }
+}
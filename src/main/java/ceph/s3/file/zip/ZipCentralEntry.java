@@ -0,0 +1,32 @@
+package ceph.s3.file.zip;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+/**
+ * zip 中央目录里的一个条目。
+ */
+@Data
+public class ZipCentralEntry {
+    private String name;
+    // 压缩方法：0 存储，8 deflate
+    private int method;
+    private int flags;
+    private long crc;
+    private long compressedSize;
+    private long size;
+    private long localHeaderOffset;
+    // 条目名和扩展字段在中央目录中的原始字节长度，用于估算本地文件头长度
+    @JsonIgnore
+    private int nameLength;
+    @JsonIgnore
+    private int extraLength;
+
+    public boolean isDirectory() {
+        return name.endsWith("/");
+    }
+
+    public boolean isEncrypted() {
+        return (flags & 1) != 0;
+    }
+}
@@ -0,0 +1,19 @@
+package ceph.s3.file.zip;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 解压清单中的一个条目。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZipEntryResult {
+    private String key;
+    private long size;
+    private String eTag;
+    // 上传失败时的错误信息，成功时为 null
+    private String error;
+}
@@ -0,0 +1,178 @@
+package ceph.s3.file.zip;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.upload.MultipartUploadEngine;
+import ceph.s3.file.util.PartBuffer;
+import ceph.s3.file.util.ReleasingFutureTask;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 流式解压 S3 上的 zip 并把条目上传到目标桶，不落临时文件。
+ * 条目内容读入从上传缓冲池借出的缓冲区：不超过一个缓冲区的小条目交给上传线程池并发 PUT，
+ * 更大的条目转为分段上传，边解压边并发上传分段。同时在途的数据量受上传缓冲池内存预算限制。
+ * 条目头中带有大小时按条目大小借缓冲区；已读入、等待上传的小条目最多为上传并发数的两倍，
+ * 避免解压远快于上传时把缓冲池预算全部占住。
+ */
+public class ZipStreamExtractor {
+    private final AmazonS3 amazonS3;
+    private final MultipartUploadEngine uploadEngine;
+    private final AwzS3Config.Decompress config;
+    private final ExecutorService entryExecutor;
+    // 已读入缓冲区、交给线程池但尚未上传完的条目数上限
+    private final Semaphore pendingEntries;
+
+    public ZipStreamExtractor(AmazonS3 amazonS3, MultipartUploadEngine uploadEngine, AwzS3Config.Decompress config) {
+        this.amazonS3 = amazonS3;
+        this.uploadEngine = uploadEngine;
+        this.config = config;
+        int concurrency = Math.max(1, config.getEntryConcurrency());
+        this.pendingEntries = new Semaphore(concurrency * 2);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.entryExecutor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "zip-entry-upload-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public DecompressResult extract(String sourceBucket, String sourceKey, String targetBucket, Charset charset) throws IOException {
+        DecompressResult result = new DecompressResult();
+        result.setTargetBucket(targetBucket);
+        List<Future<ZipEntryResult>> futures = new ArrayList<>();
+        S3Object s3Object = amazonS3.getObject(new GetObjectRequest(sourceBucket, sourceKey));
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(s3Object.getObjectContent()), charset)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                // 目录条目不需要上传
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String key = entry.getName();
+                acquirePending();
+                PartBuffer buffer;
+                try {
+                    buffer = uploadEngine.acquireBuffer(bufferCapacity(entry));
+                } catch (IOException | RuntimeException e) {
+                    pendingEntries.release();
+                    throw e;
+                }
+                boolean handedOff = false;
+                try {
+                    long length = buffer.fill(zis);
+                    if (length < buffer.getCapacity()) {
+                        // 小条目：整个条目都在缓冲区里，交给线程池上传，缓冲区由上传任务归还
+                        futures.add(submitBuffered(targetBucket, key, buffer));
+                        handedOff = true;
+                    } else {
+                        // 大条目：已读入的部分和剩余数据拼接后分段上传
+                        InputStream rest = new SequenceInputStream(buffer.newInputStream(), CloseShieldInputStream.wrap(zis));
+                        result.add(uploadLarge(targetBucket, key, rest));
+                    }
+                } finally {
+                    if (!handedOff) {
+                        buffer.close();
+                        pendingEntries.release();
+                    }
+                }
+            }
+            for (Future<ZipEntryResult> future : futures) {
+                result.add(await(future));
+            }
+        } catch (IOException | RuntimeException e) {
+            // 只取消尚未开始的上传，正在上传的条目仍在使用缓冲区
+            futures.forEach(future -> future.cancel(false));
+            throw e;
+        }
+        return result;
+    }
+
+    private Future<ZipEntryResult> submitBuffered(String bucket, String key, PartBuffer buffer) {
+        // 在执行前被取消时也要归还缓冲区
+        FutureTask<ZipEntryResult> task = new ReleasingFutureTask<>(() -> putBuffered(bucket, key, buffer), () -> {
+            buffer.close();
+            pendingEntries.release();
+        });
+        entryExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * 条目头中带有大小时多借一个字节，读满即说明实际大小与声明不符，按大条目处理；
+     * 流式写出的 zip 条目头中没有大小，按配置的缓冲区大小借。
+     */
+    private long bufferCapacity(ZipEntry entry) {
+        long size = entry.getSize();
+        if (size < 0) {
+            return config.getBufferSize();
+        }
+        return Math.min(config.getBufferSize(), size + 1);
+    }
+
+    private void acquirePending() throws IOException {
+        try {
+            pendingEntries.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解压被中断", e);
+        }
+    }
+
+    private ZipEntryResult putBuffered(String bucket, String key, PartBuffer buffer) {
+        long length = buffer.getSize();
+        try {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(length);
+            PutObjectRequest request = new PutObjectRequest(bucket, key, buffer.newInputStream(), metadata);
+            return new ZipEntryResult(key, length, amazonS3.putObject(request).getETag(), null);
+        } catch (SdkClientException e) {
+            e.printStackTrace();
+            return new ZipEntryResult(key, length, null, e.getMessage());
+        }
+    }
+
+    private ZipEntryResult uploadLarge(String bucket, String key, InputStream inputStream) throws IOException {
+        CountingInputStream counting = new CountingInputStream(inputStream);
+        try {
+            String eTag = uploadEngine.upload(bucket, key, counting, -1).getETag();
+            return new ZipEntryResult(key, counting.getByteCount(), eTag, null);
+        } catch (SdkClientException e) {
+            e.printStackTrace();
+            // 分段上传已中止，getNextEntry 会跳过该条目剩余数据，继续处理后面的条目
+            return new ZipEntryResult(key, counting.getByteCount(), null, e.getMessage());
+        }
+    }
+
+    private static ZipEntryResult await(Future<ZipEntryResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("解压被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("条目上传失败", e.getCause());
+        }
+    }
+
+    public void shutdown() {
+        entryExecutor.shutdownNow();
+    }
+}
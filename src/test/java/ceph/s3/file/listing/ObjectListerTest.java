@@ -0,0 +1,97 @@
+package ceph.s3.file.listing;
+
+import ceph.s3.config.AwzS3Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectListerTest {
+    private ObjectLister lister;
+
+    @BeforeEach
+    void setUp() {
+        lister = new ObjectLister(null, new AwzS3Config.Listing());
+    }
+
+    @AfterEach
+    void tearDown() {
+        lister.shutdown();
+    }
+
+    @Test
+    void compareKeysOrdersByCodePoint() {
+        assertEquals(0, ObjectLister.compareKeys("logs/a", "logs/a"));
+        assertTrue(ObjectLister.compareKeys("logs/a", "logs/b") < 0);
+        assertTrue(ObjectLister.compareKeys("logs", "logs/") < 0);
+        assertTrue(ObjectLister.compareKeys("logs/", "logs") > 0);
+        // U+FFFD 在 UTF-16 里大于代理对，按码点(S3 的顺序)小于 U+1F600
+        String bmp = "a\uFFFD";
+        String supplementary = "a\uD83D\uDE00";
+        assertTrue(bmp.compareTo(supplementary) > 0);
+        assertTrue(ObjectLister.compareKeys(bmp, supplementary) < 0);
+        assertTrue(ObjectLister.compareKeys(supplementary, bmp) > 0);
+    }
+
+    @Test
+    void splitPointsAreAscendingAndAfterLast() {
+        String last = "logs/2024-03-15/part-0042";
+        List<String> bounds = lister.splitPoints("logs/", "logs/2024-01-01/part-0001", last, null);
+
+        assertFalse(bounds.isEmpty());
+        String previous = last;
+        for (String bound : bounds) {
+            assertTrue(bound.startsWith("logs/"), bound);
+            assertTrue(ObjectLister.compareKeys(bound, previous) > 0, bound + " <= " + previous);
+            previous = bound;
+        }
+    }
+
+    @Test
+    void splitPointsStayBelowUpTo() {
+        String upTo = "logs/2024-03-19";
+        List<String> bounds = lister.splitPoints("logs/", "logs/2024-03-10/a", "logs/2024-03-15/z", upTo);
+
+        assertFalse(bounds.isEmpty());
+        for (String bound : bounds) {
+            // (last, upTo] 内的键都以 last 与 upTo 的公共前缀开头
+            assertTrue(bound.startsWith("logs/2024-03-1"), bound);
+            assertTrue(ObjectLister.compareKeys(bound, upTo) < 0, bound);
+        }
+    }
+
+    @Test
+    void splitPointsRespectFanout() {
+        AwzS3Config.Listing config = new AwzS3Config.Listing();
+        config.setSplitFanout(2);
+        ObjectLister narrow = new ObjectLister(null, config);
+        try {
+            List<String> bounds = narrow.splitPoints("a", "a0", "a0", null);
+            // 前缀之后只有一个字符位置，数字类最多 2 个分界点
+            assertEquals(Arrays.asList("a1", "a6"), bounds);
+        } finally {
+            narrow.shutdown();
+        }
+    }
+
+    @Test
+    void noSplitPointsWhenCharacterIsLastOfItsClass() {
+        assertTrue(lister.splitPoints("", "a9", "z9", null).isEmpty());
+    }
+
+    @Test
+    void splitPointsDoNotBreakSurrogatePairs() {
+        String first = "a\uD83D\uDE00x";
+        String last = "a\uD83D\uDE01x";
+        List<String> bounds = lister.splitPoints("", first, last, null);
+
+        for (String bound : bounds) {
+            assertFalse(Character.isHighSurrogate(bound.charAt(bound.length() - 1)), bound);
+            assertTrue(ObjectLister.compareKeys(bound, last) > 0, bound);
+        }
+    }
+}
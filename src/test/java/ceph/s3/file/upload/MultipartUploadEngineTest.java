@@ -0,0 +1,159 @@
+package ceph.s3.file.upload;
+
+import ceph.s3.config.AwzS3Config;
+import ceph.s3.file.metrics.S3Metrics;
+import ceph.s3.file.util.PartBufferPool;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MultipartUploadEngineTest {
+    private static final long MB = 1024 * 1024;
+
+    private final AmazonS3 amazonS3 = mock(AmazonS3.class);
+    // 按分段号记录上传的内容
+    private final Map<Integer, byte[]> parts = new TreeMap<>();
+    private MultipartUploadEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        AwzS3Config config = new AwzS3Config();
+        engine = new MultipartUploadEngine(amazonS3, new PartBufferPool(config.getBuffer()),
+                new S3Metrics(new SimpleMeterRegistry(), config), config.getUpload());
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload-1");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(amazonS3.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            byte[] data = IOUtils.toByteArray(request.getInputStream());
+            assertEquals(request.getPartSize(), data.length);
+            synchronized (parts) {
+                parts.put(request.getPartNumber(), data);
+            }
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+        when(amazonS3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(new CompleteMultipartUploadResult());
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void partSizeUsesMinimumForSmallAndUnknownLengths() {
+        assertEquals(5 * MB, engine.partSizeFor(-1));
+        assertEquals(5 * MB, engine.partSizeFor(0));
+        assertEquals(5 * MB, engine.partSizeFor(100 * MB));
+    }
+
+    @Test
+    void partSizeTargetsPartCountRoundedToMb() {
+        // 10GB / 1000 = 10.24MB，向上取整到 11MB
+        assertEquals(11 * MB, engine.partSizeFor(10L * 1024 * MB));
+    }
+
+    @Test
+    void partSizeCapsAtMaximumUnlessPartLimitRequiresMore() {
+        long oneTb = 1024L * 1024 * MB;
+        assertEquals(512 * MB, engine.partSizeFor(oneTb));
+        // 10TB 按 512MB 分段会超过 10000 个分段
+        long tenTb = 10 * oneTb;
+        long partSize = engine.partSizeFor(tenTb);
+        assertEquals(0, partSize % MB);
+        assertTrue(partSize > 512 * MB);
+        assertTrue(partSize * 10000 >= tenTb);
+        assertTrue((partSize - MB) * 10000 < tenTb);
+    }
+
+    @Test
+    void uploadsKnownLengthInSizedParts() throws IOException {
+        byte[] data = randomBytes(12 * MB);
+
+        engine.upload("bucket", "key", new ByteArrayInputStream(data), data.length);
+
+        assertEquals(Arrays.asList(5 * MB, 5 * MB, 2 * MB), partSizes());
+        assertArrayEquals(data, concatenatedParts());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(amazonS3).completeMultipartUpload(complete.capture());
+        assertEquals(Arrays.asList(1, 2, 3), complete.getValue().getPartETags().stream()
+                .map(PartETag::getPartNumber).collect(Collectors.toList()));
+        verify(amazonS3, never()).abortMultipartUpload(any());
+    }
+
+    @Test
+    void uploadsUnknownLengthUntilEndOfStream() throws IOException {
+        byte[] data = randomBytes(11 * MB);
+
+        engine.upload("bucket", "key", new ByteArrayInputStream(data), -1);
+
+        assertEquals(Arrays.asList(5 * MB, 5 * MB, MB), partSizes());
+        assertArrayEquals(data, concatenatedParts());
+        verify(amazonS3).completeMultipartUpload(any());
+    }
+
+    @Test
+    void uploadsEmptyStreamAsSingleEmptyPart() throws IOException {
+        engine.upload("bucket", "key", new ByteArrayInputStream(new byte[0]), 0);
+
+        assertEquals(Arrays.asList(0L), partSizes());
+        verify(amazonS3).completeMultipartUpload(any());
+    }
+
+    @Test
+    void abortsWhenStreamEndsBeforeContentLength() {
+        byte[] data = randomBytes(3 * MB);
+
+        IOException e = assertThrows(IOException.class,
+                () -> engine.upload("bucket", "key", new ByteArrayInputStream(data), 8 * MB));
+
+        assertTrue(e.getMessage().contains("提前结束"), e.getMessage());
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(amazonS3).abortMultipartUpload(abort.capture());
+        assertEquals("upload-1", abort.getValue().getUploadId());
+        verify(amazonS3, never()).completeMultipartUpload(any());
+    }
+
+    private List<Long> partSizes() {
+        synchronized (parts) {
+            return parts.values().stream().map(part -> (long) part.length).collect(Collectors.toList());
+        }
+    }
+
+    private byte[] concatenatedParts() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        synchronized (parts) {
+            parts.values().forEach(part -> out.write(part, 0, part.length));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(long size) {
+        byte[] data = new byte[(int) size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
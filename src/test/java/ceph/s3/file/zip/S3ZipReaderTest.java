@@ -0,0 +1,172 @@
+package ceph.s3.file.zip;
+
+import ceph.s3.config.AwzS3Config;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class S3ZipReaderTest {
+    private static final long UINT32_MAX = 0xFFFFFFFFL;
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private final AmazonS3 amazonS3 = mock(AmazonS3.class);
+    private S3ZipReader reader;
+
+    @BeforeEach
+    void setUp() {
+        reader = new S3ZipReader(amazonS3, null, new AwzS3Config.Decompress());
+    }
+
+    @AfterEach
+    void tearDown() {
+        reader.shutdown();
+    }
+
+    @Test
+    void listsRegularArchive() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out, GBK)) {
+            zip.putNextEntry(new ZipEntry("dir/"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("dir/文档.txt"));
+            zip.write("hello".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        serve(out.toByteArray());
+
+        List<ZipCentralEntry> entries = reader.listEntries("bucket", "a.zip", GBK);
+
+        assertEquals(2, entries.size());
+        assertTrue(entries.get(0).isDirectory());
+        assertEquals("dir/文档.txt", entries.get(1).getName());
+        assertEquals(5, entries.get(1).getSize());
+        assertEquals(8, entries.get(1).getMethod());
+    }
+
+    @Test
+    void readsZip64CentralDirectory() throws IOException {
+        long hugeSize = 5L * 1024 * 1024 * 1024;
+        serve(zip64Archive(hugeSize, true));
+
+        List<ZipCentralEntry> entries = reader.listEntries("bucket", "big.zip", GBK);
+
+        assertEquals(2, entries.size());
+        ZipCentralEntry big = entries.get(0);
+        // 设置了 UTF-8 标志的条目名不按 charset 解码
+        assertEquals("视频/big.bin", big.getName());
+        assertEquals(hugeSize, big.getSize());
+        assertEquals(hugeSize, big.getCompressedSize());
+        assertEquals(0, big.getLocalHeaderOffset());
+        ZipCentralEntry small = entries.get(1);
+        assertEquals("small.txt", small.getName());
+        assertEquals(5, small.getSize());
+        assertEquals(1234, small.getLocalHeaderOffset());
+    }
+
+    @Test
+    void rejectsZip64WithoutLocator() {
+        serve(zip64Archive(5L * 1024 * 1024 * 1024, false));
+
+        IOException e = assertThrows(IOException.class, () -> reader.listEntries("bucket", "big.zip", GBK));
+        assertTrue(e.getMessage().contains("ZIP64"), e.getMessage());
+    }
+
+    @Test
+    void rejectsNonZip() {
+        serve(new byte[100]);
+
+        assertThrows(IOException.class, () -> reader.listEntries("bucket", "a.zip", GBK));
+    }
+
+    /**
+     * 按请求的范围返回 data 的内容。
+     */
+    private void serve(byte[] data) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        metadata.setHeader(Headers.ETAG, "etag");
+        when(amazonS3.getObjectMetadata(any(String.class), any(String.class))).thenReturn(metadata);
+        when(amazonS3.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            long[] range = request.getRange();
+            int start = (int) range[0];
+            int end = (int) Math.min(range[1] + 1, data.length);
+            S3Object object = new S3Object();
+            object.setObjectContent(new ByteArrayInputStream(data, start, end - start));
+            return object;
+        });
+    }
+
+    /**
+     * 中央目录中的第一个条目大小和偏移都放在 ZIP64 扩展字段里，目录结束记录的字段全部取最大值，
+     * 只能从 ZIP64 目录结束记录得到条目数和中央目录位置。条目数据本身不需要存在。
+     */
+    private static byte[] zip64Archive(long hugeSize, boolean withLocator) {
+        byte[] bigName = "视频/big.bin".getBytes(StandardCharsets.UTF_8);
+        byte[] smallName = "small.txt".getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update("hello".getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        // 前面的条目数据用占位字节代替
+        buffer.put(new byte[1300]);
+
+        long centralOffset = buffer.position();
+        buffer.putInt(0x02014b50).putShort((short) 45).putShort((short) 45)
+                .putShort((short) 0x800).putShort((short) 0)
+                .putInt(0).putInt(0)
+                .putInt((int) UINT32_MAX).putInt((int) UINT32_MAX)
+                .putShort((short) bigName.length).putShort((short) 28).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt((int) UINT32_MAX);
+        buffer.put(bigName);
+        buffer.putShort((short) 0x0001).putShort((short) 24).putLong(hugeSize).putLong(hugeSize).putLong(0);
+
+        buffer.putInt(0x02014b50).putShort((short) 20).putShort((short) 20)
+                .putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt((int) crc.getValue())
+                .putInt(5).putInt(5)
+                .putShort((short) smallName.length).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt(1234);
+        buffer.put(smallName);
+        long centralSize = buffer.position() - centralOffset;
+
+        long zip64EocdOffset = buffer.position();
+        buffer.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45)
+                .putInt(0).putInt(0)
+                .putLong(2).putLong(2).putLong(centralSize).putLong(centralOffset);
+        if (withLocator) {
+            buffer.putInt(0x07064b50).putInt(0).putLong(zip64EocdOffset).putInt(1);
+        }
+        buffer.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0xFFFF).putShort((short) 0xFFFF)
+                .putInt((int) UINT32_MAX).putInt((int) UINT32_MAX)
+                .putShort((short) 0);
+        byte[] archive = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(archive);
+        return archive;
+    }
+}
@@ -0,0 +1,115 @@
+package ceph.s3.file.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipArchiveWriterTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripsThroughZipFile() throws IOException {
+        byte[] random = new byte[300 * 1024];
+        new Random(1).nextBytes(random);
+        byte[] text = String.join("\n", Collections.nCopies(20000, "日志行 hello world"))
+                .getBytes(StandardCharsets.UTF_8);
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        expected.put("media/video.mp4", random);
+        expected.put("logs/应用.log", text);
+        expected.put("empty.txt", new byte[0]);
+        expected.put("unknown-size.bin", random);
+
+        Path file = tempDir.resolve("archive.zip");
+        long written;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out, 6);
+            writeEntry(writer, "media/video.mp4", random, random.length, false);
+            writeEntry(writer, "logs/应用.log", text, text.length, true);
+            writeEntry(writer, "empty.txt", new byte[0], 0, true);
+            // 大小未知的条目本地文件头带 ZIP64 扩展字段
+            writeEntry(writer, "unknown-size.bin", random, -1, false);
+            writer.finish();
+            assertEquals(4, writer.getEntryCount());
+            written = writer.getBytesWritten();
+        }
+        assertEquals(Files.size(file), written);
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            assertEquals(expected.size(), zip.size());
+            for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                ZipEntry zipEntry = zip.getEntry(entry.getKey());
+                assertNotNull(zipEntry, entry.getKey());
+                assertEquals(entry.getValue().length, zipEntry.getSize(), entry.getKey());
+                CRC32 crc = new CRC32();
+                crc.update(entry.getValue());
+                assertEquals(crc.getValue(), zipEntry.getCrc(), entry.getKey());
+                try (InputStream in = zip.getInputStream(zipEntry)) {
+                    assertArrayEquals(entry.getValue(), in.readAllBytes(), entry.getKey());
+                }
+            }
+            assertEquals(ZipEntry.STORED, zip.getEntry("media/video.mp4").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("logs/应用.log").getMethod());
+            assertTrue(zip.getEntry("logs/应用.log").getCompressedSize() < text.length);
+        }
+    }
+
+    @Test
+    void writesZip64EndRecordForManyEntries() throws IOException {
+        int count = 70000;
+        Path file = tempDir.resolve("many.zip");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out, 1);
+            for (int i = 0; i < count; i++) {
+                byte[] data = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+                writeEntry(writer, "f" + i, data, data.length, false);
+            }
+            writer.finish();
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            assertEquals(count, zip.size());
+            ZipEntry last = zip.getEntry("f" + (count - 1));
+            try (InputStream in = zip.getInputStream(last)) {
+                assertEquals(Integer.toString(count - 1), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void rejectsWriteWithoutEntry() {
+        ZipArchiveWriter writer = new ZipArchiveWriter(new ByteArrayOutputStream(), 6);
+        try {
+            assertThrows(IllegalStateException.class, () -> writer.write(new byte[1], 0, 1));
+        } finally {
+            writer.abort();
+        }
+    }
+
+    private static void writeEntry(ZipArchiveWriter writer, String name, byte[] data, long expectedSize,
+                                   boolean deflate) throws IOException {
+        writer.putEntry(name, 1_700_000_000_000L, expectedSize, deflate);
+        // 分多次写入，覆盖 Deflater 多次输入的情况
+        for (int off = 0; off < data.length; off += 8192) {
+            writer.write(data, off, Math.min(8192, data.length - off));
+        }
+        writer.closeEntry();
+    }
+}